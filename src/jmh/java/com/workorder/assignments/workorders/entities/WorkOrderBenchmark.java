@@ -0,0 +1,77 @@
+package com.workorder.assignments.workorders.entities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class:        WorkOrderBenchmark
+ *               Measures comparing work orders by rank and classifying ids, over a spread of
+ *               ids in every classification so no one branch is favoured.
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WorkOrderBenchmark {
+
+  /** Number of work orders cycled through, a power of two. */
+  private static final int COUNT = 1024;
+
+  private static final int MASK = COUNT - 1;
+
+  private final WorkOrder[] workOrders = new WorkOrder[COUNT];
+  private final long[] ids = new long[COUNT];
+  private final BigInteger[] bigIntegerIds = new BigInteger[COUNT];
+  private int index;
+
+  @Setup
+  public void createWorkOrders() {
+    SplittableRandom random = new SplittableRandom(42L);
+    long now = Instant.now().getEpochSecond();
+    for (int i = 0; i < COUNT; i++) {
+      ids[i] = random.nextLong(1L, Long.MAX_VALUE);
+      bigIntegerIds[i] = BigInteger.valueOf(ids[i]);
+      workOrders[i] = new WorkOrder(ids[i], now - random.nextInt(86400));
+    }
+  }
+
+  @Benchmark
+  public int rankCompare() {
+    int i = index++;
+    return WorkOrder.Comparators.RANK.compare(workOrders[i & MASK], workOrders[(i + 1) & MASK]);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public int rankCompareThreaded() {
+    return rankCompare();
+  }
+
+  @Benchmark
+  public WorkOrderClassification classifyId() {
+    return WorkOrderClassification.determineClassificationFromId(ids[index++ & MASK]);
+  }
+
+  @Benchmark
+  public WorkOrderClassification classifyBigIntegerId() {
+    return WorkOrderClassification.determineClassificationFromId(bigIntegerIds[index++ & MASK]);
+  }
+}
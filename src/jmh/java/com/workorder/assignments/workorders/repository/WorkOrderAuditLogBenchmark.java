@@ -0,0 +1,74 @@
+package com.workorder.assignments.workorders.repository;
+
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.utilities.CachedClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class:        WorkOrderAuditLogBenchmark
+ *               Measures what auditing a change costs the request that made it, the budget the
+ *               audit log is held to: under a microsecond a change on average, about 30ns a
+ *               change with the cached clock when last measured. The budget is checked here
+ *               rather than by a unit test, as a wall clock mean taken in a test run depends on
+ *               the machine and what else it is running. Run with the gc profiler to check
+ *               nothing is allocated.
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WorkOrderAuditLogBenchmark {
+
+  private Path file;
+  private CachedClock clock;
+  private WorkOrderAuditLog auditLog;
+  private WorkOrder workOrder;
+
+  @Setup
+  public void openAuditLog() throws IOException {
+    file = Files.createTempFile("workorders", ".audit");
+    clock = new CachedClock(ZoneOffset.UTC, 10L);
+    auditLog = new WorkOrderAuditLog(file, 65536, clock);
+    workOrder = new WorkOrder(7L, Instant.now().getEpochSecond());
+  }
+
+  @TearDown
+  public void closeAuditLog() throws IOException {
+    auditLog.close();
+    clock.close();
+    Files.delete(file);
+  }
+
+  @Benchmark
+  public void recordChange() {
+    auditLog.workOrderAdded(workOrder);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void recordChangeThreaded() {
+    auditLog.workOrderAdded(workOrder);
+  }
+}
@@ -0,0 +1,213 @@
+package com.workorder.assignments.workorders.repository;
+
+import ch.qos.logback.classic.Level;
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class:        WorkOrderRepositoryBenchmark
+ *               Measures the repository operations behind each endpoint against queues of
+ *               1 thousand, 100 thousand and 1 million work orders. Adds are paired with a take
+ *               or delete so the queue stays at its depth however long a benchmark runs. The
+ *               threaded variants and the mixed group show how the operations hold up when
+ *               requests run at the same time, and the scaling variants run add and take on
+ *               1 to 32 threads. The sorted list is measured both answered from the ranked
+ *               order of the second and ranked again after a change.
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WorkOrderRepositoryBenchmark {
+
+  /** Number of threads the threaded variants run on. */
+  private static final int THREADS = 4;
+
+  @Param({"1000", "100000", "1000000"})
+  private int depth;
+
+  private WorkOrderRepositoryImpl repository;
+  private AtomicLong nextId;
+  private long entrySeconds;
+  private String entryDate;
+  private String referenceDate;
+
+  @Setup
+  public void fillRepository() {
+    // every request logs, which would measure the logger rather than the repository.
+    ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    repository = new WorkOrderRepositoryImpl();
+    entrySeconds = Instant.now().getEpochSecond() - 86400L;
+    for (int id = 1; id <= depth; id++) {
+      repository.restoreWorkOrder(id, entrySeconds + (id % 3600));
+    }
+    nextId = new AtomicLong(depth + 1L);
+    entryDate = Instant.ofEpochSecond(entrySeconds).toString();
+    referenceDate = Instant.ofEpochSecond(entrySeconds + 43200L).toString();
+  }
+
+  /** The ids a thread looks up, drawn from the ids the queue was filled with. */
+  @State(Scope.Thread)
+  public static class Lookup {
+
+    private final SplittableRandom random = new SplittableRandom(42L);
+
+    BigInteger nextId(WorkOrderRepositoryBenchmark benchmark) {
+      return BigInteger.valueOf(random.nextInt(benchmark.depth) + 1L);
+    }
+  }
+
+  @Benchmark
+  public WorkOrder addAndTake() {
+    repository.addWorkOrder(Long.toString(nextId.getAndIncrement()), entryDate);
+    return repository.getNextWorkOrder();
+  }
+
+  @Benchmark
+  @Threads(THREADS)
+  public WorkOrder addAndTakeThreaded() {
+    return addAndTake();
+  }
+
+  /*
+   * The scaling variants report the adds and takes made per second over all of their threads,
+   * so how add and take scale from 1 to 32 threads reads straight off the scores.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @Threads(1)
+  public WorkOrder addAndTakeScaling01() {
+    return addAndTake();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @Threads(2)
+  public WorkOrder addAndTakeScaling02() {
+    return addAndTake();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @Threads(4)
+  public WorkOrder addAndTakeScaling04() {
+    return addAndTake();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @Threads(8)
+  public WorkOrder addAndTakeScaling08() {
+    return addAndTake();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @Threads(16)
+  public WorkOrder addAndTakeScaling16() {
+    return addAndTake();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @Threads(32)
+  public WorkOrder addAndTakeScaling32() {
+    return addAndTake();
+  }
+
+  @Benchmark
+  public WorkOrder addAndDelete() {
+    long id = nextId.getAndIncrement();
+    repository.addWorkOrder(Long.toString(id), entryDate);
+    return repository.deleteWorkOrder(BigInteger.valueOf(id));
+  }
+
+  @Benchmark
+  @Threads(THREADS)
+  public WorkOrder addAndDeleteThreaded() {
+    return addAndDelete();
+  }
+
+  @Benchmark
+  public int queuePosition(Lookup lookup) {
+    return repository.getWorkOrderQueuePosition(lookup.nextId(this));
+  }
+
+  @Benchmark
+  @Threads(THREADS)
+  public int queuePositionThreaded(Lookup lookup) {
+    return queuePosition(lookup);
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public List<BigInteger> sortedList() {
+    return repository.getSortedListOfWorkOrderIds();
+  }
+
+  /** Changes the queue before each list, so every list ranks the whole queue again. */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public List<BigInteger> sortedListUncached() {
+    repository.discardWorkOrder(depth);
+    repository.restoreWorkOrder(depth, entrySeconds + (depth % 3600));
+    return repository.getSortedListOfWorkOrderIds();
+  }
+
+  @Benchmark
+  public List<BigInteger> sortedListPage() {
+    return repository.getSortedListOfWorkOrderIds(0, 100);
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public double meanWaitTime() {
+    return repository.getQueueMeanWaitTime(referenceDate);
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(2)
+  public WorkOrder mixedAddAndTake() {
+    return addAndTake();
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(2)
+  public int mixedQueuePosition(Lookup lookup) {
+    return queuePosition(lookup);
+  }
+}
@@ -0,0 +1,125 @@
+package com.workorder.assignments.workorders.utilities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Class:        ConversionUtilitiesBenchmark
+ *               Measures parsing the work order ids and ISO 8601 dates every add is made of.
+ *               The baseline variants run the regular expressions and the BigInteger and
+ *               java.time parses the ids and dates were first parsed with, so the speedup of
+ *               the hand written parsers is measured alongside them.
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConversionUtilitiesBenchmark {
+
+  /** Number of strings cycled through, a power of two. */
+  private static final int COUNT = 1024;
+
+  private static final int MASK = COUNT - 1;
+
+  /** The pattern ids were first matched against before they were parsed. */
+  private static final Pattern BASELINE_ID_PATTERN = Pattern.compile("[1-9]\\d{0,17}[0-7]?");
+
+  /** The pattern dates were first matched against before they were parsed. */
+  private static final Pattern BASELINE_DATE_PATTERN =
+      Pattern.compile("^\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}Z$");
+
+  private final String[] ids = new String[COUNT];
+  private final String[] dates = new String[COUNT];
+  private int index;
+
+  @Setup
+  public void createStrings() {
+    SplittableRandom random = new SplittableRandom(42L);
+    long now = Instant.now().getEpochSecond();
+    for (int i = 0; i < COUNT; i++) {
+      // the baseline pattern turns away some 19 digit ids, so only ids both accept are used.
+      do {
+        ids[i] = Long.toString(random.nextLong(1L, Long.MAX_VALUE));
+      } while (!BASELINE_ID_PATTERN.matcher(ids[i]).matches());
+      dates[i] = Instant.ofEpochSecond(now - random.nextInt(365 * 86400)).toString();
+    }
+  }
+
+  @Benchmark
+  public long parseId() {
+    return BigIntegerConversionUtilities.getConverttoValidWorkOrderIdValue(ids[index++ & MASK]);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public long parseIdThreaded() {
+    return parseId();
+  }
+
+  /** The id parse as it was first written, a regular expression search then a BigInteger. */
+  @Benchmark
+  public BigInteger parseIdBaseline() {
+    String id = ids[index++ & MASK];
+    Matcher matcher = BASELINE_ID_PATTERN.matcher(id);
+    if (!matcher.find() || (matcher.group(0).length() != id.length())) {
+      throw new IllegalArgumentException(id);
+    }
+    return new BigInteger(id);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public BigInteger parseIdBaselineThreaded() {
+    return parseIdBaseline();
+  }
+
+  @Benchmark
+  public long parseDate() {
+    return DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(dates[index++ & MASK]);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public long parseDateThreaded() {
+    return parseDate();
+  }
+
+  /** The date parse as it was first written, which matched and then parsed the date twice. */
+  @Benchmark
+  public long parseDateBaseline() {
+    String date = dates[index++ & MASK];
+    if (!BASELINE_DATE_PATTERN.matcher(date).matches()) {
+      throw new IllegalArgumentException(date);
+    }
+    ZonedDateTime.parse(date, DateTimeFormatter.ISO_DATE_TIME);
+    return ZonedDateTime.parse(date, DateTimeFormatter.ISO_DATE_TIME).toEpochSecond();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public long parseDateBaselineThreaded() {
+    return parseDateBaseline();
+  }
+}
@@ -1,17 +1,33 @@
 package com.workorder.assignments.workorders.api.controllers;
 
 import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.entities.WorkOrderBatchResult;
+import com.workorder.assignments.workorders.entities.WorkOrderPositionNotice;
+import com.workorder.assignments.workorders.entities.WorkOrderSubmission;
 import com.workorder.assignments.workorders.repository.WorkOrderRepository;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 
 /**
  * Class:        WorkOrderController
@@ -24,11 +40,24 @@ import java.util.NoSuchElementException;
 @Api(description = "Sets the endpoints for Creating, Retrieving and Deleting work orders.")
 public class WorkOrderController {
 
+  /** Size of the buffer used when streaming, each time it fills a chunk is sent to the client. */
+  private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+
   private WorkOrderRepository workOrderRepository;
 
+  private WorkOrderTakeWaiters takeWaiters;
+
+  private WorkOrderEventStream eventStream;
+
+  private WorkOrderPositionWatches positionWatches;
+
   @Autowired
-  public WorkOrderController(WorkOrderRepository workOrderRepository) {
+  public WorkOrderController(WorkOrderRepository workOrderRepository, WorkOrderTakeWaiters takeWaiters,
+                             WorkOrderEventStream eventStream, WorkOrderPositionWatches positionWatches) {
     this.workOrderRepository = workOrderRepository;
+    this.takeWaiters = takeWaiters;
+    this.eventStream = eventStream;
+    this.positionWatches = positionWatches;
   }
 
   @PostMapping
@@ -40,7 +69,14 @@ public class WorkOrderController {
     return workOrderRepository.addWorkOrder(id, entryDate);
   }
 
-  @PatchMapping
+  @PostMapping(path = "batch")
+  @ResponseStatus(HttpStatus.OK)
+  @ApiOperation("Creates a batch of work orders in the queue. Faulty work orders are reported rather than failing the batch.")
+  public WorkOrderBatchResult addNewWorkOrders(@RequestBody List<WorkOrderSubmission> submissions) {
+    return workOrderRepository.addWorkOrders(submissions);
+  }
+
+  @PatchMapping(params = {"!wait", "!count"})
   @ResponseStatus(HttpStatus.OK)
   @ApiOperation("Retrieves the work order identity at the top of the queue and removes it from the queue.")
   public BigInteger getTopId() {
@@ -48,11 +84,45 @@ public class WorkOrderController {
     return workOrder != null ? workOrder.getId() : BigInteger.valueOf(-1L);
   }
 
+  @PatchMapping(params = {"wait", "!count"})
+  @ApiOperation("Retrieves the work order identity at the top of the queue and removes it from the queue. If the queue is empty waits up to wait milliseconds for a work order to be added, -1 if none is.")
+  public DeferredResult<BigInteger> getTopIdWaiting(@RequestParam("wait") long waitMillis) {
+    return takeWaiters.take(waitMillis);
+  }
+
+  @PatchMapping(params = {"count", "!wait"})
+  @ResponseStatus(HttpStatus.OK)
+  @ApiOperation("Retrieves up to count work order identities from the top of the queue and removes them from the queue.")
+  public List<BigInteger> getTopIds(@RequestParam("count") int count) {
+    List<WorkOrder> workOrders = workOrderRepository.getNextWorkOrders(count);
+    List<BigInteger> ids = new ArrayList<>(workOrders.size());
+    workOrders.forEach(workOrder -> ids.add(workOrder.getId()));
+    return ids;
+  }
+
   @GetMapping(path = "sortedlist")
   @ResponseStatus(HttpStatus.OK)
-  @ApiOperation("Retrieves an ordered list of work order identities.")
-  public List<BigInteger> getWorkOrderSortedList() {
-    return workOrderRepository.getSortedListOfWorkOrderIds();
+  @ApiOperation("Retrieves an ordered list of work order identities. Use offset and limit to retrieve a single page of it.")
+  public List<BigInteger> getWorkOrderSortedList(@RequestParam(value = "offset", defaultValue = "0") int offset,
+                                                 @RequestParam(value = "limit", required = false) Integer limit) {
+    if ((offset == 0) && (limit == null)) {
+      return workOrderRepository.getSortedListOfWorkOrderIds();
+    }
+    return workOrderRepository.getSortedListOfWorkOrderIds(offset, limit != null ? limit : Integer.MAX_VALUE);
+  }
+
+  @GetMapping(path = "sortedlist/stream", produces = "application/json")
+  @ApiOperation("Streams the ordered list of work order identities. The list is written as it is ranked so it suits very long queues.")
+  public ResponseEntity<StreamingResponseBody> streamWorkOrderSortedList() {
+    PrimitiveIterator.OfLong ids = workOrderRepository.getSortedWorkOrderIdIterator();
+    StreamingResponseBody body = outputStream -> writeIds(ids, outputStream);
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+  }
+
+  @GetMapping(path = "events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  @ApiOperation("Streams every work order added, taken or deleted from now on as server sent events. Send Last-Event-ID to carry on after a reconnect.")
+  public SseEmitter streamWorkOrderEvents(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+    return eventStream.subscribe(lastEventId);
   }
 
   @DeleteMapping(value = "/{id}")
@@ -74,10 +144,40 @@ public class WorkOrderController {
     return workOrderRepository.getWorkOrderQueuePosition(id);
   }
 
+  @GetMapping(path = "queue_position/{id}/watch")
+  @ApiOperation("Waits up to wait milliseconds for the given work order to reach the queue position threshold, 0 being the top, or to be taken or deleted. Answers with the status and position when it does, or the current position if the wait runs out.")
+  public DeferredResult<WorkOrderPositionNotice> watchWorkOrderQueuePosition(@PathVariable("id") BigInteger id,
+                                                                             @RequestParam("threshold") int threshold,
+                                                                             @RequestParam(value = "wait", defaultValue = "30000") long waitMillis) {
+    return positionWatches.watch(id, threshold, waitMillis);
+  }
+
   @GetMapping(path = "meanwaittime/{referenceDate}")
   @ResponseStatus(HttpStatus.OK)
   @ApiOperation("gets the mean wait time in the queue for the reference time. Time must be supplied in ISO 8601 format. i.e. 2018-11-25T23:45:42Z'")
   public double getQueuMeanWaitTimeFromReferenceTime(@PathVariable("referenceDate") String referenceDate) {
     return workOrderRepository.getQueueMeanWaitTime(referenceDate);
   }
+
+  /**
+   * Writes the ids as a JSON array. Output is buffered and sent in chunks as the buffer
+   * fills, so the list is never held in memory.
+   * @param ids the ids to write.
+   * @param outputStream the response stream to write to.
+   * @throws IOException if the client cannot be written to.
+   */
+  private static void writeIds(PrimitiveIterator.OfLong ids, OutputStream outputStream) throws IOException {
+    Writer writer = new BufferedWriter(
+        new OutputStreamWriter(outputStream, StandardCharsets.US_ASCII), STREAM_BUFFER_SIZE);
+    writer.write('[');
+    if (ids.hasNext()) {
+      writer.write(Long.toString(ids.nextLong()));
+      while (ids.hasNext()) {
+        writer.write(',');
+        writer.write(Long.toString(ids.nextLong()));
+      }
+    }
+    writer.write(']');
+    writer.flush();
+  }
 }
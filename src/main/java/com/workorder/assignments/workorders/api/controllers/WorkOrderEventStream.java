@@ -0,0 +1,340 @@
+package com.workorder.assignments.workorders.api.controllers;
+
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.entities.WorkOrderEvent;
+import com.workorder.assignments.workorders.repository.WorkOrderListener;
+import com.workorder.assignments.workorders.repository.WorkOrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class:        WorkOrderEventStream
+ *               Streams the changes made to the queue to clients as server sent events.
+ *               Each change is written to a fixed size ring of events and nothing more on
+ *               the thread of the request that made it, so clients never hold up the queue.
+ *               Each client reads the ring from its own position; a client that falls so far
+ *               behind that the events it has yet to read are overwritten is sent a lagged
+ *               event and disconnected, to reload the queue and follow it again. A client
+ *               that reads so slowly that sending it the events of one flush takes longer
+ *               than the write timeout is disconnected too, its sender interrupted, so a few
+ *               slow clients cannot hold every sender thread.
+ *               The repository tells the changes of each work order id in the order they
+ *               were made, so events of one id are numbered in that order and a client can
+ *               keep its own view of the queue from them. Changes of different ids made at
+ *               the same time may be numbered in either order.
+ * Created By:   brownless
+ * For Project:  workorders
+ */
+
+@Component
+public class WorkOrderEventStream implements WorkOrderListener {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WorkOrderEventStream.class);
+
+  /** The name of the event sent to a client that fell too far behind before it is disconnected. */
+  static final String LAGGED_EVENT = "LAGGED";
+
+  /** Default number of events held for clients to read. */
+  static final int DEFAULT_BUFFER_SIZE = 65536;
+
+  /** Default interval in milliseconds between looking for events to send. */
+  static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 50L;
+
+  /** Default number of threads sending events to clients. */
+  static final int DEFAULT_SENDER_THREADS = 4;
+
+  /** Default longest time in milliseconds sending a client the events of one flush may take. */
+  static final long DEFAULT_WRITE_TIMEOUT_MILLIS = 10000L;
+
+  private final AtomicReferenceArray<WorkOrderEvent> events;
+  private final int mask;
+
+  /** The sequence of the next event, one more than the last event written. */
+  private final AtomicLong nextSequence = new AtomicLong();
+
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService flusher;
+  private final ExecutorService senders;
+  private final long writeTimeoutMillis;
+
+  @Autowired
+  public WorkOrderEventStream(WorkOrderRepository workOrderRepository,
+                              @Value("${workorders.events.buffer-size:" + DEFAULT_BUFFER_SIZE + "}") int bufferSize,
+                              @Value("${workorders.events.flush-interval-ms:" + DEFAULT_FLUSH_INTERVAL_MILLIS + "}")
+                                  long flushIntervalMillis,
+                              @Value("${workorders.events.sender-threads:" + DEFAULT_SENDER_THREADS + "}")
+                                  int senderThreads,
+                              @Value("${workorders.events.write-timeout-ms:" + DEFAULT_WRITE_TIMEOUT_MILLIS + "}")
+                                  long writeTimeoutMillis) {
+    if ((bufferSize < 1) || (Integer.bitCount(bufferSize) != 1)) {
+      throw new IllegalArgumentException("The event buffer size must be a power of two");
+    }
+    if ((flushIntervalMillis < 1) || (senderThreads < 1) || (writeTimeoutMillis < 1)) {
+      throw new IllegalArgumentException("The flush interval, sender threads and write timeout must be greater then 0");
+    }
+    events = new AtomicReferenceArray<>(bufferSize);
+    mask = bufferSize - 1;
+    this.writeTimeoutMillis = writeTimeoutMillis;
+    flusher = Executors.newSingleThreadScheduledExecutor(daemonThreads("work-order-events"));
+    senders = Executors.newFixedThreadPool(senderThreads, daemonThreads("work-order-event-sender"));
+    flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    workOrderRepository.addWorkOrderListener(this);
+  }
+
+  /**
+   * Starts streaming the changes to a client.
+   * @param lastEventId the sequence of the last event the client received before it
+   *                    reconnected, or null to start with the next change.
+   * @return the emitter streaming the events.
+   */
+  public SseEmitter subscribe(Long lastEventId) {
+    return subscribe(new SseEmitter(), lastEventId);
+  }
+
+  /**
+   * Starts streaming the changes to a client through the emitter given.
+   * @param emitter the emitter to stream the events through.
+   * @param lastEventId the sequence of the last event the client received, or null.
+   * @return the emitter.
+   */
+  SseEmitter subscribe(SseEmitter emitter, Long lastEventId) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:subscribe({})", lastEventId);
+    }
+    long next = nextSequence.get();
+    if (lastEventId != null) {
+      next = Math.max(0L, Math.min(next, lastEventId + 1));
+    }
+    Subscriber subscriber = new Subscriber(emitter, next);
+    emitter.onCompletion(() -> subscribers.remove(subscriber));
+    emitter.onTimeout(() -> subscribers.remove(subscriber));
+    emitter.onError(e -> subscribers.remove(subscriber));
+    subscribers.add(subscriber);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:subscribe:{} subscribers", subscribers.size());
+    }
+    return emitter;
+  }
+
+  /** @return the number of clients following the stream. */
+  int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void workOrderAdded(WorkOrder workOrder) {
+    publish(WorkOrderEvent.Type.ADDED, workOrder);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void workOrderTaken(WorkOrder workOrder) {
+    publish(WorkOrderEvent.Type.TAKEN, workOrder);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void workOrderDeleted(WorkOrder workOrder) {
+    publish(WorkOrderEvent.Type.DELETED, workOrder);
+  }
+
+  /** Stops streaming and disconnects every client. */
+  @PreDestroy
+  public void close() {
+    flusher.shutdownNow();
+    senders.shutdownNow();
+    for (Subscriber subscriber : subscribers) {
+      subscriber.complete(null);
+    }
+    subscribers.clear();
+  }
+
+  /**
+   * Sends the events written since the last flush to every client that is not still busy
+   * with an earlier send, and disconnects the clients busy for longer than the write timeout.
+   */
+  void flush() {
+    long last = nextSequence.get();
+    long now = System.currentTimeMillis();
+    for (Subscriber subscriber : subscribers) {
+      long sendStarted = subscriber.sendStarted;
+      if ((sendStarted != 0L) && ((now - sendStarted) > writeTimeoutMillis)) {
+        disconnectStalled(subscriber);
+      } else if ((subscriber.next < last) && subscriber.sending.compareAndSet(false, true)) {
+        senders.execute(() -> {
+          subscriber.startSending();
+          try {
+            send(subscriber);
+          } finally {
+            if (subscriber.stopSending()) {
+              subscriber.complete(null);
+            }
+            subscriber.sending.set(false);
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Disconnects a client that has not taken the events of a flush within the write timeout,
+   * interrupting its sender so the thread is free for the other clients.
+   */
+  private void disconnectStalled(Subscriber subscriber) {
+    if (subscribers.remove(subscriber)) {
+      LOGGER.info("flush:subscriber stalled at {}, disconnecting", subscriber.next);
+      if (!subscriber.stall()) {
+        // its sender has just finished, so nothing else is sending it events.
+        subscriber.complete(null);
+      }
+    }
+  }
+
+  private void publish(WorkOrderEvent.Type type, WorkOrder workOrder) {
+    long sequence = nextSequence.getAndIncrement();
+    write(new WorkOrderEvent(sequence, type, workOrder));
+  }
+
+  /**
+   * Writes an event to its slot of the ring unless a later event is already there. A request
+   * held up between numbering its event and writing it can find the slot filled by a request
+   * that numbered its event a lap of the ring later; the later event is kept, and a client
+   * that still wanted the earlier one finds it overwritten and is told it lagged.
+   * @param event the event to write.
+   */
+  void write(WorkOrderEvent event) {
+    int slot = (int) event.getSequence() & mask;
+    WorkOrderEvent current;
+    do {
+      current = events.get(slot);
+      if ((current != null) && (current.getSequence() > event.getSequence())) {
+        return;
+      }
+    } while (!events.compareAndSet(slot, current, event));
+  }
+
+  /** Sends a client the events it has yet to read. */
+  private void send(Subscriber subscriber) {
+    long last = nextSequence.get();
+    try {
+      while (!subscriber.stalled && (subscriber.next < last)) {
+        WorkOrderEvent event = events.get((int) subscriber.next & mask);
+        if ((event == null) || (event.getSequence() < subscriber.next)) {
+          // claimed by a request that has yet to write it, send it on the next flush.
+          return;
+        }
+        if (event.getSequence() > subscriber.next) {
+          LOGGER.info("send:subscriber lagged at {}, disconnecting", subscriber.next);
+          subscriber.emitter.send(SseEmitter.event().name(LAGGED_EVENT).data(subscriber.next));
+          subscriber.complete(null);
+          subscribers.remove(subscriber);
+          return;
+        }
+        subscriber.emitter.send(SseEmitter.event().id(Long.toString(event.getSequence()))
+            .name(event.getType().name()).data(event, MediaType.APPLICATION_JSON));
+        ++subscriber.next;
+      }
+    } catch (IOException | IllegalStateException e) {
+      // the client has gone away.
+      LOGGER.info("send:subscriber disconnected: {}", e.getMessage());
+      subscriber.complete(e);
+      subscribers.remove(subscriber);
+    }
+  }
+
+  private static ThreadFactory daemonThreads(String name) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /** A client following the stream and the sequence of the next event to send it. */
+  private static final class Subscriber {
+
+    private final SseEmitter emitter;
+    private final AtomicBoolean sending = new AtomicBoolean();
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private volatile long next;
+
+    /** When the send in progress started in milliseconds, 0 while not sending. */
+    private volatile long sendStarted;
+
+    /** Set once the client is disconnected for taking too long to read. */
+    private volatile boolean stalled;
+
+    /** The thread sending the client events, null while not sending. Guarded by this. */
+    private Thread sender;
+
+    Subscriber(SseEmitter emitter, long next) {
+      this.emitter = emitter;
+      this.next = next;
+    }
+
+    synchronized void startSending() {
+      sender = Thread.currentThread();
+      sendStarted = System.currentTimeMillis();
+    }
+
+    /**
+     * Marks the send finished, clearing an interrupt meant for it.
+     * @return true if the client stalled during the send and is left to complete.
+     */
+    synchronized boolean stopSending() {
+      sender = null;
+      sendStarted = 0L;
+      Thread.interrupted();
+      return stalled;
+    }
+
+    /**
+     * Marks the client stalled and interrupts its send.
+     * @return true if a send was interrupted, which then completes the client.
+     */
+    synchronized boolean stall() {
+      stalled = true;
+      if (sender == null) {
+        return false;
+      }
+      sender.interrupt();
+      return true;
+    }
+
+    /** Completes the emitter once, with an error or null for none. */
+    void complete(Throwable error) {
+      if (completed.compareAndSet(false, true)) {
+        if (error == null) {
+          emitter.complete();
+        } else {
+          emitter.completeWithError(error);
+        }
+      }
+    }
+  }
+}
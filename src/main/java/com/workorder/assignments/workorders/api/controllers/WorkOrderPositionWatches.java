@@ -0,0 +1,268 @@
+package com.workorder.assignments.workorders.api.controllers;
+
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.entities.WorkOrderPositionNotice;
+import com.workorder.assignments.workorders.repository.WorkOrderListener;
+import com.workorder.assignments.workorders.repository.WorkOrderRepository;
+import com.workorder.assignments.workorders.utilities.DateConverterUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PreDestroy;
+import java.math.BigInteger;
+import java.time.Clock;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Class:        WorkOrderPositionWatches
+ *               Holds the requests waiting for a work order to reach a queue position.
+ *               Rather than each waiting request looking up its own position, every watch is
+ *               checked in one pass over the top of the queue, deep enough for the deepest
+ *               position watched for. The pass is made on a timer once the queue has changed,
+ *               or once a second of the clock the queue is ranked against, as the ranks change
+ *               with time. The pass reads the ids lazily and stops at the deepest position, so
+ *               the rest of the queue is never ranked. A watched work order that is taken or
+ *               deleted ends its watches straight away.
+ * Created By:   brownless
+ * For Project:  workorders
+ */
+
+@Component
+public class WorkOrderPositionWatches implements WorkOrderListener {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WorkOrderPositionWatches.class);
+
+  /** Default longest time in milliseconds a request may wait for a work order to reach a position. */
+  static final long DEFAULT_MAXIMUM_WAIT_MILLIS = 60000L;
+
+  /** Default interval in milliseconds between checking the watches. */
+  static final long DEFAULT_CHECK_INTERVAL_MILLIS = 250L;
+
+  private final WorkOrderRepository workOrderRepository;
+  private final long maximumWaitMillis;
+
+  /** The watches of each work order id. */
+  private final Map<Long, Set<Watch>> watches = new ConcurrentHashMap<>();
+
+  /** Set when the queue changes, so the next check looks at the positions again. */
+  private final AtomicBoolean changed = new AtomicBoolean();
+
+  private final ScheduledExecutorService checker;
+  private Clock clock = Clock.systemUTC();
+  private long lastCheckedSecond;
+
+  @Autowired
+  public WorkOrderPositionWatches(WorkOrderRepository workOrderRepository,
+                                  @Value("${workorders.watch.max-wait-ms:" + DEFAULT_MAXIMUM_WAIT_MILLIS + "}")
+                                      long maximumWaitMillis,
+                                  @Value("${workorders.watch.check-interval-ms:" + DEFAULT_CHECK_INTERVAL_MILLIS + "}")
+                                      long checkIntervalMillis) {
+    if ((maximumWaitMillis < 0) || (checkIntervalMillis < 1)) {
+      throw new IllegalArgumentException("The maximum wait must not be negative and the check interval must be greater then 0");
+    }
+    this.workOrderRepository = workOrderRepository;
+    this.maximumWaitMillis = maximumWaitMillis;
+    checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "work-order-position-watches");
+      thread.setDaemon(true);
+      return thread;
+    });
+    checker.scheduleWithFixedDelay(this::scheduledCheck, checkIntervalMillis, checkIntervalMillis,
+        TimeUnit.MILLISECONDS);
+    workOrderRepository.addWorkOrderListener(this);
+  }
+
+  /**
+   * Sets the clock the queue is ranked against, the system clock unless set.
+   * @param clock the clock to read the current time from.
+   */
+  @Autowired(required = false)
+  void setClock(Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Waits for a work order to reach a queue position or leave the queue.
+   * @param workOrderId the work order to watch.
+   * @param position the queue position to wait for, 0 for the top of the queue.
+   * @param waitMillis the longest time to wait, capped at the configured maximum.
+   * @return the result, set once the work order reaches the position or leaves the queue,
+   *         or with its current position once the wait runs out.
+   * @throws IllegalArgumentException if the position or wait is negative.
+   */
+  public DeferredResult<WorkOrderPositionNotice> watch(BigInteger workOrderId, int position, long waitMillis) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:watch({}, {}, {})", workOrderId, position, waitMillis);
+    }
+    if ((position < 0) || (waitMillis < 0)) {
+      throw new IllegalArgumentException(
+          String.format("The position %d and wait %d must not be negative.", position, waitMillis));
+    }
+    DeferredResult<WorkOrderPositionNotice> result = new DeferredResult<>(Math.min(waitMillis, maximumWaitMillis));
+    int currentPosition = workOrderRepository.getWorkOrderQueuePosition(workOrderId);
+    if ((currentPosition < 0) || (currentPosition <= position) || (waitMillis == 0)) {
+      result.setResult(notice(workOrderId, currentPosition, position));
+      return result;
+    }
+
+    long id = workOrderId.longValue();
+    Watch watch = new Watch(id, position, result);
+    result.onTimeout(() -> watch.complete(new WorkOrderPositionNotice(workOrderId,
+        WorkOrderPositionNotice.Status.WAITING, workOrderRepository.getWorkOrderQueuePosition(workOrderId))));
+    // a request that completes or fails before it is answered, as when the client goes away,
+    // is no longer watched.
+    result.onCompletion(watch::remove);
+    result.onError(e -> watch.remove());
+    watches.computeIfAbsent(id, key -> ConcurrentHashMap.newKeySet()).add(watch);
+    // the work order may have left the queue before the watch was in place to hear of it.
+    if (workOrderRepository.getWorkOrderQueuePosition(workOrderId) < 0) {
+      watch.complete(new WorkOrderPositionNotice(workOrderId, WorkOrderPositionNotice.Status.NOT_FOUND, -1));
+    }
+    changed.set(true);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:watch:waiting");
+    }
+    return result;
+  }
+
+  /** @return the number of watches waiting. */
+  int getWatchCount() {
+    int count = 0;
+    for (Set<Watch> idWatches : watches.values()) {
+      count += idWatches.size();
+    }
+    return count;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void workOrderAdded(WorkOrder workOrder) {
+    changed.set(true);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void workOrderTaken(WorkOrder workOrder) {
+    left(workOrder, WorkOrderPositionNotice.Status.TAKEN);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void workOrderDeleted(WorkOrder workOrder) {
+    left(workOrder, WorkOrderPositionNotice.Status.DELETED);
+  }
+
+  /** Stops checking the watches. */
+  @PreDestroy
+  public void close() {
+    checker.shutdownNow();
+  }
+
+  /**
+   * Checks every watch in one pass over the top of the queue, if the queue has changed or a
+   * second has passed since the last check.
+   */
+  void check() {
+    long second = DateConverterUtilities.getEpochSeconds(clock);
+    if (watches.isEmpty() || (!changed.getAndSet(false) && (second == lastCheckedSecond))) {
+      return;
+    }
+    lastCheckedSecond = second;
+    int deepest = -1;
+    for (Set<Watch> idWatches : watches.values()) {
+      for (Watch watch : idWatches) {
+        deepest = Math.max(deepest, watch.position);
+      }
+    }
+
+    PrimitiveIterator.OfLong ids = workOrderRepository.getSortedWorkOrderIdIterator();
+    for (int position = 0; (position <= deepest) && ids.hasNext(); position++) {
+      long id = ids.nextLong();
+      Set<Watch> idWatches = watches.get(id);
+      if (idWatches != null) {
+        for (Watch watch : idWatches) {
+          if (position <= watch.position) {
+            watch.complete(new WorkOrderPositionNotice(BigInteger.valueOf(id),
+                WorkOrderPositionNotice.Status.REACHED, position));
+          }
+        }
+      }
+    }
+  }
+
+  private void scheduledCheck() {
+    try {
+      check();
+    } catch (RuntimeException e) {
+      LOGGER.error("check:the position watches could not be checked", e);
+    }
+  }
+
+  /** Ends the watches of a work order that has left the queue. */
+  private void left(WorkOrder workOrder, WorkOrderPositionNotice.Status status) {
+    changed.set(true);
+    Set<Watch> idWatches = watches.get(workOrder.getIdAsLong());
+    if (idWatches != null) {
+      for (Watch watch : idWatches) {
+        watch.complete(new WorkOrderPositionNotice(workOrder.getId(), status, -1));
+      }
+    }
+  }
+
+  private static WorkOrderPositionNotice notice(BigInteger workOrderId, int currentPosition, int position) {
+    WorkOrderPositionNotice.Status status;
+    if (currentPosition < 0) {
+      status = WorkOrderPositionNotice.Status.NOT_FOUND;
+    } else if (currentPosition <= position) {
+      status = WorkOrderPositionNotice.Status.REACHED;
+    } else {
+      status = WorkOrderPositionNotice.Status.WAITING;
+    }
+    return new WorkOrderPositionNotice(workOrderId, status, currentPosition);
+  }
+
+  /** A request waiting for a work order to reach a position. */
+  private final class Watch {
+
+    private final long id;
+    private final int position;
+    private final DeferredResult<WorkOrderPositionNotice> result;
+
+    Watch(long id, int position, DeferredResult<WorkOrderPositionNotice> result) {
+      this.id = id;
+      this.position = position;
+      this.result = result;
+    }
+
+    /** Answers the request and stops watching. */
+    void complete(WorkOrderPositionNotice notice) {
+      remove();
+      result.setResult(notice);
+    }
+
+    /** Stops watching without answering the request. */
+    void remove() {
+      watches.computeIfPresent(id, (key, idWatches) -> {
+        idWatches.remove(this);
+        return idWatches.isEmpty() ? null : idWatches;
+      });
+    }
+  }
+}
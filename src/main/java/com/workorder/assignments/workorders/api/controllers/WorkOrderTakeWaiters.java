@@ -0,0 +1,172 @@
+package com.workorder.assignments.workorders.api.controllers;
+
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.repository.WorkOrderListener;
+import com.workorder.assignments.workorders.repository.WorkOrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Class:        WorkOrderTakeWaiters
+ *               Holds the requests waiting to take a work order while the queue is empty.
+ *               A waiting request does not hold a container thread, it is completed by the
+ *               request that adds the next work order. Each work order added is taken by at
+ *               most one waiting request, and waiting requests are served in the order they
+ *               started to wait.
+ * Created By:   brownless
+ * For Project:  workorders
+ */
+
+@Component
+public class WorkOrderTakeWaiters implements WorkOrderListener {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WorkOrderTakeWaiters.class);
+
+  /** The id returned to a request when there is no work order to take. */
+  static final BigInteger NO_WORK_ORDER = BigInteger.valueOf(-1L);
+
+  /** Default longest time in milliseconds a request may wait for a work order. */
+  static final long DEFAULT_MAXIMUM_WAIT_MILLIS = 60000L;
+
+  private final WorkOrderRepository workOrderRepository;
+  private final long maximumWaitMillis;
+  private final ConcurrentLinkedDeque<Waiter> waiters = new ConcurrentLinkedDeque<>();
+
+  @Autowired
+  public WorkOrderTakeWaiters(WorkOrderRepository workOrderRepository,
+                              @Value("${workorders.take.max-wait-ms:" + DEFAULT_MAXIMUM_WAIT_MILLIS + "}")
+                                  long maximumWaitMillis) {
+    if (maximumWaitMillis < 0) {
+      throw new IllegalArgumentException("The maximum wait must not be negative");
+    }
+    this.workOrderRepository = workOrderRepository;
+    this.maximumWaitMillis = maximumWaitMillis;
+    workOrderRepository.addWorkOrderListener(this);
+  }
+
+  /**
+   * Takes the work order at the top of the queue, waiting for one to be added if the queue is
+   * empty.
+   * @param waitMillis the longest time to wait, capped at the configured maximum.
+   * @return the result, set to the id of the work order taken or -1 if none was added in time.
+   * @throws IllegalArgumentException if the wait is negative.
+   */
+  public DeferredResult<BigInteger> take(long waitMillis) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:take({})", waitMillis);
+    }
+    if (waitMillis < 0) {
+      throw new IllegalArgumentException(String.format("The wait %d must not be negative.", waitMillis));
+    }
+    long timeoutMillis = Math.min(waitMillis, maximumWaitMillis);
+    DeferredResult<BigInteger> result = new DeferredResult<>(timeoutMillis, NO_WORK_ORDER);
+    WorkOrder workOrder = workOrderRepository.getNextWorkOrder();
+    if ((workOrder != null) || (timeoutMillis == 0)) {
+      result.setResult(workOrder != null ? workOrder.getId() : NO_WORK_ORDER);
+      return result;
+    }
+
+    Waiter waiter = new Waiter(result);
+    // a request that times out or completes is withdrawn before its result is set, so it is
+    // not handed a work order it can no longer return.
+    result.onTimeout(waiter::withdraw);
+    result.onCompletion(() -> {
+      waiter.withdraw();
+      waiters.remove(waiter);
+    });
+    waiters.addLast(waiter);
+    // a work order added after the take above and before the request was waiting found
+    // nobody to serve, so look again now the request can be served.
+    serveWaiters();
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:take:waiting");
+    }
+    return result;
+  }
+
+  /** @return the number of requests waiting for a work order. */
+  int getWaitingCount() {
+    return waiters.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void workOrderAdded(WorkOrder workOrder) {
+    if (!waiters.isEmpty()) {
+      serveWaiters();
+    }
+  }
+
+  /**
+   * Hands work orders from the top of the queue to waiting requests, oldest first, until there
+   * are no more of either. A work order is only taken from the repository for a request that
+   * can be handed it; should the oldest requests time out or complete in the meantime it goes
+   * to the next, and if none are left it is put back without listeners being told it was taken.
+   */
+  private void serveWaiters() {
+    while (!waiters.isEmpty() && (workOrderRepository.getNextWorkOrder(this::handOver) != null)) {
+      // served a request, look for the next.
+    }
+  }
+
+  /**
+   * Hands a work order to the oldest request still waiting, passing over those that have timed
+   * out or completed. The request cannot time out while it is handed the work order.
+   * @param workOrder the work order taken from the top of the queue.
+   * @return true if a request was handed the work order; false if none are waiting.
+   */
+  private boolean handOver(WorkOrder workOrder) {
+    Waiter waiter;
+    while ((waiter = waiters.peekFirst()) != null) {
+      boolean served = false;
+      synchronized (waiter) {
+        if (waiter.isWaiting()) {
+          waiter.waiting = false;
+          // only fails should the connection close as the result is set, the work order
+          // then goes to the next request.
+          served = waiter.result.setResult(workOrder.getId());
+        }
+        waiters.remove(waiter);
+      }
+      if (served) {
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug("FOUND:serveWaiters:{}", workOrder);
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** A request waiting for a work order, its monitor is held while it is handed one. */
+  private static final class Waiter {
+
+    private final DeferredResult<BigInteger> result;
+
+    /** Cleared once the request is served, times out or completes. Guarded by the monitor. */
+    private boolean waiting = true;
+
+    Waiter(DeferredResult<BigInteger> result) {
+      this.result = result;
+    }
+
+    /** @return true if the request can still be handed a work order, must hold the monitor. */
+    boolean isWaiting() {
+      return waiting && !result.isSetOrExpired();
+    }
+
+    /** Stops the request being handed a work order, waiting for a hand over under way. */
+    synchronized void withdraw() {
+      waiting = false;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package com.workorder.assignments.workorders.config;
+
+import com.workorder.assignments.workorders.repository.WorkOrderAuditLog;
+import com.workorder.assignments.workorders.repository.WorkOrderRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Clock;
+
+/**
+ * Class:        AuditLogConfig
+ *               When workorders.audit.enabled is true every work order added, taken or deleted
+ *               is recorded to the audit file by a background thread.
+ * Created By:   brownless
+ * For Project:  workorders
+ */
+
+@Configuration
+@ConditionalOnProperty(name = "workorders.audit.enabled", havingValue = "true")
+public class AuditLogConfig {
+
+  @Bean(destroyMethod = "close")
+  public WorkOrderAuditLog workOrderAuditLog(
+      WorkOrderRepository repository,
+      Clock clock,
+      @Value("${workorders.audit.path:workorders.audit}") String path,
+      @Value("${workorders.audit.buffer-size:65536}") int bufferSize) throws IOException {
+    WorkOrderAuditLog auditLog = new WorkOrderAuditLog(Paths.get(path), bufferSize, clock);
+    repository.addWorkOrderListener(auditLog);
+    return auditLog;
+  }
+}
@@ -0,0 +1,26 @@
+package com.workorder.assignments.workorders.config;
+
+import com.workorder.assignments.workorders.utilities.CachedClock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.ZoneOffset;
+
+/**
+ * Class:        ClockConfig
+ *               The clock work orders are validated and ranked against. It is read on every
+ *               request, so the time is read from the system clock by a ticker thread every
+ *               workorders.clock.tick-ms and requests read the time it last published.
+ * Created By:   brownless
+ * For Project:  workorders
+ */
+
+@Configuration
+public class ClockConfig {
+
+  @Bean(destroyMethod = "close")
+  public CachedClock workOrderClock(@Value("${workorders.clock.tick-ms:10}") long tickMillis) {
+    return new CachedClock(ZoneOffset.UTC, tickMillis);
+  }
+}
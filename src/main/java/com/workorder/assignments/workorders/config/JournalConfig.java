@@ -0,0 +1,40 @@
+package com.workorder.assignments.workorders.config;
+
+import com.workorder.assignments.workorders.repository.JournaledWorkOrderRepository;
+import com.workorder.assignments.workorders.repository.WorkOrderRepository;
+import com.workorder.assignments.workorders.repository.WorkOrderRepositoryImpl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Class:        JournalConfig
+ *               When workorders.journal.enabled is true the work order repository is wrapped
+ *               so every change is journaled and the queue is restored from the latest snapshot
+ *               and the journal at startup.
+ * Created By:   brownless
+ * For Project:  workorders
+ */
+
+@Configuration
+@ConditionalOnProperty(name = "workorders.journal.enabled", havingValue = "true")
+public class JournalConfig {
+
+  @Bean(destroyMethod = "close")
+  @Primary
+  public WorkOrderRepository journaledWorkOrderRepository(
+      WorkOrderRepositoryImpl repository,
+      @Value("${workorders.journal.path:workorders.journal}") String path,
+      @Value("${workorders.journal.sync:PER_OPERATION}") String syncMode,
+      @Value("${workorders.journal.sync-interval-ms:10}") long syncIntervalMillis,
+      @Value("${workorders.snapshot.path:workorders.snapshot}") String snapshotPath,
+      @Value("${workorders.snapshot.interval-seconds:300}") long snapshotIntervalSeconds) throws IOException {
+    return JournaledWorkOrderRepository.open(repository, Paths.get(path), Paths.get(snapshotPath), syncMode,
+        syncIntervalMillis, snapshotIntervalSeconds);
+  }
+}
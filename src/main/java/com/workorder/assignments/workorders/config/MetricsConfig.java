@@ -0,0 +1,62 @@
+package com.workorder.assignments.workorders.config;
+
+import com.workorder.assignments.workorders.repository.MeteredWorkOrderRepository;
+import com.workorder.assignments.workorders.repository.WorkOrderRepository;
+import com.workorder.assignments.workorders.repository.WorkOrderRepositoryStatistics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+/**
+ * Class:        MetricsConfig
+ *               Records metrics for the work order repository the application uses, whichever
+ *               store and journal it is made of. That repository, the primary one or the only
+ *               one, is wrapped as it is created so the controllers and everything else that
+ *               uses it are measured, while a repository wrapped by the journal is not measured
+ *               twice. The statistics of the heap store are read from it even when the
+ *               journal wraps it, and are left out for a store that keeps none. The metrics
+ *               are published by the actuator, in Prometheus format at
+ *               /actuator/prometheus. Set workorders.metrics.enabled to false to leave the
+ *               repository unwrapped.
+ * Created By:   brownless
+ * For Project:  workorders
+ */
+
+@Configuration
+@ConditionalOnProperty(name = "workorders.metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class MetricsConfig {
+
+  @Bean
+  public static BeanPostProcessor meteredWorkOrderRepositoryPostProcessor(
+      ConfigurableListableBeanFactory beanFactory, ObjectProvider<MeterRegistry> registry,
+      ObjectProvider<Clock> clock) {
+    return new BeanPostProcessor() {
+      @Override
+      public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if ((bean instanceof WorkOrderRepository) && isUsedRepository(beanFactory, beanName)) {
+          WorkOrderRepositoryStatistics statistics = (bean instanceof WorkOrderRepositoryStatistics)
+              ? (WorkOrderRepositoryStatistics) bean
+              : beanFactory.getBeanProvider(WorkOrderRepositoryStatistics.class).getIfUnique();
+          return new MeteredWorkOrderRepository((WorkOrderRepository) bean, statistics, registry.getObject(),
+              clock.getIfAvailable(Clock::systemUTC));
+        }
+        return bean;
+      }
+    };
+  }
+
+  /** @return true if the bean is the repository injected wherever a WorkOrderRepository is needed. */
+  private static boolean isUsedRepository(ConfigurableListableBeanFactory beanFactory, String beanName) {
+    if (!beanFactory.containsBeanDefinition(beanName)) {
+      return false;
+    }
+    String[] repositoryNames = beanFactory.getBeanNamesForType(WorkOrderRepository.class, false, false);
+    return (repositoryNames.length == 1) || beanFactory.getBeanDefinition(beanName).isPrimary();
+  }
+}
@@ -0,0 +1,35 @@
+package com.workorder.assignments.workorders.config;
+
+import com.workorder.assignments.workorders.repository.OffHeapWorkOrderRepository;
+import com.workorder.assignments.workorders.repository.WorkOrderRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+import java.time.Clock;
+
+/**
+ * Class:        OffHeapStoreConfig
+ *               When workorders.repository.store is offheap the work orders are held in memory
+ *               mapped files outside of the Java heap rather than in the heap repository.
+ * Created By:   brownless
+ * For Project:  workorders
+ */
+
+@Configuration
+@ConditionalOnProperty(name = "workorders.repository.store", havingValue = "offheap")
+public class OffHeapStoreConfig {
+
+  @Bean(destroyMethod = "close")
+  public WorkOrderRepository offHeapWorkOrderRepository(
+      @Value("${workorders.offheap.directory:}") String directory,
+      @Value("${workorders.offheap.initial-capacity:1048576}") int initialCapacity,
+      @Value("${workorders.offheap.maximum-capacity:" + OffHeapWorkOrderRepository.MAXIMUM_CAPACITY + "}")
+          int maximumCapacity,
+      Clock clock) {
+    String path = directory.isEmpty() ? System.getProperty("java.io.tmpdir") : directory;
+    return new OffHeapWorkOrderRepository(Paths.get(path), initialCapacity, maximumCapacity, clock);
+  }
+}
@@ -1,15 +1,17 @@
 package com.workorder.assignments.workorders.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.workorder.assignments.workorders.utilities.BigIntegerConversionUtilities;
 import com.workorder.assignments.workorders.utilities.DateConverterUtilities;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 
 import java.math.BigInteger;
-import java.time.Duration;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.Comparator;
-import java.util.Objects;
 
 /**
  * Class:        WorkOrder
@@ -26,11 +28,13 @@ import java.util.Objects;
 public class WorkOrder implements Comparable<WorkOrder> {
 
   @ApiModelProperty(notes = "The identity for the work order, between 1 and BigInteger maximum.")
-  private final BigInteger id;
+  private final long id;
   @ApiModelProperty(notes = "The data at which the work order was submitted to the queue. At creating time must be less than or equal to the current time")
-  private final ZonedDateTime queueEntryDate;
+  private final long queueEntrySeconds;
   @ApiModelProperty(notes = "The classification of the work order. This determines the work order queue priority.")
   private final WorkOrderClassification workOrderClassification;
+  /** The clock the time in queue and rank are read against. */
+  private final Clock clock;
 
   /**
    * Constructs the workOrder from the string inputs.
@@ -40,24 +44,95 @@ public class WorkOrder implements Comparable<WorkOrder> {
    *                  Also date cannot be in the future.
    */
   public WorkOrder(String id, String entryDate) {
-    this.id = BigIntegerConversionUtilities.getConverttoValidWorkOrderId(id);
+    this(id, entryDate, Clock.systemUTC());
+  }
+
+  /**
+   * Constructs the workOrder from the string inputs, validated and ranked against a clock.
+   *
+   * @param id        - string representation of the identity.
+   * @param entryDate - string representation of the entry date, Format must be ISO8601.
+   *                  Also date cannot be later than the clock.
+   * @param clock     - the clock to read the current time from.
+   * @throws WorkOrderRejectedException if the id or date is not valid, with the reason why.
+   */
+  public WorkOrder(String id, String entryDate, Clock clock) {
+    try {
+      this.id = BigIntegerConversionUtilities.getConverttoValidWorkOrderIdValue(id);
+    } catch (IllegalArgumentException e) {
+      throw new WorkOrderRejectedException(WorkOrderRejection.Reason.INVALID_ID, e);
+    }
     workOrderClassification = WorkOrderClassification.determineClassificationFromId(this.id);
-    queueEntryDate = DateConverterUtilities.getDateTimefromIso8601StringFormat(entryDate);
-    if (queueEntryDate.compareTo(ZonedDateTime.now()) > 0) {
-      throw new IllegalArgumentException(
+    try {
+      queueEntrySeconds = DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(entryDate);
+    } catch (IllegalArgumentException e) {
+      throw new WorkOrderRejectedException(WorkOrderRejection.Reason.INVALID_DATE, e);
+    }
+    this.clock = clock;
+    if (queueEntrySeconds > DateConverterUtilities.getEpochSeconds(clock)) {
+      throw new WorkOrderRejectedException(WorkOrderRejection.Reason.FUTURE_DATE,
           String.format("Date in the future is not allowed."));
     }
 
 
   }
 
+  /**
+   * Constructs a view of a work order that has already been validated, such as one
+   * held in compact form by a repository.
+   *
+   * @param id                - identity of the work order, between 1 and 9223372036854775807.
+   * @param queueEntrySeconds - queue entry date in seconds from the epoch.
+   */
+  public WorkOrder(long id, long queueEntrySeconds) {
+    this(id, queueEntrySeconds, Clock.systemUTC());
+  }
+
+  /**
+   * Constructs a view of a work order that has already been validated, ranked against a clock.
+   *
+   * @param id                - identity of the work order, between 1 and 9223372036854775807.
+   * @param queueEntrySeconds - queue entry date in seconds from the epoch.
+   * @param clock             - the clock to read the current time from.
+   */
+  public WorkOrder(long id, long queueEntrySeconds, Clock clock) {
+    this.id = id;
+    this.workOrderClassification = WorkOrderClassification.determineClassificationFromId(id);
+    this.queueEntrySeconds = queueEntrySeconds;
+    this.clock = clock;
+  }
+
   /**
    * gets the work order id @return identity of the work order.
    */
   public BigInteger getId() {
+    return BigInteger.valueOf(id);
+  }
+
+  /**
+   * gets the work order id as a primitive, all valid ids fit a long @return identity of the work order.
+   */
+  @JsonIgnore
+  public long getIdAsLong() {
     return id;
   }
 
+  /**
+   * Gets the date the work order entered the queue @return queue entry date of the work order.
+   */
+  @JsonIgnore
+  public ZonedDateTime getQueueEntryDate() {
+    return ZonedDateTime.ofInstant(Instant.ofEpochSecond(queueEntrySeconds), ZoneOffset.UTC);
+  }
+
+  /**
+   * Gets the date the work order entered the queue in seconds from the epoch @return queue entry seconds of the work order.
+   */
+  @JsonIgnore
+  public long getQueueEntrySeconds() {
+    return queueEntrySeconds;
+  }
+
   /**
    * Gets the classification of the work order  @return classification of the work order.
    */
@@ -69,9 +144,7 @@ public class WorkOrder implements Comparable<WorkOrder> {
    * gets the time in queue in seconds @return time spend in queue at this time.
    */
   public long getTimeInQueue() {
-    ZonedDateTime now = ZonedDateTime.now();
-    Duration duration = Duration.between(queueEntryDate, now);
-    return duration.getSeconds();
+    return DateConverterUtilities.getEpochSeconds(clock) - queueEntrySeconds;
   }
 
   /**
@@ -81,9 +154,8 @@ public class WorkOrder implements Comparable<WorkOrder> {
    * @return the time in queue since the reference time
    */
   public long getTimeInQueue(String referenceTime) {
-    ZonedDateTime now = DateConverterUtilities.getDateTimefromIso8601StringFormat(referenceTime);
-    Duration duration = Duration.between(queueEntryDate, now);
-    return duration.getSeconds();
+    return DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(referenceTime)
+        - queueEntrySeconds;
   }
 
   /**
@@ -93,20 +165,36 @@ public class WorkOrder implements Comparable<WorkOrder> {
    * @return rank according to the specification
    */
   public double getRank() {
+    return calculateRank(workOrderClassification, this.getTimeInQueue());
+  }
+
+  /**
+   * Determine the rank of a work order of the given classification that has been in the
+   * queue for the given number of seconds. For a classification the rank never decreases
+   * as the time in queue grows, so the oldest work order of a classification is always
+   * its highest ranked.
+   *
+   * @param classification the classification of the work order
+   * @param secondsInQueue the time the work order has spent in the queue
+   * @return rank according to the specification
+   */
+  public static double calculateRank(WorkOrderClassification classification, long secondsInQueue) {
 
     double result;
-    double secondsInQueue = this.getTimeInQueue();
 
-    switch (workOrderClassification) {
+    switch (classification) {
       case MANAGEMENT_OVERRIDE:
         // default to the maximum rank sorting can then happen according to time in queue.
         result = Double.MAX_VALUE;
         break;
       case VIP:
-        result = Math.max(4.0, (2 * secondsInQueue) * Math.log(secondsInQueue));
+        // below 2 seconds the log term is not positive (NaN at 0) so the minimum applies.
+        result = secondsInQueue < 2 ? 4.0
+            : Math.max(4.0, (2 * secondsInQueue) * Math.log(secondsInQueue));
         break;
       case PRIORITY:
-        result = Math.max(3.0, secondsInQueue * Math.log(secondsInQueue));
+        result = secondsInQueue < 2 ? 3.0
+            : Math.max(3.0, secondsInQueue * Math.log(secondsInQueue));
         break;
       default: // NORMAL Priority
         result = secondsInQueue;
@@ -116,7 +204,7 @@ public class WorkOrder implements Comparable<WorkOrder> {
 
   @Override
   /** This CompareTo implementation simply compares the work order identities */ public int compareTo(WorkOrder o) {
-    return (this.id.compareTo(o.id));
+    return Long.compare(this.id, o.id);
   }
 
   @Override
@@ -130,17 +218,17 @@ public class WorkOrder implements Comparable<WorkOrder> {
       return false;
     }
     WorkOrder workOrder = (WorkOrder) o;
-    return Objects.equals(id, workOrder.id);
+    return id == workOrder.id;
   }
 
   @Override
   /** To be compliant the hashCode method also uses only the id value */ public int hashCode() {
-    return Objects.hash(id);
+    return Long.hashCode(id);
   }
 
   @Override
   public String toString() {
-    return "WorkOrder{" + "id=" + id + ", " + "queueEntryDate=" + queueEntryDate + ", workOrderClassification=" + workOrderClassification + '}';
+    return "WorkOrder{" + "id=" + id + ", " + "queueEntryDate=" + getQueueEntryDate() + ", workOrderClassification=" + workOrderClassification + '}';
   }
 
   /**
@@ -0,0 +1,41 @@
+package com.workorder.assignments.workorders.entities;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.util.List;
+
+/**
+ * Class:        WorkOrderBatchResult
+ *               The outcome of adding a batch of work orders to the queue. Every work order
+ *               of the batch is either created or rejected.
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+@ApiModel(description = "The work orders of a batch that were added to the queue and those that were rejected.")
+public class WorkOrderBatchResult {
+
+  @ApiModelProperty(notes = "The work orders that were added to the queue, in batch order.")
+  private final List<WorkOrder> created;
+  @ApiModelProperty(notes = "The work orders that were not added to the queue, in batch order.")
+  private final List<WorkOrderRejection> rejected;
+
+  /**
+   * Creates the outcome of a batch.
+   *
+   * @param created  - the work orders added to the queue.
+   * @param rejected - the work orders that were not added.
+   */
+  public WorkOrderBatchResult(List<WorkOrder> created, List<WorkOrderRejection> rejected) {
+    this.created = created;
+    this.rejected = rejected;
+  }
+
+  public List<WorkOrder> getCreated() {
+    return created;
+  }
+
+  public List<WorkOrderRejection> getRejected() {
+    return rejected;
+  }
+}
@@ -58,4 +58,23 @@ public enum  WorkOrderClassification {
     }
     return workOrderClassification;
   }
+
+  /**
+   * Determines a work order request classification from the id of the work order.
+   * @param id the id field of the work order, must be between 1 and 9223372036854775807.
+   * @return the value to be assigned to the work order request classification.
+   * @throws IllegalArgumentException values less than 1 are not allowed.
+   */
+  public static WorkOrderClassification determineClassificationFromId(long id) {
+
+    if (id < 1L) {
+      throw new IllegalArgumentException("Passed value must be greater then 0");
+    }
+
+    boolean vipTest = (id % 5L) == 0L;
+    if ((id % 3L) == 0L) {
+      return vipTest ? MANAGEMENT_OVERRIDE : PRIORITY;
+    }
+    return vipTest ? VIP : NORMAL;
+  }
 }
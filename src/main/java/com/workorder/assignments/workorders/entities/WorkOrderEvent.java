@@ -0,0 +1,81 @@
+package com.workorder.assignments.workorders.entities;
+
+import com.workorder.assignments.workorders.utilities.DateConverterUtilities;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.math.BigInteger;
+
+/**
+ * Class:        WorkOrderEvent
+ *               Describes a change to the queue as sent to the clients following it.
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+@ApiModel(description = "A change to the queue: a work order added, taken from the top or deleted.")
+public class WorkOrderEvent {
+
+  /** The kinds of change. */
+  public enum Type {
+    ADDED,
+    TAKEN,
+    DELETED
+  }
+
+  @ApiModelProperty(notes = "The position of the change in the stream of changes, each change is one more than the last.")
+  private final long sequence;
+  @ApiModelProperty(notes = "The kind of change.")
+  private final Type type;
+  @ApiModelProperty(notes = "The identity of the work order.")
+  private final BigInteger id;
+  @ApiModelProperty(notes = "The classification of the work order.")
+  private final WorkOrderClassification classification;
+  @ApiModelProperty(notes = "The queue entry date of the work order in ISO 8601 format.")
+  private final String entryDate;
+
+  /**
+   * Creates an event.
+   *
+   * @param sequence  - position of the change in the stream of changes.
+   * @param type      - the kind of change.
+   * @param workOrder - the work order changed.
+   */
+  public WorkOrderEvent(long sequence, Type type, WorkOrder workOrder) {
+    this.sequence = sequence;
+    this.type = type;
+    this.id = workOrder.getId();
+    this.classification = workOrder.getWorkOrderClassification();
+    this.entryDate = DateConverterUtilities.getDateInIso8601Format(workOrder.getQueueEntryDate());
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public BigInteger getId() {
+    return id;
+  }
+
+  public WorkOrderClassification getClassification() {
+    return classification;
+  }
+
+  public String getEntryDate() {
+    return entryDate;
+  }
+
+  @Override
+  public String toString() {
+    return "WorkOrderEvent{" +
+        "sequence=" + sequence +
+        ", type=" + type +
+        ", id=" + id +
+        ", classification=" + classification +
+        ", entryDate=" + entryDate +
+        '}';
+  }
+}
@@ -0,0 +1,67 @@
+package com.workorder.assignments.workorders.entities;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.math.BigInteger;
+
+/**
+ * Class:        WorkOrderPositionNotice
+ *               Tells a client watching a work order how its wait ended.
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+@ApiModel(description = "The answer to a watch on the queue position of a work order.")
+public class WorkOrderPositionNotice {
+
+  /** How the watch ended. */
+  public enum Status {
+    /** The work order reached the position watched for. */
+    REACHED,
+    /** The work order was taken from the top of the queue. */
+    TAKEN,
+    /** The work order was deleted from the queue. */
+    DELETED,
+    /** The work order is not in the queue. */
+    NOT_FOUND,
+    /** The wait ran out before the work order reached the position, watch again to carry on. */
+    WAITING
+  }
+
+  @ApiModelProperty(notes = "The identity of the work order watched.")
+  private final BigInteger id;
+  @ApiModelProperty(notes = "How the watch ended.")
+  private final Status status;
+  @ApiModelProperty(notes = "The queue position of the work order, starting at 0, or -1 if it is no longer queued.")
+  private final int position;
+
+  /**
+   * Creates a notice.
+   *
+   * @param id       - identity of the work order watched.
+   * @param status   - how the watch ended.
+   * @param position - the queue position of the work order or -1.
+   */
+  public WorkOrderPositionNotice(BigInteger id, Status status, int position) {
+    this.id = id;
+    this.status = status;
+    this.position = position;
+  }
+
+  public BigInteger getId() {
+    return id;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public int getPosition() {
+    return position;
+  }
+
+  @Override
+  public String toString() {
+    return "WorkOrderPositionNotice{" + "id=" + id + ", status=" + status + ", position=" + position + '}';
+  }
+}
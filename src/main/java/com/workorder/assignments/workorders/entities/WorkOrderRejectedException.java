@@ -0,0 +1,41 @@
+package com.workorder.assignments.workorders.entities;
+
+/**
+ * Class:        WorkOrderRejectedException
+ *               Thrown when a work order cannot be added to the queue, carrying the reason
+ *               so that whoever catches it need not work the reason out again.
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class WorkOrderRejectedException extends IllegalArgumentException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final WorkOrderRejection.Reason reason;
+
+  /**
+   * Creates the exception.
+   *
+   * @param reason  - the reason the work order was rejected.
+   * @param message - a description of the problem.
+   */
+  public WorkOrderRejectedException(WorkOrderRejection.Reason reason, String message) {
+    super(message);
+    this.reason = reason;
+  }
+
+  /**
+   * Creates the exception for a problem found by another check.
+   *
+   * @param reason - the reason the work order was rejected.
+   * @param cause  - the problem found.
+   */
+  public WorkOrderRejectedException(WorkOrderRejection.Reason reason, IllegalArgumentException cause) {
+    super(cause.getMessage(), cause);
+    this.reason = reason;
+  }
+
+  public WorkOrderRejection.Reason getReason() {
+    return reason;
+  }
+}
@@ -0,0 +1,68 @@
+package com.workorder.assignments.workorders.entities;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Class:        WorkOrderRejection
+ *               Describes a work order of a batch that could not be added to the queue.
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+@ApiModel(description = "A work order of a batch that was not added to the queue and the reason why.")
+public class WorkOrderRejection {
+
+  /** The reasons a work order can be rejected. */
+  public enum Reason {
+    INVALID_ID,
+    INVALID_DATE,
+    FUTURE_DATE,
+    DUPLICATE_ID,
+    STORE_FULL
+  }
+
+  @ApiModelProperty(notes = "The position of the work order in the submitted batch, starting at 0.")
+  private final int index;
+  @ApiModelProperty(notes = "The identity submitted for the work order.")
+  private final String id;
+  @ApiModelProperty(notes = "The reason the work order was rejected.")
+  private final Reason reason;
+  @ApiModelProperty(notes = "A description of the problem.")
+  private final String message;
+
+  /**
+   * Creates a rejection.
+   *
+   * @param index   - position of the work order in the batch.
+   * @param id      - identity submitted for the work order.
+   * @param reason  - the reason the work order was rejected.
+   * @param message - a description of the problem.
+   */
+  public WorkOrderRejection(int index, String id, Reason reason, String message) {
+    this.index = index;
+    this.id = id;
+    this.reason = reason;
+    this.message = message;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public Reason getReason() {
+    return reason;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  @Override
+  public String toString() {
+    return "WorkOrderRejection{" + "index=" + index + ", id=" + id + ", reason=" + reason + '}';
+  }
+}
@@ -0,0 +1,56 @@
+package com.workorder.assignments.workorders.entities;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Class:        WorkOrderSubmission
+ *               The id and queue entry date of one work order in a batch submitted to the
+ *               queue. The values are validated in the same way as a single new work order.
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+@ApiModel(description = "A work order to be added to the queue as part of a batch.")
+public class WorkOrderSubmission {
+
+  @ApiModelProperty(notes = "The identity for the work order, between 1 and 9223372036854775807.")
+  private String id;
+  @ApiModelProperty(notes = "The work order queue entry date. must be in ISO 8601 format. i.e. '2018-11-25T23:45:42Z'")
+  private String entryDate;
+
+  /** Creates an empty submission, used when reading a request. */
+  public WorkOrderSubmission() {
+  }
+
+  /**
+   * Creates a submission.
+   *
+   * @param id        - string representation of the identity.
+   * @param entryDate - string representation of the entry date, Format must be ISO8601.
+   */
+  public WorkOrderSubmission(String id, String entryDate) {
+    this.id = id;
+    this.entryDate = entryDate;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public String getEntryDate() {
+    return entryDate;
+  }
+
+  public void setEntryDate(String entryDate) {
+    this.entryDate = entryDate;
+  }
+
+  @Override
+  public String toString() {
+    return "WorkOrderSubmission{" + "id=" + id + ", entryDate=" + entryDate + '}';
+  }
+}
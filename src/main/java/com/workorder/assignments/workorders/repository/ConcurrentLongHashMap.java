@@ -0,0 +1,274 @@
+package com.workorder.assignments.workorders.repository;
+
+import java.util.concurrent.locks.StampedLock;
+
+/** A concurrent hash map from primitive long keys to values.
+ * The map is split into segments that each have their own lock. A segment is an open
+ * addressing table with linear probing held in a long array of keys and a parallel array of
+ * values, so there are no boxed keys or entry objects. Lookups are optimistic and only take
+ * the segment read lock when a write happened at the same time. Null values are not allowed.
+ * Class:        ConcurrentLongHashMap
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+class ConcurrentLongHashMap<V> {
+
+  /** Number of segments, must be a power of two. */
+  private static final int SEGMENT_COUNT = 64;
+
+  /** Shift to select a segment from the top bits of a hash. */
+  private static final int SEGMENT_SHIFT = Long.SIZE - Integer.numberOfTrailingZeros(SEGMENT_COUNT);
+
+  /** Initial capacity of each segment, must be a power of two. */
+  private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+  private final Segment<V>[] segments = newSegments(SEGMENT_COUNT);
+
+  /** Creates an empty map. */
+  ConcurrentLongHashMap() {
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      segments[i] = new Segment<>();
+    }
+  }
+
+  /** @return an array of empty slots for segments. */
+  @SuppressWarnings("unchecked")
+  private static <V> Segment<V>[] newSegments(int count) {
+    return (Segment<V>[]) new Segment<?>[count];
+  }
+
+  /**
+   * Gets the value for the key.
+   * @param key the key to look up.
+   * @return the value or null if there is no value for the key.
+   */
+  V get(long key) {
+    long hash = hash(key);
+    return segmentFor(hash).get(key, hash);
+  }
+
+  /**
+   * Determines whether there is a value for the key.
+   * @param key the key to look up.
+   * @return true if there is a value for the key; otherwise false.
+   */
+  boolean containsKey(long key) {
+    return get(key) != null;
+  }
+
+  /**
+   * Associates the value with the key unless the key already has a value.
+   * @param key the key to add.
+   * @param value the value to add, must not be null.
+   * @return the value already associated with the key or null if the value was added.
+   */
+  V putIfAbsent(long key, V value) {
+    return putIfAbsent(key, value, null);
+  }
+
+  /**
+   * Associates the value with the key unless the key already has a value, running an action
+   * while the key is still locked if it does. The actions of one key are run in the order
+   * its values changed.
+   * @param key the key to add.
+   * @param value the value to add, must not be null.
+   * @param whenPut run once the value is added, null for nothing.
+   * @return the value already associated with the key or null if the value was added.
+   */
+  V putIfAbsent(long key, V value, Runnable whenPut) {
+    if (value == null) {
+      throw new IllegalArgumentException("Passed value must not be null");
+    }
+    long hash = hash(key);
+    return segmentFor(hash).putIfAbsent(key, hash, value, whenPut);
+  }
+
+  /**
+   * Removes the value for the key.
+   * @param key the key to remove.
+   * @return the value that was removed or null if there was no value for the key.
+   */
+  V remove(long key) {
+    long hash = hash(key);
+    return segmentFor(hash).remove(key, hash, null, null);
+  }
+
+  /**
+   * Removes the value for the key only if it is the given value.
+   * @param key the key to remove.
+   * @param value the value expected for the key.
+   * @return true if the value was removed; otherwise false.
+   */
+  boolean remove(long key, V value) {
+    return remove(key, value, null);
+  }
+
+  /**
+   * Removes the value for the key only if it is the given value, running an action while the
+   * key is still locked if it is. The actions of one key are run in the order its values
+   * changed.
+   * @param key the key to remove.
+   * @param value the value expected for the key.
+   * @param whenRemoved run once the value is removed, null for nothing.
+   * @return true if the value was removed; otherwise false.
+   */
+  boolean remove(long key, V value, Runnable whenRemoved) {
+    long hash = hash(key);
+    return value != null && segmentFor(hash).remove(key, hash, value, whenRemoved) != null;
+  }
+
+  /** @return the number of values in the map. */
+  int size() {
+    int size = 0;
+    for (Segment<V> segment : segments) {
+      size += segment.size;
+    }
+    return size;
+  }
+
+  private Segment<V> segmentFor(long hash) {
+    return segments[(int) (hash >>> SEGMENT_SHIFT)];
+  }
+
+  /** Spreads the bits of the key, this is the finalizer of the 64 bit MurmurHash3. */
+  static long hash(long key) {
+    long hash = key;
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  /** One open addressing table of the map. Empty slots are those with a null value. */
+  private static final class Segment<V> {
+    private final StampedLock lock = new StampedLock();
+    private long[] keys = new long[INITIAL_SEGMENT_CAPACITY];
+    private Object[] values = new Object[INITIAL_SEGMENT_CAPACITY];
+    private volatile int size;
+
+    private V get(long key, long hash) {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp != 0L) {
+        long[] currentKeys = keys;
+        Object[] currentValues = values;
+        if (currentKeys.length == currentValues.length) {
+          V value = find(currentKeys, currentValues, key, hash);
+          if (lock.validate(stamp)) {
+            return value;
+          }
+        }
+      }
+      stamp = lock.readLock();
+      try {
+        return find(keys, values, key, hash);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    private V putIfAbsent(long key, long hash, V value, Runnable whenPut) {
+      long stamp = lock.writeLock();
+      try {
+        int slot = slotFor(key, hash);
+        if (values[slot] != null) {
+          return cast(values[slot]);
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > (values.length >> 1) + (values.length >> 2)) {
+          resize();
+        }
+        if (whenPut != null) {
+          whenPut.run();
+        }
+        return null;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    private V remove(long key, long hash, V expected, Runnable whenRemoved) {
+      long stamp = lock.writeLock();
+      try {
+        int slot = slotFor(key, hash);
+        Object value = values[slot];
+        if ((value == null) || ((expected != null) && (value != expected))) {
+          return null;
+        }
+        deleteSlot(slot);
+        --size;
+        if (whenRemoved != null) {
+          whenRemoved.run();
+        }
+        return cast(value);
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    /** Finds the slot holding the key or the empty slot where it belongs. */
+    private int slotFor(long key, long hash) {
+      int mask = values.length - 1;
+      int slot = (int) hash & mask;
+      while ((values[slot] != null) && (keys[slot] != key)) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    /** Empties a slot, moving later entries of the probe sequence back to close the gap. */
+    private void deleteSlot(int slot) {
+      int mask = values.length - 1;
+      int next = (slot + 1) & mask;
+      while (values[next] != null) {
+        int home = (int) hash(keys[next]) & mask;
+        // move the entry back unless its home lies cyclically between the gap and itself.
+        if (((next - home) & mask) >= ((next - slot) & mask)) {
+          keys[slot] = keys[next];
+          values[slot] = values[next];
+          slot = next;
+        }
+        next = (next + 1) & mask;
+      }
+      values[slot] = null;
+    }
+
+    private void resize() {
+      long[] oldKeys = keys;
+      Object[] oldValues = values;
+      keys = new long[oldKeys.length << 1];
+      values = new Object[oldValues.length << 1];
+      for (int i = 0; i < oldValues.length; i++) {
+        if (oldValues[i] != null) {
+          int slot = slotFor(oldKeys[i], hash(oldKeys[i]));
+          keys[slot] = oldKeys[i];
+          values[slot] = oldValues[i];
+        }
+      }
+    }
+
+    /** Looks up a key in the given table, which may be changed by a writer at the same time. */
+    private V find(long[] currentKeys, Object[] currentValues, long key, long hash) {
+      int mask = currentValues.length - 1;
+      int slot = (int) hash & mask;
+      for (int probes = 0; probes < currentValues.length; probes++) {
+        Object value = currentValues[slot];
+        if (value == null) {
+          return null;
+        }
+        if (currentKeys[slot] == key) {
+          return cast(value);
+        }
+        slot = (slot + 1) & mask;
+      }
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V cast(Object value) {
+      return (V) value;
+    }
+  }
+}
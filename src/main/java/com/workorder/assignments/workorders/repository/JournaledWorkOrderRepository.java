@@ -0,0 +1,602 @@
+package com.workorder.assignments.workorders.repository;
+
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.entities.WorkOrderBatchResult;
+import com.workorder.assignments.workorders.entities.WorkOrderClassification;
+import com.workorder.assignments.workorders.entities.WorkOrderRejectedException;
+import com.workorder.assignments.workorders.entities.WorkOrderRejection;
+import com.workorder.assignments.workorders.entities.WorkOrderSubmission;
+import com.workorder.assignments.workorders.utilities.DateConverterUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/** A work order repository that records every change in a journal so the queue survives a
+ * restart. Changes are appended to the journal under one lock, so the journal holds them in
+ * the order they were made, and then committed outside of it so concurrent requests share a
+ * write. A work order added is only put in the queue once its addition is committed, so no
+ * other request can take or list it before then. A work order taken or deleted leaves the
+ * queue straight away and is put back if the removal cannot be committed, so a request that
+ * fails has left the queue as it was. Reads go straight to the repository.
+ * Every change takes the lock while it is appended, though not while it is committed, so
+ * with the journal changes no longer run in parallel as they do on the lock free repository.
+ * A snapshot of the queue is written periodically and the journal restarted from it, so
+ * restoring the queue reads one snapshot and a short journal rather than the whole history.
+ * Class:        JournaledWorkOrderRepository
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class JournaledWorkOrderRepository implements WorkOrderRepository, Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JournaledWorkOrderRepository.class);
+
+  private final WorkOrderRepositoryImpl repository;
+  private final WorkOrderJournal journal;
+  private final Path journalFile;
+  private final Path snapshotFile;
+  private final ScheduledExecutorService checkpointer;
+
+  /** Keeps the order of the journal the same as the order of the changes. */
+  private final ReentrantLock changeLock = new ReentrantLock();
+
+  /**
+   * The entry seconds of each work order whose addition is journaled but not yet committed
+   * and put in the queue, keyed by id. Guarded by changeLock.
+   */
+  private final Map<Long, Long> pendingAdds = new HashMap<>();
+
+  /** Told of each change, once it is committed. */
+  private final WorkOrderListeners listeners = new WorkOrderListeners();
+
+  private JournaledWorkOrderRepository(WorkOrderRepositoryImpl repository, WorkOrderJournal journal,
+                                       Path journalFile, Path snapshotFile, long snapshotIntervalSeconds) {
+    this.repository = repository;
+    this.journal = journal;
+    this.journalFile = journalFile;
+    this.snapshotFile = snapshotFile;
+    if (snapshotIntervalSeconds > 0) {
+      checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "work-order-snapshot");
+        thread.setDaemon(true);
+        return thread;
+      });
+      checkpointer.scheduleWithFixedDelay(this::scheduledCheckpoint, snapshotIntervalSeconds,
+          snapshotIntervalSeconds, TimeUnit.SECONDS);
+    } else {
+      checkpointer = null;
+    }
+  }
+
+  /**
+   * Restores the queue into the repository from the latest snapshot and the journal written
+   * since, then records every further change to the repository. Once restored a new snapshot
+   * is written and the journal is started again, so the next start only loads a snapshot.
+   * @param repository the repository to restore into, expected to be empty.
+   * @param journalFile the journal file, created if it does not exist.
+   * @param snapshotFile the snapshot file, created if it does not exist.
+   * @param syncMode when changes are made durable, one of PER_OPERATION, INTERVAL or OS.
+   * @param syncIntervalMillis the interval between writes for the INTERVAL mode.
+   * @param snapshotIntervalSeconds the interval between snapshots, 0 for none while running.
+   * @return the journaled repository.
+   * @throws IOException if the snapshot or journal cannot be read or written.
+   */
+  public static JournaledWorkOrderRepository open(WorkOrderRepositoryImpl repository, Path journalFile,
+                                                  Path snapshotFile, String syncMode, long syncIntervalMillis,
+                                                  long snapshotIntervalSeconds) throws IOException {
+    LOGGER.info("ENTRY:open({}, {}, {}, {}, {})", journalFile, snapshotFile, syncMode, syncIntervalMillis,
+        snapshotIntervalSeconds);
+    WorkOrderJournal.SyncMode mode = WorkOrderJournal.SyncMode.valueOf(syncMode);
+    if (snapshotIntervalSeconds < 0) {
+      throw new IllegalArgumentException("The snapshot interval must not be negative");
+    }
+    if (Files.exists(snapshotFile)) {
+      long start = System.nanoTime();
+      int loaded = WorkOrderSnapshot.load(snapshotFile, repository);
+      long elapsedMillis = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      LOGGER.info("open:loaded {} work orders from the snapshot in {} ms, {} per second", loaded,
+          elapsedMillis, (loaded * 1000L) / elapsedMillis);
+    }
+
+    // replaying changes the snapshot already holds leaves the queue the same, so a crash
+    // before the journal was restarted is safe.
+    long[] replayed = new long[1];
+    WorkOrderJournal.RecordHandler handler = new WorkOrderJournal.RecordHandler() {
+      @Override
+      public void add(long id, long entrySeconds) {
+        repository.restoreWorkOrder(id, entrySeconds);
+        ++replayed[0];
+      }
+
+      @Override
+      public void remove(long id) {
+        repository.discardWorkOrder(id);
+        ++replayed[0];
+      }
+    };
+    Path nextJournalFile = nextJournalFile(journalFile);
+    for (Path file : Arrays.asList(journalFile, nextJournalFile)) {
+      if (Files.exists(file)) {
+        WorkOrderJournal.replay(file, handler);
+      }
+    }
+
+    long written = WorkOrderSnapshot.write(snapshotFile, repository.snapshotClassificationQueues());
+    WorkOrderJournal journal = WorkOrderJournal.create(journalFile, mode, syncIntervalMillis);
+    Files.deleteIfExists(nextJournalFile);
+    LOGGER.info("RETURN:open:replayed {} journal records, {} work orders queued", replayed[0], written);
+    return new JournaledWorkOrderRepository(repository, journal, journalFile, snapshotFile,
+        snapshotIntervalSeconds);
+  }
+
+  /**
+   * Writes a snapshot of the queue and restarts the journal from it. Changes are only held
+   * back while the snapshot is taken and the journal is switched to a new file, both of which
+   * are O(1); the snapshot is written while changes carry on.
+   * @return the number of work orders in the snapshot.
+   * @throws IOException if the snapshot or journal cannot be written.
+   */
+  synchronized long checkpoint() throws IOException {
+    LOGGER.info("ENTRY:checkpoint()");
+    Path nextJournalFile = nextJournalFile(journalFile);
+    FileChannel nextJournal = WorkOrderJournal.createFile(nextJournalFile);
+    List<Iterator<QueuedWorkOrder>> snapshot;
+    WorkOrderJournal.Rotation rotation;
+    long sequence = 0L;
+    changeLock.lock();
+    try {
+      snapshot = repository.snapshotClassificationQueues();
+      rotation = journal.rotate(nextJournal);
+      // additions journaled before the switch but not yet in the queue are in neither the
+      // snapshot nor the new journal, so they are journaled again.
+      for (Map.Entry<Long, Long> pendingAdd : pendingAdds.entrySet()) {
+        sequence = journal.appendAdd(pendingAdd.getKey(), pendingAdd.getValue());
+      }
+    } catch (RuntimeException e) {
+      nextJournal.close();
+      throw e;
+    } finally {
+      changeLock.unlock();
+    }
+    rotation.finish();
+    long written = WorkOrderSnapshot.write(snapshotFile, snapshot);
+    journal.commit(sequence);
+    // until the snapshot is in place the old journal is still needed to restore the queue.
+    Files.move(nextJournalFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    LOGGER.info("RETURN:checkpoint:{} work orders", written);
+    return written;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder addWorkOrder(String id, String queueEntryTime) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:addWorkOrder({}, {})", id, queueEntryTime);
+    }
+    WorkOrder workOrder = new WorkOrder(id, queueEntryTime, repository.getClock());
+    QueuedWorkOrder queuedWorkOrder = new QueuedWorkOrder(workOrder.getIdAsLong(), workOrder.getQueueEntrySeconds());
+    List<QueuedWorkOrder> accepted = new ArrayList<>(1);
+    long sequence;
+    changeLock.lock();
+    try {
+      if (!reserveAdd(queuedWorkOrder, accepted)) {
+        throw new WorkOrderRejectedException(WorkOrderRejection.Reason.DUPLICATE_ID,
+            String.format(WorkOrderRepositoryImpl.DUPLICATE_WORK_ORDER_ID_ERROR, id));
+      }
+      sequence = journal.appendAdd(queuedWorkOrder.getId(), queuedWorkOrder.getEntrySeconds());
+    } catch (RuntimeException e) {
+      pendingAdds.keySet().removeAll(getIds(accepted));
+      throw e;
+    } finally {
+      changeLock.unlock();
+    }
+    WorkOrderListeners.Change added = listeners.added(workOrder);
+    commitAdds(sequence, accepted, toList(added));
+    listeners.tell(added);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:addWorkOrder{}", workOrder);
+    }
+    return workOrder;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrderBatchResult addWorkOrders(List<WorkOrderSubmission> submissions) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:addWorkOrders({} work orders)", submissions.size());
+    }
+    long nowSeconds = DateConverterUtilities.getEpochSeconds(repository.getClock());
+    List<WorkOrderRejection> rejected = new ArrayList<>();
+    List<QueuedWorkOrder> validated = new ArrayList<>(submissions.size());
+    for (int index = 0; index < submissions.size(); index++) {
+      validated.add(WorkOrderRepositoryImpl.validateSubmission(index, submissions.get(index), nowSeconds,
+          rejected));
+    }
+
+    List<QueuedWorkOrder> accepted = new ArrayList<>(submissions.size());
+    long sequence = 0L;
+    changeLock.lock();
+    try {
+      for (int index = 0; index < validated.size(); index++) {
+        QueuedWorkOrder queuedWorkOrder = validated.get(index);
+        if (queuedWorkOrder == null) {
+          continue;
+        }
+        // reserving the id here also rejects a repeat of an id earlier in the same batch.
+        if (!reserveAdd(queuedWorkOrder, accepted)) {
+          rejected.add(WorkOrderRepositoryImpl.duplicateRejection(index, submissions.get(index).getId()));
+          continue;
+        }
+        sequence = journal.appendAdd(queuedWorkOrder.getId(), queuedWorkOrder.getEntrySeconds());
+      }
+    } catch (RuntimeException e) {
+      pendingAdds.keySet().removeAll(getIds(accepted));
+      throw e;
+    } finally {
+      changeLock.unlock();
+    }
+    List<WorkOrder> created = new ArrayList<>(accepted.size());
+    List<WorkOrderListeners.Change> changes = new ArrayList<>(accepted.size());
+    for (QueuedWorkOrder queuedWorkOrder : accepted) {
+      WorkOrder workOrder = queuedWorkOrder.toWorkOrder(repository.getClock());
+      created.add(workOrder);
+      changes.add(listeners.added(workOrder));
+    }
+    commitAdds(sequence, accepted, changes);
+    listeners.tell(changes);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:addWorkOrders:{} created, {} rejected", created.size(), rejected.size());
+    }
+    return new WorkOrderBatchResult(created, rejected);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder getNextWorkOrder() {
+    return getNextWorkOrder(workOrder -> true);
+  }
+
+  /**
+   * {@inheritDoc} The removal is committed before the work order is handed over, and should
+   * the hand over fail it is journaled as added again before it is back in the queue.
+   */
+  @Override
+  public WorkOrder getNextWorkOrder(Predicate<WorkOrder> handOver) {
+    WorkOrder workOrder;
+    List<WorkOrderListeners.Change> taken;
+    long sequence;
+    changeLock.lock();
+    try {
+      workOrder = repository.getNextWorkOrder();
+      sequence = appendRemoves(toList(workOrder));
+      taken = record(toList(workOrder), listeners::taken);
+    } finally {
+      changeLock.unlock();
+    }
+    commitRemoves(sequence, toList(workOrder), taken);
+    if (workOrder == null) {
+      return null;
+    }
+    return handOver(workOrder, handOver, taken.get(0)) ? workOrder : null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<WorkOrder> getNextWorkOrders(int count) {
+    List<WorkOrder> workOrders;
+    List<WorkOrderListeners.Change> taken;
+    long sequence;
+    changeLock.lock();
+    try {
+      workOrders = repository.getNextWorkOrders(count);
+      sequence = appendRemoves(workOrders);
+      taken = record(workOrders, listeners::taken);
+    } finally {
+      changeLock.unlock();
+    }
+    commitRemoves(sequence, workOrders, taken);
+    listeners.tell(taken);
+    return workOrders;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<BigInteger> getSortedListOfWorkOrderIds() {
+    return repository.getSortedListOfWorkOrderIds();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<BigInteger> getSortedListOfWorkOrderIds(int offset, int limit) {
+    return repository.getSortedListOfWorkOrderIds(offset, limit);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public PrimitiveIterator.OfLong getSortedWorkOrderIdIterator() {
+    return repository.getSortedWorkOrderIdIterator();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder deleteWorkOrder(BigInteger workOrderId) {
+    WorkOrder workOrder;
+    List<WorkOrderListeners.Change> deleted;
+    long sequence;
+    changeLock.lock();
+    try {
+      workOrder = repository.deleteWorkOrder(workOrderId);
+      sequence = appendRemoves(toList(workOrder));
+      deleted = record(toList(workOrder), listeners::deleted);
+    } finally {
+      changeLock.unlock();
+    }
+    commitRemoves(sequence, toList(workOrder), deleted);
+    listeners.tell(deleted);
+    return workOrder;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getWorkOrderQueuePosition(BigInteger workOrderId) {
+    return repository.getWorkOrderQueuePosition(workOrderId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getQueueMeanWaitTime(String referenceDate) {
+    return repository.getQueueMeanWaitTime(referenceDate);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getWorkOrderCount(WorkOrderClassification classification) {
+    return repository.getWorkOrderCount(classification);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder getOldestWorkOrder(WorkOrderClassification classification) {
+    return repository.getOldestWorkOrder(classification);
+  }
+
+  /**
+   * {@inheritDoc} Listeners are only told of a change once it is in the journal.
+   */
+  @Override
+  public void addWorkOrderListener(WorkOrderListener listener) {
+    listeners.add(listener);
+  }
+
+  /** Writes any outstanding changes and closes the journal. */
+  @Override
+  public void close() throws IOException {
+    if (checkpointer != null) {
+      checkpointer.shutdown();
+    }
+    synchronized (this) {
+      journal.close();
+    }
+  }
+
+  /**
+   * Hands over a work order taken from the queue, journaling it as added again and putting it
+   * back in its place if it cannot be handed over. Listeners are told it was taken unless it
+   * is put back.
+   * @param workOrder the work order taken, its removal committed.
+   * @param handOver receives the work order, returns false if it could not be handed over.
+   * @param taken the change recorded as the work order was taken.
+   * @return true if it was handed over; otherwise false.
+   */
+  private boolean handOver(WorkOrder workOrder, Predicate<WorkOrder> handOver, WorkOrderListeners.Change taken) {
+    boolean handedOver = false;
+    try {
+      handedOver = handOver.test(workOrder);
+    } finally {
+      boolean returned = false;
+      try {
+        returned = !handedOver && putBack(workOrder);
+      } finally {
+        if (returned) {
+          listeners.cancel(taken);
+        } else {
+          listeners.tell(taken);
+        }
+      }
+    }
+    return handedOver;
+  }
+
+  /**
+   * Puts a work order taken from the queue back in its place, journaled as added again.
+   * @param workOrder the work order taken.
+   * @return true if it is back in the queue; false if its id has been added again since.
+   */
+  private boolean putBack(WorkOrder workOrder) {
+    QueuedWorkOrder queuedWorkOrder = new QueuedWorkOrder(workOrder.getIdAsLong(), workOrder.getQueueEntrySeconds());
+    List<QueuedWorkOrder> accepted = new ArrayList<>(1);
+    long sequence;
+    changeLock.lock();
+    try {
+      if (!reserveAdd(queuedWorkOrder, accepted)) {
+        LOGGER.warn("DUPLICATE:getNextWorkOrder:{} was added again before it could be put back", workOrder);
+        return false;
+      }
+      sequence = journal.appendAdd(queuedWorkOrder.getId(), queuedWorkOrder.getEntrySeconds());
+    } catch (RuntimeException e) {
+      pendingAdds.keySet().removeAll(getIds(accepted));
+      throw e;
+    } finally {
+      changeLock.unlock();
+    }
+    commitAdds(sequence, accepted, Collections.emptyList());
+    return true;
+  }
+
+  /**
+   * Reserves the id of a work order to add, must hold changeLock.
+   * @param queuedWorkOrder the work order to add.
+   * @param accepted receives the work order if it is reserved.
+   * @return true if it is reserved; false if the id is queued or being added already.
+   */
+  private boolean reserveAdd(QueuedWorkOrder queuedWorkOrder, List<QueuedWorkOrder> accepted) {
+    if (repository.containsWorkOrder(queuedWorkOrder.getId())
+        || (pendingAdds.putIfAbsent(queuedWorkOrder.getId(), queuedWorkOrder.getEntrySeconds()) != null)) {
+      return false;
+    }
+    accepted.add(queuedWorkOrder);
+    return true;
+  }
+
+  /**
+   * Commits the addition of reserved work orders and then puts them in the queue. Whether or
+   * not the commit succeeds the reservations are released; the queue is changed under the
+   * lock so a checkpoint sees each work order either reserved or queued, and the changes are
+   * recorded along with it so they are told in the order of the journal.
+   * @param added the changes to record once the work orders are in the queue, nulls for none.
+   * @throws java.io.UncheckedIOException if the journal cannot be written, nothing is added.
+   */
+  private void commitAdds(long sequence, List<QueuedWorkOrder> accepted, List<WorkOrderListeners.Change> added) {
+    boolean committed = false;
+    try {
+      journal.commit(sequence);
+      committed = true;
+    } finally {
+      changeLock.lock();
+      try {
+        pendingAdds.keySet().removeAll(getIds(accepted));
+        if (committed) {
+          repository.restoreWorkOrders(accepted);
+          added.forEach(listeners::record);
+        }
+      } finally {
+        changeLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Journals the removal of work orders already taken from the queue, must hold changeLock.
+   * @return the sequence to commit.
+   * @throws java.io.UncheckedIOException if the journal has failed, the work orders are put back.
+   */
+  private long appendRemoves(List<WorkOrder> removed) {
+    long sequence = 0L;
+    try {
+      for (WorkOrder workOrder : removed) {
+        sequence = journal.appendRemove(workOrder.getIdAsLong());
+      }
+    } catch (RuntimeException e) {
+      restore(removed);
+      throw e;
+    }
+    return sequence;
+  }
+
+  /**
+   * Commits the removal of work orders already taken from the queue, putting them back and
+   * withdrawing their changes if it cannot be committed.
+   * @throws java.io.UncheckedIOException if the journal cannot be written.
+   */
+  private void commitRemoves(long sequence, List<WorkOrder> removed, List<WorkOrderListeners.Change> changes) {
+    try {
+      journal.commit(sequence);
+    } catch (RuntimeException e) {
+      restore(removed);
+      listeners.cancel(changes);
+      throw e;
+    }
+  }
+
+  /**
+   * Records a change for each work order taken or deleted, must hold changeLock so the changes
+   * are recorded in the order of the journal.
+   * @param workOrders the work orders changed.
+   * @param change creates the change of a work order.
+   * @return the changes recorded, nulls where there are no listeners to tell.
+   */
+  private List<WorkOrderListeners.Change> record(List<WorkOrder> workOrders,
+                                                 Function<WorkOrder, WorkOrderListeners.Change> change) {
+    List<WorkOrderListeners.Change> changes = new ArrayList<>(workOrders.size());
+    for (WorkOrder workOrder : workOrders) {
+      WorkOrderListeners.Change recorded = change.apply(workOrder);
+      listeners.record(recorded);
+      changes.add(recorded);
+    }
+    return changes;
+  }
+
+  private void restore(List<WorkOrder> removed) {
+    for (WorkOrder workOrder : removed) {
+      repository.restoreWorkOrder(workOrder.getIdAsLong(), workOrder.getQueueEntrySeconds());
+    }
+  }
+
+  private static <T> List<T> toList(T item) {
+    return (item != null) ? Collections.singletonList(item) : Collections.emptyList();
+  }
+
+  private static List<Long> getIds(List<QueuedWorkOrder> workOrders) {
+    List<Long> ids = new ArrayList<>(workOrders.size());
+    for (QueuedWorkOrder workOrder : workOrders) {
+      ids.add(workOrder.getId());
+    }
+    return ids;
+  }
+
+  private void scheduledCheckpoint() {
+    try {
+      checkpoint();
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("checkpoint:the snapshot could not be written", e);
+    }
+  }
+
+  private static Path nextJournalFile(Path journalFile) {
+    return journalFile.resolveSibling(journalFile.getFileName() + ".next");
+  }
+}
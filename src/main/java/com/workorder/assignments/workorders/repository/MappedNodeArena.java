@@ -0,0 +1,169 @@
+package com.workorder.assignments.workorders.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Fixed width work order records held off the Java heap.
+ * Each node holds a work order and its links in the queue of its classification: the id, the
+ * queue entry seconds, the sum of the entry seconds of its subtree, the left and right child,
+ * a random priority and the size of its subtree. Nodes are addressed by an int index, 0 is
+ * never allocated and stands for no node. Memory is mapped in chunks that are never moved, so
+ * the arena grows without copying, and freed nodes are reused before a new chunk is mapped.
+ * The arena is not thread safe, the repository using it guards it with a lock.
+ * Class:        MappedNodeArena
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+final class MappedNodeArena {
+
+  private static final int ID = 0;
+  private static final int ENTRY_SECONDS = 8;
+  private static final int SUM = 16;
+  private static final int LEFT = 24;
+  private static final int RIGHT = 28;
+  private static final int PRIORITY = 32;
+  private static final int SIZE = 36;
+  static final int NODE_SIZE = 40;
+
+  /** Nodes per chunk, a power of two. */
+  private static final int CHUNK_SHIFT = 20;
+  private static final int CHUNK_NODES = 1 << CHUNK_SHIFT;
+  private static final int CHUNK_MASK = CHUNK_NODES - 1;
+
+  private final Path directory;
+  private final List<ByteBuffer> chunks = new ArrayList<>();
+  private int nextNode = 1;
+  private int freeList;
+  private int allocated;
+
+  /**
+   * Creates an empty arena.
+   * @param directory the directory to create the files backing the memory in.
+   */
+  MappedNodeArena(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Allocates a node for a work order with no children.
+   * @param id the id of the work order.
+   * @param entrySeconds the queue entry time in seconds from the epoch.
+   * @param priority the random priority of the node.
+   * @return the index of the node.
+   */
+  int allocate(long id, long entrySeconds, int priority) {
+    int node = freeList;
+    if (node != 0) {
+      freeList = getLeft(node);
+    } else {
+      if (!hasRoom()) {
+        throw new IllegalStateException("The off heap work order store is full.");
+      }
+      node = nextNode;
+      // map the chunk before taking the node, so a failure leaves the arena as it was.
+      if ((node >>> CHUNK_SHIFT) == chunks.size()) {
+        chunks.add(OffHeapMemory.map(directory, "workorder-nodes", (long) CHUNK_NODES * NODE_SIZE));
+      }
+      ++nextNode;
+    }
+    ByteBuffer chunk = chunk(node);
+    int offset = offset(node);
+    chunk.putLong(offset + ID, id);
+    chunk.putLong(offset + ENTRY_SECONDS, entrySeconds);
+    chunk.putLong(offset + SUM, entrySeconds);
+    chunk.putInt(offset + LEFT, 0);
+    chunk.putInt(offset + RIGHT, 0);
+    chunk.putInt(offset + PRIORITY, priority);
+    chunk.putInt(offset + SIZE, 1);
+    ++allocated;
+    return node;
+  }
+
+  /**
+   * Frees a node for reuse.
+   * @param node the index of the node.
+   */
+  void free(int node) {
+    setLeft(node, freeList);
+    freeList = node;
+    --allocated;
+  }
+
+  /** @return true if another node can be allocated. */
+  boolean hasRoom() {
+    return (freeList != 0) || (nextNode != Integer.MAX_VALUE);
+  }
+
+  /** @return the number of nodes in use. */
+  int size() {
+    return allocated;
+  }
+
+  long getId(int node) {
+    return chunk(node).getLong(offset(node) + ID);
+  }
+
+  long getEntrySeconds(int node) {
+    return chunk(node).getLong(offset(node) + ENTRY_SECONDS);
+  }
+
+  int getLeft(int node) {
+    return chunk(node).getInt(offset(node) + LEFT);
+  }
+
+  int getRight(int node) {
+    return chunk(node).getInt(offset(node) + RIGHT);
+  }
+
+  int getPriority(int node) {
+    return chunk(node).getInt(offset(node) + PRIORITY);
+  }
+
+  /** @return the number of nodes in the subtree, 0 for no node. */
+  int getSize(int node) {
+    return node == 0 ? 0 : chunk(node).getInt(offset(node) + SIZE);
+  }
+
+  /** @return the sum of the entry seconds in the subtree, 0 for no node. */
+  long getSum(int node) {
+    return node == 0 ? 0L : chunk(node).getLong(offset(node) + SUM);
+  }
+
+  void setLeft(int node, int left) {
+    chunk(node).putInt(offset(node) + LEFT, left);
+  }
+
+  void setRight(int node, int right) {
+    chunk(node).putInt(offset(node) + RIGHT, right);
+  }
+
+  /**
+   * Sets the children of a node and recomputes its subtree size and sum.
+   * @param node the index of the node.
+   * @param left the left child.
+   * @param right the right child.
+   */
+  void link(int node, int left, int right) {
+    ByteBuffer chunk = chunk(node);
+    int offset = offset(node);
+    chunk.putInt(offset + LEFT, left);
+    chunk.putInt(offset + RIGHT, right);
+    chunk.putInt(offset + SIZE, getSize(left) + getSize(right) + 1);
+    chunk.putLong(offset + SUM, getSum(left) + getSum(right) + chunk.getLong(offset + ENTRY_SECONDS));
+  }
+
+  /** @return the work order held in the node, created on the heap. */
+  QueuedWorkOrder toQueuedWorkOrder(int node) {
+    return new QueuedWorkOrder(getId(node), getEntrySeconds(node));
+  }
+
+  private ByteBuffer chunk(int node) {
+    return chunks.get(node >>> CHUNK_SHIFT);
+  }
+
+  private static int offset(int node) {
+    return (node & CHUNK_MASK) * NODE_SIZE;
+  }
+}
@@ -0,0 +1,358 @@
+package com.workorder.assignments.workorders.repository;
+
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.entities.WorkOrderBatchResult;
+import com.workorder.assignments.workorders.entities.WorkOrderClassification;
+import com.workorder.assignments.workorders.entities.WorkOrderRejectedException;
+import com.workorder.assignments.workorders.entities.WorkOrderRejection;
+import com.workorder.assignments.workorders.entities.WorkOrderSubmission;
+import com.workorder.assignments.workorders.utilities.DateConverterUtilities;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Clock;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/** Records metrics for the operations of a work order repository.
+ * Class:        MeteredWorkOrderRepository
+ *               Wraps a repository and times each operation in a latency histogram tagged
+ *               with the operation. Every meter is created up front, so timing an operation
+ *               costs two reads of the clock and a histogram update and nothing is looked up
+ *               or allocated on the way. Gauges read the depth and oldest entry of each
+ *               classification from the repository only when they are scraped. When the
+ *               repository keeps statistics, the count of reads shared by concurrent callers
+ *               and the time and size of the rankings of the whole queue it made are read
+ *               the same way. Those rankings are recorded where they are made, so a list
+ *               answered from a ranking already made is not counted as one.
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class MeteredWorkOrderRepository implements WorkOrderRepository, Closeable {
+
+  /** Name of the timer of each repository operation, tagged with the operation. */
+  static final String OPERATION_TIMER = "workorders.repository.operation";
+
+  /** Name of the timer of the rankings of the whole queue. */
+  static final String SORT_TIMER = "workorders.repository.sort";
+
+  /** Name of the counter of the work orders ranked over every ranking of the whole queue. */
+  static final String SORT_SIZE_COUNTER = "workorders.repository.sort.size";
+
+  /** Name of the counter of work orders taken from the top of the queue. */
+  static final String DEQUEUED_COUNTER = "workorders.repository.dequeued";
+
+  /** Name of the counter of work orders rejected, tagged with the reason. */
+  static final String REJECTED_COUNTER = "workorders.repository.rejected";
+
+  /** Name of the counter of reads answered by sharing the same read already in progress. */
+  static final String COALESCED_COUNTER = "workorders.repository.coalesced";
+
+  /** Name of the gauge of the number of work orders of each classification. */
+  static final String DEPTH_GAUGE = "workorders.queue.depth";
+
+  /** Name of the gauge of how long the oldest work order of each classification has waited. */
+  static final String OLDEST_AGE_GAUGE = "workorders.queue.oldest.age";
+
+  private final WorkOrderRepository repository;
+  private final MeterRegistry registry;
+
+  private final Timer addTimer;
+  private final Timer addBatchTimer;
+  private final Timer takeTimer;
+  private final Timer takeBatchTimer;
+  private final Timer sortedListTimer;
+  private final Timer sortedPageTimer;
+  private final Timer deleteTimer;
+  private final Timer positionTimer;
+  private final Timer meanWaitTimer;
+  private final Counter dequeued;
+  private final Map<WorkOrderRejection.Reason, Counter> rejected = new EnumMap<>(WorkOrderRejection.Reason.class);
+
+  /**
+   * Wraps a repository and registers its meters, along with the meters of its statistics
+   * should it keep any.
+   * @param repository the repository to record metrics for.
+   * @param registry the registry to register the meters with.
+   */
+  public MeteredWorkOrderRepository(WorkOrderRepository repository, MeterRegistry registry) {
+    this(repository, (repository instanceof WorkOrderRepositoryStatistics)
+        ? (WorkOrderRepositoryStatistics) repository : null, registry, Clock.systemUTC());
+  }
+
+  /**
+   * Wraps a repository and registers its meters.
+   * @param repository the repository to record metrics for.
+   * @param statistics the statistics kept for the repository or null if none are kept.
+   * @param registry the registry to register the meters with.
+   * @param clock the clock the age of the oldest work orders is read against.
+   */
+  public MeteredWorkOrderRepository(WorkOrderRepository repository, WorkOrderRepositoryStatistics statistics,
+      MeterRegistry registry, Clock clock) {
+    this.repository = repository;
+    this.registry = registry;
+    addTimer = operationTimer("add");
+    addBatchTimer = operationTimer("addBatch");
+    takeTimer = operationTimer("take");
+    takeBatchTimer = operationTimer("takeBatch");
+    sortedListTimer = operationTimer("sortedList");
+    sortedPageTimer = operationTimer("sortedPage");
+    deleteTimer = operationTimer("delete");
+    positionTimer = operationTimer("position");
+    meanWaitTimer = operationTimer("meanWait");
+    dequeued = Counter.builder(DEQUEUED_COUNTER)
+        .description("Work orders taken from the top of the queue")
+        .register(registry);
+    for (WorkOrderRejection.Reason reason : WorkOrderRejection.Reason.values()) {
+      rejected.put(reason, Counter.builder(REJECTED_COUNTER)
+          .description("Work orders that could not be added to the queue")
+          .tag("reason", reason.name())
+          .register(registry));
+    }
+    if (statistics != null) {
+      FunctionCounter.builder(COALESCED_COUNTER, statistics, WorkOrderRepositoryStatistics::getCoalescedReadCount)
+          .description("Reads answered by waiting for the same read already in progress for another caller")
+          .register(registry);
+      FunctionTimer.builder(SORT_TIMER, statistics, WorkOrderRepositoryStatistics::getRankedOrderSorts,
+          WorkOrderRepositoryStatistics::getRankedOrderSortNanos, TimeUnit.NANOSECONDS)
+          .description("Time taken ranking the whole queue")
+          .register(registry);
+      FunctionCounter.builder(SORT_SIZE_COUNTER, statistics, WorkOrderRepositoryStatistics::getRankedOrderSortedWorkOrders)
+          .description("Work orders ranked over every ranking of the whole queue")
+          .baseUnit("workorders")
+          .register(registry);
+    }
+    for (WorkOrderClassification classification : WorkOrderClassification.values()) {
+      Gauge.builder(DEPTH_GAUGE, repository, queued -> queued.getWorkOrderCount(classification))
+          .description("Work orders in the queue")
+          .tag("classification", classification.name())
+          .register(registry);
+      Gauge.builder(OLDEST_AGE_GAUGE, repository, queued -> oldestAgeSeconds(queued, classification, clock))
+          .description("Time the oldest work order in the queue has waited")
+          .tag("classification", classification.name())
+          .baseUnit("seconds")
+          .register(registry);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder addWorkOrder(String id, String queueEntryTime) {
+    long start = registry.config().clock().monotonicTime();
+    try {
+      return repository.addWorkOrder(id, queueEntryTime);
+    } catch (WorkOrderRejectedException e) {
+      rejected.get(e.getReason()).increment();
+      throw e;
+    } finally {
+      record(addTimer, start);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrderBatchResult addWorkOrders(List<WorkOrderSubmission> submissions) {
+    long start = registry.config().clock().monotonicTime();
+    try {
+      WorkOrderBatchResult result = repository.addWorkOrders(submissions);
+      for (WorkOrderRejection rejection : result.getRejected()) {
+        rejected.get(rejection.getReason()).increment();
+      }
+      return result;
+    } finally {
+      record(addBatchTimer, start);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder getNextWorkOrder() {
+    long start = registry.config().clock().monotonicTime();
+    try {
+      WorkOrder workOrder = repository.getNextWorkOrder();
+      if (workOrder != null) {
+        dequeued.increment();
+      }
+      return workOrder;
+    } finally {
+      record(takeTimer, start);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<WorkOrder> getNextWorkOrders(int count) {
+    long start = registry.config().clock().monotonicTime();
+    try {
+      List<WorkOrder> workOrders = repository.getNextWorkOrders(count);
+      dequeued.increment(workOrders.size());
+      return workOrders;
+    } finally {
+      record(takeBatchTimer, start);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Only a work order handed over is counted as dequeued.
+   */
+  @Override
+  public WorkOrder getNextWorkOrder(Predicate<WorkOrder> handOver) {
+    long start = registry.config().clock().monotonicTime();
+    try {
+      WorkOrder workOrder = repository.getNextWorkOrder(handOver);
+      if (workOrder != null) {
+        dequeued.increment();
+      }
+      return workOrder;
+    } finally {
+      record(takeTimer, start);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<BigInteger> getSortedListOfWorkOrderIds() {
+    long start = registry.config().clock().monotonicTime();
+    try {
+      return repository.getSortedListOfWorkOrderIds();
+    } finally {
+      record(sortedListTimer, start);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<BigInteger> getSortedListOfWorkOrderIds(int offset, int limit) {
+    long start = registry.config().clock().monotonicTime();
+    try {
+      return repository.getSortedListOfWorkOrderIds(offset, limit);
+    } finally {
+      record(sortedPageTimer, start);
+    }
+  }
+
+  /**
+   * {@inheritDoc} The work orders are ranked as the iterator is read, after this returns, so
+   * streaming the list is not timed here.
+   */
+  @Override
+  public PrimitiveIterator.OfLong getSortedWorkOrderIdIterator() {
+    return repository.getSortedWorkOrderIdIterator();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder deleteWorkOrder(BigInteger workOrderId) {
+    long start = registry.config().clock().monotonicTime();
+    try {
+      return repository.deleteWorkOrder(workOrderId);
+    } finally {
+      record(deleteTimer, start);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getWorkOrderQueuePosition(BigInteger workOrderId) {
+    long start = registry.config().clock().monotonicTime();
+    try {
+      return repository.getWorkOrderQueuePosition(workOrderId);
+    } finally {
+      record(positionTimer, start);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getQueueMeanWaitTime(String referenceDate) {
+    long start = registry.config().clock().monotonicTime();
+    try {
+      return repository.getQueueMeanWaitTime(referenceDate);
+    } finally {
+      record(meanWaitTimer, start);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getWorkOrderCount(WorkOrderClassification classification) {
+    return repository.getWorkOrderCount(classification);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder getOldestWorkOrder(WorkOrderClassification classification) {
+    return repository.getOldestWorkOrder(classification);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addWorkOrderListener(WorkOrderListener listener) {
+    repository.addWorkOrderListener(listener);
+  }
+
+  /** Closes the wrapped repository if it needs closing. */
+  @Override
+  public void close() throws IOException {
+    if (repository instanceof Closeable) {
+      ((Closeable) repository).close();
+    }
+  }
+
+  private Timer operationTimer(String operation) {
+    return Timer.builder(OPERATION_TIMER)
+        .description("Time taken by each work order repository operation")
+        .tag("operation", operation)
+        .publishPercentileHistogram()
+        .minimumExpectedValue(Duration.ofNanos(100L))
+        .maximumExpectedValue(Duration.ofSeconds(30L))
+        .register(registry);
+  }
+
+  private void record(Timer timer, long start) {
+    timer.record(registry.config().clock().monotonicTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  private static double oldestAgeSeconds(WorkOrderRepository repository, WorkOrderClassification classification,
+      Clock clock) {
+    WorkOrder oldest = repository.getOldestWorkOrder(classification);
+    return oldest != null
+        ? Math.max(0L, DateConverterUtilities.getEpochSeconds(clock) - oldest.getQueueEntrySeconds()) : 0.0;
+  }
+}
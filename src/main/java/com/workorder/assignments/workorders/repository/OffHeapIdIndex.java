@@ -0,0 +1,161 @@
+package com.workorder.assignments.workorders.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/** A hash index from work order id to node held off the Java heap.
+ * The index is an open addressing table with linear probing where each slot holds only the
+ * index of a node, 0 for an empty slot, and the id is read from the node itself. The table is
+ * doubled into a newly mapped region when room is reserved in a table already half full, and
+ * is full once it is half full at its maximum capacity. The index is not thread safe, the
+ * repository using it guards it with a lock.
+ * Class:        OffHeapIdIndex
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+final class OffHeapIdIndex {
+
+  private static final int SLOT_SIZE = Integer.BYTES;
+
+  /** The most slots one mapped region can hold, a power of two. */
+  static final int MAXIMUM_CAPACITY = 1 << 28;
+
+  private final Path directory;
+  private final MappedNodeArena arena;
+  private ByteBuffer slots;
+  private int capacity;
+  private int size;
+
+  /**
+   * Creates an empty index.
+   * @param directory the directory to create the files backing the memory in.
+   * @param arena the nodes the index refers to.
+   * @param initialCapacity the number of slots to start with, rounded up to a power of two.
+   */
+  OffHeapIdIndex(Path directory, MappedNodeArena arena, int initialCapacity) {
+    if ((initialCapacity < 1) || (initialCapacity > MAXIMUM_CAPACITY)) {
+      throw new IllegalArgumentException("The initial capacity must be between 1 and " + MAXIMUM_CAPACITY);
+    }
+    this.directory = directory;
+    this.arena = arena;
+    this.capacity = Math.max(16, Integer.highestOneBit(initialCapacity - 1) << 1);
+    this.slots = OffHeapMemory.map(directory, "workorder-ids", (long) capacity * SLOT_SIZE);
+  }
+
+  /**
+   * Gets the node for the id.
+   * @param id the id to look up.
+   * @return the index of the node or 0 if the id is not indexed.
+   */
+  int get(long id) {
+    return getSlot(slot(id));
+  }
+
+  /**
+   * Makes room to index one more id, growing the table first if indexing it would leave the
+   * table more than half full, so that indexing it cannot then fail.
+   * @return false if the index is full and cannot grow.
+   */
+  boolean reserve() {
+    if (size < (capacity >> 1)) {
+      return true;
+    }
+    if (capacity == MAXIMUM_CAPACITY) {
+      return false;
+    }
+    resize();
+    return true;
+  }
+
+  /**
+   * Indexes a node by the id it holds unless the id is already indexed. Room must have been
+   * reserved first.
+   * @param node the index of the node.
+   * @return 0 if the node was indexed, otherwise the node already indexed for the id.
+   * @throws IllegalStateException if no room was reserved.
+   */
+  int putIfAbsent(int node) {
+    int slot = slot(arena.getId(node));
+    int existing = getSlot(slot);
+    if (existing != 0) {
+      return existing;
+    }
+    if (size >= (capacity >> 1)) {
+      throw new IllegalStateException("No room was reserved in the off heap work order id index.");
+    }
+    setSlot(slot, node);
+    ++size;
+    return 0;
+  }
+
+  /**
+   * Removes the id from the index.
+   * @param id the id to remove.
+   * @return the index of the node that was indexed or 0 if the id was not indexed.
+   */
+  int remove(long id) {
+    int slot = slot(id);
+    int node = getSlot(slot);
+    if (node == 0) {
+      return 0;
+    }
+    // empty the slot, moving later entries of the probe sequence back to close the gap.
+    int mask = capacity - 1;
+    int next = (slot + 1) & mask;
+    while (getSlot(next) != 0) {
+      int home = home(arena.getId(getSlot(next)));
+      if (((next - home) & mask) >= ((next - slot) & mask)) {
+        setSlot(slot, getSlot(next));
+        slot = next;
+      }
+      next = (next + 1) & mask;
+    }
+    setSlot(slot, 0);
+    --size;
+    return node;
+  }
+
+  /** @return the number of ids indexed. */
+  int size() {
+    return size;
+  }
+
+  /** Finds the slot holding the id or the empty slot where it belongs. */
+  private int slot(long id) {
+    int mask = capacity - 1;
+    int slot = home(id);
+    int node = getSlot(slot);
+    while ((node != 0) && (arena.getId(node) != id)) {
+      slot = (slot + 1) & mask;
+      node = getSlot(slot);
+    }
+    return slot;
+  }
+
+  private int home(long id) {
+    return (int) ConcurrentLongHashMap.hash(id) & (capacity - 1);
+  }
+
+  private void resize() {
+    ByteBuffer oldSlots = slots;
+    int oldCapacity = capacity;
+    // map the new table before changing anything, so a failure leaves the index as it was.
+    ByteBuffer newSlots = OffHeapMemory.map(directory, "workorder-ids", (long) (capacity << 1) * SLOT_SIZE);
+    slots = newSlots;
+    capacity <<= 1;
+    for (int i = 0; i < oldCapacity; i++) {
+      int node = oldSlots.getInt(i * SLOT_SIZE);
+      if (node != 0) {
+        setSlot(slot(arena.getId(node)), node);
+      }
+    }
+  }
+
+  private int getSlot(int slot) {
+    return slots.getInt(slot * SLOT_SIZE);
+  }
+
+  private void setSlot(int slot, int node) {
+    slots.putInt(slot * SLOT_SIZE, node);
+  }
+}
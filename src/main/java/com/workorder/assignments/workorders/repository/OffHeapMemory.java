@@ -0,0 +1,51 @@
+package com.workorder.assignments.workorders.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Allocates memory outside of the Java heap by mapping temporary files.
+ * The file backing a region is deleted as soon as it is mapped, the mapping keeps the memory
+ * until the buffer is garbage collected. The OS pages the memory out to the file under memory
+ * pressure, so a region can be larger than the physical memory free for it.
+ * Class:        OffHeapMemory
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+final class OffHeapMemory {
+
+  /** The largest region that can be mapped as one buffer. */
+  static final int MAXIMUM_REGION_SIZE = Integer.MAX_VALUE;
+
+  /** This is a helper static class so hide the default constructor. */
+  private OffHeapMemory() {
+    // hide default constructor
+  }
+
+  /**
+   * Maps a new zero filled region of memory.
+   * @param directory the directory to create the backing file in.
+   * @param prefix the prefix of the name of the backing file.
+   * @param size the size of the region in bytes.
+   * @return the region.
+   * @throws UncheckedIOException if the region cannot be mapped.
+   */
+  static ByteBuffer map(Path directory, String prefix, long size) {
+    if ((size < 1) || (size > MAXIMUM_REGION_SIZE)) {
+      throw new IllegalArgumentException(String.format("Cannot map a region of %d bytes", size));
+    }
+    try {
+      Path file = Files.createTempFile(directory, prefix, ".map");
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+          StandardOpenOption.DELETE_ON_CLOSE)) {
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot map off heap memory in " + directory, e);
+    }
+  }
+}
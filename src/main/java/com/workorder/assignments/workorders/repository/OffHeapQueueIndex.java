@@ -0,0 +1,231 @@
+package com.workorder.assignments.workorders.repository;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** An order-statistic index of the work orders of one classification in queue entry order,
+ * held off the Java heap. This is the same treap as {@link QueueEntryIndex}, ordered by entry
+ * time and then id with subtree sizes and entry second sums, but its nodes live in a
+ * {@link MappedNodeArena} and are changed in place. The index is not thread safe, the
+ * repository using it guards it with a lock.
+ * Class:        OffHeapQueueIndex
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+final class OffHeapQueueIndex {
+
+  /** Tests a work order of the index by its fields as they are read from the arena. */
+  interface EntryPredicate {
+
+    /**
+     * @param id the id of the work order.
+     * @param entrySeconds the queue entry time in seconds from the epoch.
+     * @return the result of the test.
+     */
+    boolean test(long id, long entrySeconds);
+  }
+
+  private final MappedNodeArena arena;
+  private int root;
+
+  /**
+   * Creates an empty index.
+   * @param arena the arena holding the nodes.
+   */
+  OffHeapQueueIndex(MappedNodeArena arena) {
+    this.arena = arena;
+  }
+
+  /**
+   * Allocates a node for the work order and adds it to the index.
+   * @param id the id of the work order, not already in the index.
+   * @param entrySeconds the queue entry time in seconds from the epoch.
+   * @return the index of the node.
+   */
+  int add(long id, long entrySeconds) {
+    int node = arena.allocate(id, entrySeconds, ThreadLocalRandom.current().nextInt());
+    root = insert(root, node);
+    return node;
+  }
+
+  /**
+   * Removes a node from the index and frees it.
+   * @param node the index of a node in the index.
+   */
+  void remove(int node) {
+    root = delete(root, arena.getEntrySeconds(node), arena.getId(node));
+    arena.free(node);
+  }
+
+  /** @return the first node in the index or 0 if it is empty. */
+  int first() {
+    int node = root;
+    if (node == 0) {
+      return 0;
+    }
+    while (arena.getLeft(node) != 0) {
+      node = arena.getLeft(node);
+    }
+    return node;
+  }
+
+  /** @return the number of work orders in the index. */
+  int size() {
+    return arena.getSize(root);
+  }
+
+  /**
+   * Counts the work orders at the start of the index that match the predicate. The predicate
+   * must hold for a prefix of the index and not for anything after it. The work orders are
+   * tested from the fields of their nodes, nothing is allocated.
+   * @param predicate the predicate to test work orders with.
+   * @return the length of the prefix matching the predicate.
+   */
+  int countWhile(EntryPredicate predicate) {
+    int count = 0;
+    int node = root;
+    while (node != 0) {
+      if (predicate.test(arena.getId(node), arena.getEntrySeconds(node))) {
+        count += arena.getSize(arena.getLeft(node)) + 1;
+        node = arena.getRight(node);
+      } else {
+        node = arena.getLeft(node);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Counts and sums the entry seconds of the work orders that entered the queue by a time.
+   * @param referenceSeconds the time in seconds from the epoch.
+   * @return the number of work orders and the sum of their entry seconds.
+   */
+  long[] countAndSumEnteredBy(long referenceSeconds) {
+    int count = 0;
+    long sum = 0L;
+    int node = root;
+    while (node != 0) {
+      if (arena.getEntrySeconds(node) <= referenceSeconds) {
+        int left = arena.getLeft(node);
+        count += arena.getSize(left) + 1;
+        sum += arena.getSum(left) + arena.getEntrySeconds(node);
+        node = arena.getRight(node);
+      } else {
+        node = arena.getLeft(node);
+      }
+    }
+    return new long[] {count, sum};
+  }
+
+  /**
+   * Copies the work orders after a position in the index, so the index can be read a part at
+   * a time.
+   * @param entrySeconds the entry seconds of the last work order already read.
+   * @param id the id of the last work order already read.
+   * @param workOrders receives the work orders, up to its length.
+   * @return the number of work orders copied, less than the length at the end of the index.
+   */
+  int copyAfter(long entrySeconds, long id, QueuedWorkOrder[] workOrders) {
+    int[] path = new int[64];
+    int depth = 0;
+    int node = root;
+    while (node != 0) {
+      if (compare(entrySeconds, id, node) < 0) {
+        if (depth == path.length) {
+          path = Arrays.copyOf(path, depth << 1);
+        }
+        path[depth++] = node;
+        node = arena.getLeft(node);
+      } else {
+        node = arena.getRight(node);
+      }
+    }
+    int count = 0;
+    while ((count < workOrders.length) && (depth > 0)) {
+      node = path[--depth];
+      workOrders[count++] = arena.toQueuedWorkOrder(node);
+      node = arena.getRight(node);
+      while (node != 0) {
+        if (depth == path.length) {
+          path = Arrays.copyOf(path, depth << 1);
+        }
+        path[depth++] = node;
+        node = arena.getLeft(node);
+      }
+    }
+    return count;
+  }
+
+  private int insert(int node, int value) {
+    if (node == 0) {
+      return value;
+    }
+    if (arena.getPriority(value) > arena.getPriority(node)) {
+      long parts = split(node, arena.getEntrySeconds(value), arena.getId(value));
+      arena.link(value, (int) (parts >>> 32), (int) parts);
+      return value;
+    }
+    if (compare(arena.getEntrySeconds(value), arena.getId(value), node) < 0) {
+      arena.link(node, insert(arena.getLeft(node), value), arena.getRight(node));
+    } else {
+      arena.link(node, arena.getLeft(node), insert(arena.getRight(node), value));
+    }
+    return node;
+  }
+
+  private int delete(int node, long entrySeconds, long id) {
+    if (node == 0) {
+      return 0;
+    }
+    int result = compare(entrySeconds, id, node);
+    if (result == 0) {
+      return merge(arena.getLeft(node), arena.getRight(node));
+    }
+    if (result < 0) {
+      arena.link(node, delete(arena.getLeft(node), entrySeconds, id), arena.getRight(node));
+    } else {
+      arena.link(node, arena.getLeft(node), delete(arena.getRight(node), entrySeconds, id));
+    }
+    return node;
+  }
+
+  /**
+   * Splits the tree into the nodes before and the nodes after the given position.
+   * @return the two roots packed into a long, before in the high half.
+   */
+  private long split(int node, long entrySeconds, long id) {
+    if (node == 0) {
+      return 0L;
+    }
+    if (compare(entrySeconds, id, node) < 0) {
+      long parts = split(arena.getLeft(node), entrySeconds, id);
+      arena.link(node, (int) parts, arena.getRight(node));
+      return (parts & 0xffffffff00000000L) | (node & 0xffffffffL);
+    }
+    long parts = split(arena.getRight(node), entrySeconds, id);
+    arena.link(node, arena.getLeft(node), (int) (parts >>> 32));
+    return ((long) node << 32) | (parts & 0xffffffffL);
+  }
+
+  /** Joins two trees where every node of the first is before every node of the second. */
+  private int merge(int first, int second) {
+    if (first == 0) {
+      return second;
+    }
+    if (second == 0) {
+      return first;
+    }
+    if (arena.getPriority(first) > arena.getPriority(second)) {
+      arena.link(first, arena.getLeft(first), merge(arena.getRight(first), second));
+      return first;
+    }
+    arena.link(second, merge(first, arena.getLeft(second)), arena.getRight(second));
+    return second;
+  }
+
+  /** Compares a position with a node in queue entry order. */
+  private int compare(long entrySeconds, long id, int node) {
+    int result = Long.compare(entrySeconds, arena.getEntrySeconds(node));
+    return result != 0 ? result : Long.compare(id, arena.getId(node));
+  }
+}
@@ -0,0 +1,698 @@
+package com.workorder.assignments.workorders.repository;
+
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.entities.WorkOrderBatchResult;
+import com.workorder.assignments.workorders.entities.WorkOrderClassification;
+import com.workorder.assignments.workorders.entities.WorkOrderRejectedException;
+import com.workorder.assignments.workorders.entities.WorkOrderRejection;
+import com.workorder.assignments.workorders.entities.WorkOrderSubmission;
+import com.workorder.assignments.workorders.utilities.DateConverterUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/** A work order repository that holds the queue outside of the Java heap.
+ * Every work order is a fixed width node in memory mapped files, found by id through an off
+ * heap hash index and kept in queue entry order in an off heap treap per classification, the
+ * same layout as {@link WorkOrderRepositoryImpl} uses on the heap. The garbage collector has
+ * nothing to trace however deep the queue grows; work orders only become heap objects while a
+ * request is answered. Changes take a write lock and reads a read lock. Long reads such as the
+ * sorted list copy the queue a batch at a time, so they see changes made while they run.
+ * The queue is held only in memory and is lost on restart.
+ * Class:        OffHeapWorkOrderRepository
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class OffHeapWorkOrderRepository implements WorkOrderRepository, Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapWorkOrderRepository.class);
+
+  /** Number of work orders copied to the heap at a time when iterating over the queue. */
+  private static final int READ_BATCH_SIZE = 1024;
+
+  /** The most work orders the store can hold, as the id index is kept at most half full. */
+  public static final int MAXIMUM_CAPACITY = OffHeapIdIndex.MAXIMUM_CAPACITY >> 1;
+
+  /** Error message when the store has no room for another work order. */
+  static final String STORE_FULL_ERROR =
+      "The work order store is full, the work order for this id '%s' was not added.";
+
+  /** The classifications by ordinal, the classification of each queue. */
+  private static final WorkOrderClassification[] CLASSIFICATIONS = WorkOrderClassification.values();
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final MappedNodeArena arena;
+  private final OffHeapIdIndex idIndex;
+
+  /** The work orders of each classification in queue entry order, indexed by classification ordinal. */
+  private final OffHeapQueueIndex[] classificationQueues;
+
+  /** Told of each work order added, taken or deleted. */
+  private final WorkOrderListeners listeners = new WorkOrderListeners();
+
+  /** The clock work orders are validated and ranked against. */
+  private final Clock clock;
+
+  /** The most work orders the store may hold. */
+  private final int maximumCapacity;
+
+  private boolean closed;
+
+  /**
+   * Creates an empty repository.
+   * @param directory the directory to create the files backing the memory in.
+   * @param initialCapacity the number of work orders to size the id index for.
+   */
+  public OffHeapWorkOrderRepository(Path directory, int initialCapacity) {
+    this(directory, initialCapacity, Clock.systemUTC());
+  }
+
+  /**
+   * Creates an empty repository that validates and ranks work orders against a clock.
+   * @param directory the directory to create the files backing the memory in.
+   * @param initialCapacity the number of work orders to size the id index for.
+   * @param clock the clock to read the current time from.
+   * @throws IllegalArgumentException if the initial capacity is not positive.
+   */
+  public OffHeapWorkOrderRepository(Path directory, int initialCapacity, Clock clock) {
+    this(directory, initialCapacity, MAXIMUM_CAPACITY, clock);
+  }
+
+  /**
+   * Creates an empty repository that holds at most a number of work orders.
+   * @param directory the directory to create the files backing the memory in.
+   * @param initialCapacity the number of work orders to size the id index for.
+   * @param maximumCapacity the most work orders to hold, further adds being rejected.
+   * @param clock the clock to read the current time from.
+   * @throws IllegalArgumentException if a capacity is not positive or the maximum is more
+   *                                  than {@link #MAXIMUM_CAPACITY}.
+   */
+  public OffHeapWorkOrderRepository(Path directory, int initialCapacity, int maximumCapacity, Clock clock) {
+    if (initialCapacity < 1) {
+      throw new IllegalArgumentException("The initial capacity must be greater then 0");
+    }
+    if ((maximumCapacity < 1) || (maximumCapacity > MAXIMUM_CAPACITY)) {
+      throw new IllegalArgumentException("The maximum capacity must be between 1 and " + MAXIMUM_CAPACITY);
+    }
+    this.clock = clock;
+    this.maximumCapacity = maximumCapacity;
+    arena = new MappedNodeArena(directory);
+    // the id index is kept at most half full, so it starts with twice the slots, up to its limit.
+    idIndex = new OffHeapIdIndex(directory, arena,
+        (int) Math.min(2L * initialCapacity, OffHeapIdIndex.MAXIMUM_CAPACITY));
+    classificationQueues = new OffHeapQueueIndex[WorkOrderClassification.values().length];
+    for (int i = 0; i < classificationQueues.length; i++) {
+      classificationQueues[i] = new OffHeapQueueIndex(arena);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder addWorkOrder(String id, String queueEntryTime) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:addWorkOrder({}, {})", id, queueEntryTime);
+    }
+    WorkOrder newWorkOrder = new WorkOrder(id, queueEntryTime, clock);
+    WorkOrderListeners.Change added = listeners.added(newWorkOrder);
+    lock.writeLock().lock();
+    try {
+      if (!insert(newWorkOrder.getIdAsLong(), newWorkOrder.getQueueEntrySeconds())) {
+        throw new WorkOrderRejectedException(WorkOrderRejection.Reason.DUPLICATE_ID,
+            String.format(WorkOrderRepositoryImpl.DUPLICATE_WORK_ORDER_ID_ERROR, id));
+      }
+      listeners.record(added);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    listeners.tell(added);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:addWorkOrder{}", newWorkOrder);
+    }
+    return newWorkOrder;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrderBatchResult addWorkOrders(List<WorkOrderSubmission> submissions) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:addWorkOrders({} work orders)", submissions.size());
+    }
+    long nowSeconds = DateConverterUtilities.getEpochSeconds(clock);
+    List<WorkOrder> created = new ArrayList<>();
+    List<WorkOrderRejection> rejected = new ArrayList<>();
+    List<QueuedWorkOrder> validated = new ArrayList<>(submissions.size());
+    for (int index = 0; index < submissions.size(); index++) {
+      validated.add(WorkOrderRepositoryImpl.validateSubmission(index, submissions.get(index), nowSeconds,
+          rejected));
+    }
+
+    List<WorkOrderListeners.Change> changes = new ArrayList<>();
+    lock.writeLock().lock();
+    try {
+      for (int index = 0; index < validated.size(); index++) {
+        QueuedWorkOrder queuedWorkOrder = validated.get(index);
+        if (queuedWorkOrder == null) {
+          continue;
+        }
+        boolean inserted;
+        try {
+          inserted = insert(queuedWorkOrder.getId(), queuedWorkOrder.getEntrySeconds());
+        } catch (WorkOrderRejectedException e) {
+          rejected.add(new WorkOrderRejection(index, submissions.get(index).getId(), e.getReason(),
+              e.getMessage()));
+          continue;
+        }
+        if (inserted) {
+          WorkOrder workOrder = queuedWorkOrder.toWorkOrder(clock);
+          WorkOrderListeners.Change added = listeners.added(workOrder);
+          listeners.record(added);
+          created.add(workOrder);
+          changes.add(added);
+        } else {
+          rejected.add(WorkOrderRepositoryImpl.duplicateRejection(index, submissions.get(index).getId()));
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+      listeners.tell(changes);
+    }
+    rejected.sort((r1, r2) -> Integer.compare(r1.getIndex(), r2.getIndex()));
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:addWorkOrders:{} created, {} rejected", created.size(), rejected.size());
+    }
+    return new WorkOrderBatchResult(created, rejected);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder getNextWorkOrder() {
+    return getNextWorkOrder(workOrder -> true);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder getNextWorkOrder(Predicate<WorkOrder> handOver) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:getNextWorkOrder()");
+    }
+    WorkOrder workOrder = null;
+    WorkOrderListeners.Change taken;
+    lock.writeLock().lock();
+    try {
+      QueuedWorkOrder foundWorkOrder = takeTopWorkOrder(DateConverterUtilities.getEpochSeconds(clock));
+      if (foundWorkOrder != null) {
+        workOrder = foundWorkOrder.toWorkOrder(clock);
+      }
+      taken = listeners.taken(workOrder);
+      listeners.record(taken);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    if (workOrder == null) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("EMPTY LIST:getNextWorkOrder");
+      }
+      return null;
+    }
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("FOUND:getNextWorkOrder:{}", workOrder);
+    }
+    return handOver(workOrder, handOver, taken) ? workOrder : null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<WorkOrder> getNextWorkOrders(int count) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:getNextWorkOrders({})", count);
+    }
+    if (count < 1) {
+      throw new IllegalArgumentException(String.format(WorkOrderRepositoryImpl.INVALID_COUNT_ERROR, count));
+    }
+    List<WorkOrder> workOrders = new ArrayList<>();
+    List<WorkOrderListeners.Change> changes = new ArrayList<>();
+    long referenceSeconds = DateConverterUtilities.getEpochSeconds(clock);
+    lock.writeLock().lock();
+    try {
+      QueuedWorkOrder foundWorkOrder;
+      while ((workOrders.size() < count) && ((foundWorkOrder = takeTopWorkOrder(referenceSeconds)) != null)) {
+        WorkOrder workOrder = foundWorkOrder.toWorkOrder(clock);
+        WorkOrderListeners.Change taken = listeners.taken(workOrder);
+        listeners.record(taken);
+        workOrders.add(workOrder);
+        changes.add(taken);
+      }
+    } finally {
+      lock.writeLock().unlock();
+      listeners.tell(changes);
+    }
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:getNextWorkOrders:{} work orders", workOrders.size());
+    }
+    return workOrders;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<BigInteger> getSortedListOfWorkOrderIds() {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:getSortedListOfWorkOrderIds()");
+    }
+    Iterator<QueuedWorkOrder> rankOrder = getRankOrderIterator();
+    List<BigInteger> returnList = new ArrayList<>(size());
+    while (rankOrder.hasNext()) {
+      returnList.add(BigInteger.valueOf(rankOrder.next().getId()));
+    }
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:getSortedListOfWorkOrderIds:{} work orders", returnList.size());
+    }
+    return returnList;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<BigInteger> getSortedListOfWorkOrderIds(int offset, int limit) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:getSortedListOfWorkOrderIds({}, {})", offset, limit);
+    }
+    if ((offset < 0) || (limit < 0)) {
+      throw new IllegalArgumentException(String.format(WorkOrderRepositoryImpl.INVALID_PAGE_ERROR, offset, limit));
+    }
+    Iterator<QueuedWorkOrder> rankOrder = getRankOrderIterator();
+    for (int i = 0; (i < offset) && rankOrder.hasNext(); i++) {
+      rankOrder.next();
+    }
+    List<BigInteger> returnList = new ArrayList<>(Math.min(limit, size()));
+    while ((returnList.size() < limit) && rankOrder.hasNext()) {
+      returnList.add(BigInteger.valueOf(rankOrder.next().getId()));
+    }
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:getSortedListOfWorkOrderIds:{} work orders", returnList.size());
+    }
+    return returnList;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public PrimitiveIterator.OfLong getSortedWorkOrderIdIterator() {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:getSortedWorkOrderIdIterator()");
+    }
+    Iterator<QueuedWorkOrder> rankOrder = getRankOrderIterator();
+    return new PrimitiveIterator.OfLong() {
+      @Override
+      public boolean hasNext() {
+        return rankOrder.hasNext();
+      }
+
+      @Override
+      public long nextLong() {
+        return rankOrder.next().getId();
+      }
+    };
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder deleteWorkOrder(BigInteger workOrderId) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:deleteWorkOrder({})", workOrderId);
+    }
+    WorkOrder workOrder = null;
+    WorkOrderListeners.Change deleted = null;
+    if (isValidKey(workOrderId)) {
+      lock.writeLock().lock();
+      try {
+        QueuedWorkOrder queuedWorkOrder = remove(workOrderId.longValue());
+        workOrder = queuedWorkOrder != null ? queuedWorkOrder.toWorkOrder(clock) : null;
+        deleted = listeners.deleted(workOrder);
+        listeners.record(deleted);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+    listeners.tell(deleted);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:deleteWorkOrder:{}", workOrder);
+    }
+    return workOrder;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getWorkOrderQueuePosition(BigInteger workOrderId) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:getWorkOrderQueuePosition({})", workOrderId);
+    }
+    int foundIndex = -1;
+    if (isValidKey(workOrderId)) {
+      lock.readLock().lock();
+      try {
+        checkOpen();
+        int node = idIndex.get(workOrderId.longValue());
+        if (node != 0) {
+          QueuedWorkOrder workOrder = arena.toQueuedWorkOrder(node);
+          long referenceSeconds = DateConverterUtilities.getEpochSeconds(clock);
+          double rank = workOrder.getRank(referenceSeconds);
+          foundIndex = 0;
+          for (int i = 0; i < classificationQueues.length; i++) {
+            WorkOrderClassification classification = CLASSIFICATIONS[i];
+            foundIndex += classificationQueues[i].countWhile((id, entrySeconds) ->
+                QueuedWorkOrder.isRankedBefore(id, entrySeconds,
+                    WorkOrder.calculateRank(classification, referenceSeconds - entrySeconds),
+                    workOrder.getId(), workOrder.getEntrySeconds(), rank));
+          }
+        }
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+    if (foundIndex >= 0) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("RETURN:getWorkOrderQueuePosition:{}", foundIndex);
+      }
+    }
+    return foundIndex;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getQueueMeanWaitTime(String referenceDate) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:getQueueMeanWaitTime({})", referenceDate);
+    }
+    long count = 0L;
+    double sum = 0.0;
+    lock.readLock().lock();
+    try {
+      checkOpen();
+      if (idIndex.size() == 0) {
+        // nothing queued, so there is no wait to average whatever the reference date.
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug("RETURN:getQueueMeanWaitTime:{}", 0.0);
+        }
+        return 0.0;
+      }
+      long referenceSeconds = DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(referenceDate);
+      for (OffHeapQueueIndex classificationQueue : classificationQueues) {
+        long[] countAndSum = classificationQueue.countAndSumEnteredBy(referenceSeconds);
+        count += countAndSum[0];
+        sum += (countAndSum[0] * (double) referenceSeconds) - countAndSum[1];
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    double mean = 0.0;
+    if (count > 0) {
+      mean = sum / count;
+    }
+    else {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("getQueueMeanWaitTime:NO_VALID_WORKORDER_DATESIN_THE_PAST_FROM_REFERENCE");
+      }
+    }
+
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:getQueueMeanWaitTime:{}", mean);
+    }
+    return mean;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getWorkOrderCount(WorkOrderClassification classification) {
+    lock.readLock().lock();
+    try {
+      checkOpen();
+      return classificationQueues[classification.ordinal()].size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder getOldestWorkOrder(WorkOrderClassification classification) {
+    lock.readLock().lock();
+    try {
+      checkOpen();
+      int node = classificationQueues[classification.ordinal()].first();
+      return node != 0 ? arena.toQueuedWorkOrder(node).toWorkOrder(clock) : null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addWorkOrderListener(WorkOrderListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Closes the repository so it can no longer be used. The mapped memory is given back once
+   * the repository is garbage collected.
+   */
+  @Override
+  public void close() {
+    lock.writeLock().lock();
+    try {
+      closed = true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** @return the number of work orders in the repository. */
+  int size() {
+    lock.readLock().lock();
+    try {
+      return idIndex.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Hands over a work order taken from the queue, putting it back in its place if it cannot be
+   * handed over. Listeners are told it was taken unless it is put back.
+   * @param workOrder the work order taken.
+   * @param handOver receives the work order, returns false if it could not be handed over.
+   * @param taken the change recorded as the work order was taken.
+   * @return true if it was handed over; otherwise false.
+   */
+  private boolean handOver(WorkOrder workOrder, Predicate<WorkOrder> handOver, WorkOrderListeners.Change taken) {
+    boolean handedOver = false;
+    try {
+      handedOver = handOver.test(workOrder);
+    } finally {
+      boolean returned = false;
+      try {
+        returned = !handedOver && putBack(workOrder);
+      } finally {
+        if (returned) {
+          listeners.cancel(taken);
+        } else {
+          listeners.tell(taken);
+        }
+      }
+    }
+    return handedOver;
+  }
+
+  /**
+   * Puts a work order taken from the queue back in its place.
+   * @param workOrder the work order taken.
+   * @return true if it is back in the queue; false if its id has been added again since or
+   *         the store has filled up since.
+   */
+  private boolean putBack(WorkOrder workOrder) {
+    boolean returned;
+    lock.writeLock().lock();
+    try {
+      returned = insert(workOrder.getIdAsLong(), workOrder.getQueueEntrySeconds());
+    } catch (WorkOrderRejectedException e) {
+      LOGGER.warn("FULL:getNextWorkOrder:{} could not be put back, {}", workOrder, e.getMessage());
+      return false;
+    } finally {
+      lock.writeLock().unlock();
+    }
+    if (!returned) {
+      LOGGER.warn("DUPLICATE:getNextWorkOrder:{} was added again before it could be put back", workOrder);
+    }
+    return returned;
+  }
+
+  /**
+   * Adds a work order unless its id is already in the repository. The write lock must be held.
+   * Room is made for the work order before it is placed in any index, so a store that is full
+   * is left as it was.
+   * @return true if it was added; false if the id is already in the repository.
+   * @throws WorkOrderRejectedException with the reason STORE_FULL if there is no room for it.
+   */
+  private boolean insert(long id, long entrySeconds) {
+    checkOpen();
+    if (idIndex.get(id) != 0) {
+      return false;
+    }
+    if ((idIndex.size() >= maximumCapacity) || !arena.hasRoom() || !idIndex.reserve()) {
+      throw new WorkOrderRejectedException(WorkOrderRejection.Reason.STORE_FULL,
+          String.format(STORE_FULL_ERROR, id));
+    }
+    OffHeapQueueIndex classificationQueue =
+        classificationQueues[WorkOrderClassification.determineClassificationFromId(id).ordinal()];
+    idIndex.putIfAbsent(classificationQueue.add(id, entrySeconds));
+    return true;
+  }
+
+  /**
+   * Removes a work order. The write lock must be held.
+   * @return the work order removed or null if the id is not in the repository.
+   */
+  private QueuedWorkOrder remove(long id) {
+    checkOpen();
+    int node = idIndex.remove(id);
+    if (node == 0) {
+      return null;
+    }
+    QueuedWorkOrder workOrder = arena.toQueuedWorkOrder(node);
+    classificationQueues[workOrder.getClassificationOrdinal()].remove(node);
+    return workOrder;
+  }
+
+  /**
+   * Removes the highest ranked work order by comparing the heads of the classification queues.
+   * The write lock must be held.
+   * @param referenceSeconds the time to rank at in seconds from the epoch.
+   * @return the work order removed or null if the repository is empty.
+   */
+  private QueuedWorkOrder takeTopWorkOrder(long referenceSeconds) {
+    checkOpen();
+    QueuedWorkOrder topWorkOrder = null;
+    int topOrdinal = -1;
+    int topNode = 0;
+    for (int ordinal = 0; ordinal < classificationQueues.length; ordinal++) {
+      int node = classificationQueues[ordinal].first();
+      if (node != 0) {
+        QueuedWorkOrder head = arena.toQueuedWorkOrder(node);
+        if ((topWorkOrder == null) || head.isRankedBefore(topWorkOrder, referenceSeconds)) {
+          topWorkOrder = head;
+          topOrdinal = ordinal;
+          topNode = node;
+        }
+      }
+    }
+    if (topWorkOrder != null) {
+      idIndex.remove(topWorkOrder.getId());
+      classificationQueues[topOrdinal].remove(topNode);
+    }
+    return topWorkOrder;
+  }
+
+  /**
+   * Gets an iterator over the repository in rank order at the current time. The iterator
+   * reads each classification queue a batch at a time, so it sees changes made while it runs.
+   * @return the work orders from the highest ranked down.
+   */
+  private Iterator<QueuedWorkOrder> getRankOrderIterator() {
+    List<Iterator<QueuedWorkOrder>> sources = new ArrayList<>(classificationQueues.length);
+    for (OffHeapQueueIndex classificationQueue : classificationQueues) {
+      sources.add(new QueueIterator(classificationQueue));
+    }
+    return new RankOrderIterator(sources, DateConverterUtilities.getEpochSeconds(clock));
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("The off heap work order repository is closed.");
+    }
+  }
+
+  private static boolean isValidKey(BigInteger workOrderId) {
+    return (workOrderId != null) && (workOrderId.signum() > 0) && (workOrderId.bitLength() < Long.SIZE);
+  }
+
+  /** Reads a classification queue in queue entry order a batch at a time. */
+  private final class QueueIterator implements Iterator<QueuedWorkOrder> {
+
+    private final OffHeapQueueIndex classificationQueue;
+    private final QueuedWorkOrder[] batch = new QueuedWorkOrder[READ_BATCH_SIZE];
+    private int batchSize;
+    private int position;
+    private long lastEntrySeconds = Long.MIN_VALUE;
+    private long lastId = Long.MIN_VALUE;
+    private boolean exhausted;
+
+    QueueIterator(OffHeapQueueIndex classificationQueue) {
+      this.classificationQueue = classificationQueue;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if ((position == batchSize) && !exhausted) {
+        lock.readLock().lock();
+        try {
+          checkOpen();
+          batchSize = classificationQueue.copyAfter(lastEntrySeconds, lastId, batch);
+        } finally {
+          lock.readLock().unlock();
+        }
+        position = 0;
+        exhausted = batchSize < batch.length;
+      }
+      return position < batchSize;
+    }
+
+    @Override
+    public QueuedWorkOrder next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      QueuedWorkOrder workOrder = batch[position];
+      batch[position++] = null;
+      lastEntrySeconds = workOrder.getEntrySeconds();
+      lastId = workOrder.getId();
+      return workOrder;
+    }
+  }
+}
@@ -0,0 +1,458 @@
+package com.workorder.assignments.workorders.repository;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/** An order-statistic index of the work orders of one classification in queue entry order.
+ * The index is a treap whose nodes are never modified once published. Every change copies
+ * the path to the changed node and swaps in the new root, so a reader works on a consistent
+ * snapshot without locking and a change that loses a race with another simply retries.
+ * Each node records the size of its subtree so positions are counted in O(log n), and the
+ * sum of a weight of each value in its subtree so a prefix of the index is summed in O(log n).
+ * Class:        QueueEntryIndex
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+class QueueEntryIndex<T> {
+
+  /** The ordering of the index, must be consistent with equals. */
+  private final Comparator<? super T> order;
+
+  /** The weight of a value that is summed over each subtree. */
+  private final ToLongFunction<? super T> weight;
+
+  /** The current root of the treap, null when the index is empty. */
+  private final AtomicReference<Node<T>> root = new AtomicReference<>();
+
+  /**
+   * Creates an empty index.
+   * @param order the ordering of the values in the index.
+   */
+  QueueEntryIndex(Comparator<? super T> order) {
+    this(order, value -> 0L);
+  }
+
+  /**
+   * Creates an empty index that sums the weight of its values.
+   * @param order the ordering of the values in the index.
+   * @param weight the weight of a value.
+   */
+  QueueEntryIndex(Comparator<? super T> order, ToLongFunction<? super T> weight) {
+    this.order = order;
+    this.weight = weight;
+  }
+
+  /**
+   * Adds the value to the index.
+   * @param value the value to add.
+   * @return true if it was added; false if an equal value is already indexed.
+   */
+  boolean add(T value) {
+    int priority = ThreadLocalRandom.current().nextInt();
+    Node<T> current;
+    do {
+      current = root.get();
+      if (find(current, value) != null) {
+        return false;
+      }
+    } while (!root.compareAndSet(current, insert(current, value, priority)));
+    return true;
+  }
+
+  /**
+   * Adds the value to the index, taking the place of an equal value already indexed.
+   * @param value the value to add.
+   */
+  void put(T value) {
+    int priority = ThreadLocalRandom.current().nextInt();
+    Node<T> current;
+    Node<T> replacement;
+    do {
+      current = root.get();
+      Node<T> found = find(current, value);
+      if ((found != null) && (found.value == value)) {
+        return;
+      }
+      replacement = insert(found != null ? delete(current, value) : current, value, priority);
+    } while (!root.compareAndSet(current, replacement));
+  }
+
+  /**
+   * Adds a batch of values to the index in a single change. The batch is built into a treap
+   * of its own which is then joined with the index, so the index is only swapped once.
+   * @param values the values to add, in index order and none of them already indexed.
+   */
+  void addAll(List<T> values) {
+    if (values.isEmpty()) {
+      return;
+    }
+    int[] priorities = ThreadLocalRandom.current().ints(values.size()).toArray();
+    Node<T> batch = build(values, priorities, 0, values.size());
+    Node<T> current;
+    do {
+      current = root.get();
+    } while (!root.compareAndSet(current, union(current, batch)));
+  }
+
+  /**
+   * Removes the value from the index.
+   * @param value the value to remove.
+   * @return true if it was removed; false if it is not indexed.
+   */
+  boolean remove(T value) {
+    return remove(value, false);
+  }
+
+  /**
+   * Removes the very value from the index, an equal value that has taken its place is left
+   * alone. This lets a request finish a removal another request started without undoing a
+   * later add of an equal value.
+   * @param value the value to remove.
+   * @return true if it was removed; false if it is not indexed.
+   */
+  boolean removeInstance(T value) {
+    return remove(value, true);
+  }
+
+  private boolean remove(T value, boolean sameInstance) {
+    Node<T> current;
+    Node<T> replacement;
+    do {
+      current = root.get();
+      Node<T> found = find(current, value);
+      if ((found == null) || (sameInstance && (found.value != value))) {
+        return false;
+      }
+      replacement = delete(current, value);
+    } while (!root.compareAndSet(current, replacement));
+    return true;
+  }
+
+  /** @return the first value in the index or null if it is empty. */
+  T first() {
+    Node<T> node = root.get();
+    if (node == null) {
+      return null;
+    }
+    while (node.left != null) {
+      node = node.left;
+    }
+    return node.value;
+  }
+
+  /** @return the number of values in the index. */
+  int size() {
+    return size(root.get());
+  }
+
+  /**
+   * Gets the value at a position in the index in O(log n).
+   * @param index the position of the value, from 0.
+   * @return the value at the position.
+   * @throws IndexOutOfBoundsException if there is no value at the position.
+   */
+  T get(int index) {
+    int position = index;
+    Node<T> node = root.get();
+    while (node != null) {
+      int leftSize = size(node.left);
+      if (position == leftSize) {
+        return node.value;
+      }
+      if (position < leftSize) {
+        node = node.left;
+      } else {
+        position -= leftSize + 1;
+        node = node.right;
+      }
+    }
+    throw new IndexOutOfBoundsException("Index: " + index);
+  }
+
+  /**
+   * Gets an index of the values indexed now. The snapshot shares the nodes of this index, so
+   * it costs nothing to take, and changes made to this index afterwards do not show in it.
+   * @return an index of the values in this index.
+   */
+  QueueEntryIndex<T> snapshot() {
+    QueueEntryIndex<T> snapshot = new QueueEntryIndex<>(order, weight);
+    snapshot.root.set(root.get());
+    return snapshot;
+  }
+
+  /**
+   * Counts the values at the start of the index that match the predicate. The predicate must
+   * hold for a prefix of the index and not for anything after it.
+   * @param predicate the predicate to test values with.
+   * @return the length of the prefix matching the predicate.
+   */
+  int countWhile(Predicate<? super T> predicate) {
+    int count = 0;
+    Node<T> node = root.get();
+    while (node != null) {
+      if (predicate.test(node.value)) {
+        count += size(node.left) + 1;
+        node = node.right;
+      } else {
+        node = node.left;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Counts and sums the weight of the values at the start of the index that match the
+   * predicate, both from the same snapshot of the index. The predicate must hold for a prefix
+   * of the index and not for anything after it.
+   * @param predicate the predicate to test values with.
+   * @return the length of the prefix matching the predicate and the sum of its weights.
+   */
+  long[] countAndSumWhile(Predicate<? super T> predicate) {
+    int count = 0;
+    long sum = 0L;
+    Node<T> node = root.get();
+    while (node != null) {
+      if (predicate.test(node.value)) {
+        count += size(node.left) + 1;
+        sum += sum(node.left) + weight.applyAsLong(node.value);
+        node = node.right;
+      } else {
+        node = node.left;
+      }
+    }
+    return new long[] {count, sum};
+  }
+
+  /**
+   * Copies the values into a new array in index order. The array is a consistent snapshot.
+   * @param generator creates an array of the requested length.
+   * @return the values of the index in order.
+   */
+  T[] toArray(IntFunction<T[]> generator) {
+    Node<T> snapshot = root.get();
+    T[] values = generator.apply(size(snapshot));
+    fill(snapshot, values, 0);
+    return values;
+  }
+
+  /**
+   * Iterates over a consistent snapshot of the index in index order. Only the path to the
+   * current value is held, so values are visited without copying the index.
+   * @return an iterator over the values of the index.
+   */
+  Iterator<T> iterator() {
+    return iterator(0);
+  }
+
+  /**
+   * Iterates over a consistent snapshot of the index in index order from a position. The
+   * iterator seeks the position by the sizes of the subtrees, so skipping to it costs
+   * O(log n) rather than stepping over every value before it.
+   * @param from the position of the first value visited, from 0.
+   * @return an iterator over the values of the index from the position.
+   */
+  Iterator<T> iterator(int from) {
+    return new SnapshotIterator<>(root.get(), from);
+  }
+
+  private int fill(Node<T> node, T[] values, int index) {
+    while (node != null) {
+      index = fill(node.left, values, index);
+      values[index++] = node.value;
+      node = node.right;
+    }
+    return index;
+  }
+
+  private Node<T> find(Node<T> node, T value) {
+    while (node != null) {
+      int result = order.compare(value, node.value);
+      if (result == 0) {
+        return node;
+      }
+      node = result < 0 ? node.left : node.right;
+    }
+    return null;
+  }
+
+  private Node<T> insert(Node<T> node, T value, int priority) {
+    if (node == null) {
+      return node(value, priority, null, null);
+    }
+    if (priority > node.priority) {
+      Node<T>[] parts = split(node, value);
+      return node(value, priority, parts[0], parts[1]);
+    }
+    if (order.compare(value, node.value) < 0) {
+      return with(node, insert(node.left, value, priority), node.right);
+    }
+    return with(node, node.left, insert(node.right, value, priority));
+  }
+
+  private Node<T> delete(Node<T> node, T value) {
+    int result = order.compare(value, node.value);
+    if (result == 0) {
+      return merge(node.left, node.right);
+    }
+    if (result < 0) {
+      return with(node, delete(node.left, value), node.right);
+    }
+    return with(node, node.left, delete(node.right, value));
+  }
+
+  /** @return the two empty roots of a split, before first. */
+  @SuppressWarnings("unchecked")
+  private static <T> Node<T>[] newParts() {
+    return (Node<T>[]) new Node<?>[2];
+  }
+
+  /** Splits the tree into the values before and the values after the given value. */
+  private Node<T>[] split(Node<T> node, T value) {
+    if (node == null) {
+      return newParts();
+    }
+    if (order.compare(value, node.value) < 0) {
+      Node<T>[] parts = split(node.left, value);
+      parts[1] = with(node, parts[1], node.right);
+      return parts;
+    }
+    Node<T>[] parts = split(node.right, value);
+    parts[0] = with(node, node.left, parts[0]);
+    return parts;
+  }
+
+  /** Builds a treap from a range of values in order, the highest priority becoming the root. */
+  private Node<T> build(List<T> values, int[] priorities, int from, int to) {
+    if (from == to) {
+      return null;
+    }
+    int top = from;
+    for (int i = from + 1; i < to; i++) {
+      if (priorities[i] > priorities[top]) {
+        top = i;
+      }
+    }
+    return node(values.get(top), priorities[top],
+        build(values, priorities, from, top), build(values, priorities, top + 1, to));
+  }
+
+  /** Joins two trees that have no values in common. */
+  private Node<T> union(Node<T> first, Node<T> second) {
+    if (first == null) {
+      return second;
+    }
+    if (second == null) {
+      return first;
+    }
+    if (first.priority < second.priority) {
+      Node<T> swap = first;
+      first = second;
+      second = swap;
+    }
+    Node<T>[] parts = split(second, first.value);
+    return with(first, union(first.left, parts[0]), union(first.right, parts[1]));
+  }
+
+  /** Joins two trees where every value of the first is before every value of the second. */
+  private Node<T> merge(Node<T> first, Node<T> second) {
+    if (first == null) {
+      return second;
+    }
+    if (second == null) {
+      return first;
+    }
+    if (first.priority > second.priority) {
+      return with(first, first.left, merge(first.right, second));
+    }
+    return with(second, merge(first, second.left), second.right);
+  }
+
+  /** Creates a node, totalling the size and weight of its subtree. */
+  private Node<T> node(T value, int priority, Node<T> left, Node<T> right) {
+    return new Node<>(value, priority, left, right, sum(left) + sum(right) + weight.applyAsLong(value));
+  }
+
+  /** Copies a node with new children. */
+  private Node<T> with(Node<T> node, Node<T> newLeft, Node<T> newRight) {
+    return node(node.value, node.priority, newLeft, newRight);
+  }
+
+  private static int size(Node<?> node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private static long sum(Node<?> node) {
+    return node == null ? 0L : node.sum;
+  }
+
+  /** In order iterator over the nodes reachable from a root. */
+  private static final class SnapshotIterator<T> implements Iterator<T> {
+    private final Deque<Node<T>> path = new ArrayDeque<>();
+
+    private SnapshotIterator(Node<T> root, int from) {
+      // keeps the path to the value at the position, less the nodes before it.
+      Node<T> node = root;
+      int position = from;
+      while (node != null) {
+        int leftSize = size(node.left);
+        if (position <= leftSize) {
+          path.push(node);
+          node = node.left;
+        } else {
+          position -= leftSize + 1;
+          node = node.right;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !path.isEmpty();
+    }
+
+    @Override
+    public T next() {
+      if (path.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      Node<T> node = path.pop();
+      pushLeft(node.right);
+      return node.value;
+    }
+
+    private void pushLeft(Node<T> node) {
+      while (node != null) {
+        path.push(node);
+        node = node.left;
+      }
+    }
+  }
+
+  /** An immutable node of the treap. */
+  private static final class Node<T> {
+    private final T value;
+    private final int priority;
+    private final int size;
+    private final long sum;
+    private final Node<T> left;
+    private final Node<T> right;
+
+    private Node(T value, int priority, Node<T> left, Node<T> right, long sum) {
+      this.value = value;
+      this.priority = priority;
+      this.left = left;
+      this.right = right;
+      this.size = size(left) + size(right) + 1;
+      this.sum = sum;
+    }
+  }
+}
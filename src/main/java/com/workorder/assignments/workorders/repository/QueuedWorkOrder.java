@@ -0,0 +1,129 @@
+package com.workorder.assignments.workorders.repository;
+
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.entities.WorkOrderClassification;
+
+import java.time.Clock;
+import java.util.Comparator;
+
+/** The compact form of a work order held by the repository.
+ * Only the id, the queue entry time in seconds from the epoch and the ordinal of the
+ * classification are kept. A {@link WorkOrder} is created from it only when one is returned
+ * from the repository.
+ * Class:        QueuedWorkOrder
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+final class QueuedWorkOrder {
+
+  /** The classifications by ordinal. */
+  private static final WorkOrderClassification[] CLASSIFICATIONS = WorkOrderClassification.values();
+
+  /** Orders work orders by queue entry time, oldest first, and then by id. */
+  static final Comparator<QueuedWorkOrder> QUEUE_ENTRY = (o1, o2) -> {
+    int result = Long.compare(o1.entrySeconds, o2.entrySeconds);
+    return result != 0 ? result : Long.compare(o1.id, o2.id);
+  };
+
+  private final long id;
+  private final long entrySeconds;
+  private final byte classification;
+
+  /**
+   * Creates the compact form of a work order.
+   * @param id the identity of the work order, between 1 and 9223372036854775807.
+   * @param entrySeconds the queue entry time in seconds from the epoch.
+   */
+  QueuedWorkOrder(long id, long entrySeconds) {
+    this.id = id;
+    this.entrySeconds = entrySeconds;
+    this.classification = (byte) WorkOrderClassification.determineClassificationFromId(id).ordinal();
+  }
+
+  /** @return the identity of the work order. */
+  long getId() {
+    return id;
+  }
+
+  /** @return the queue entry time in seconds from the epoch. */
+  long getEntrySeconds() {
+    return entrySeconds;
+  }
+
+  /** @return the ordinal of the classification of the work order. */
+  int getClassificationOrdinal() {
+    return classification;
+  }
+
+  /** @return the classification of the work order. */
+  WorkOrderClassification getClassification() {
+    return CLASSIFICATIONS[classification];
+  }
+
+  /**
+   * Gets the rank of the work order at the reference time.
+   * @param referenceSeconds the reference time in seconds from the epoch.
+   * @return the rank according to the specification.
+   */
+  double getRank(long referenceSeconds) {
+    return WorkOrder.calculateRank(CLASSIFICATIONS[classification], referenceSeconds - entrySeconds);
+  }
+
+  /**
+   * Determines whether this work order is ranked before another at the reference time.
+   * The higher rank comes first, then the longest in the queue and lastly the lowest id.
+   * @param rank the rank of this work order at the reference time.
+   * @param other the other work order.
+   * @param otherRank the rank of the other work order at the reference time.
+   * @return true if this work order comes first; otherwise false.
+   */
+  boolean isRankedBefore(double rank, QueuedWorkOrder other, double otherRank) {
+    return isRankedBefore(id, entrySeconds, rank, other.id, other.entrySeconds, otherRank);
+  }
+
+  /**
+   * Determines whether one work order is ranked before another from their fields, for work
+   * orders that are not held as objects.
+   * @param id the id of the first work order.
+   * @param entrySeconds the queue entry time of the first work order.
+   * @param rank the rank of the first work order at the reference time.
+   * @param otherId the id of the other work order.
+   * @param otherEntrySeconds the queue entry time of the other work order.
+   * @param otherRank the rank of the other work order at the reference time.
+   * @return true if the first work order comes first; otherwise false.
+   */
+  static boolean isRankedBefore(long id, long entrySeconds, double rank,
+                                long otherId, long otherEntrySeconds, double otherRank) {
+    if (rank != otherRank) {
+      return rank > otherRank;
+    }
+    if (entrySeconds != otherEntrySeconds) {
+      return entrySeconds < otherEntrySeconds;
+    }
+    return id < otherId;
+  }
+
+  /**
+   * Determines whether this work order is ranked before another at the reference time.
+   * @param other the other work order.
+   * @param referenceSeconds the reference time in seconds from the epoch.
+   * @return true if this work order comes first; otherwise false.
+   */
+  boolean isRankedBefore(QueuedWorkOrder other, long referenceSeconds) {
+    return isRankedBefore(getRank(referenceSeconds), other, other.getRank(referenceSeconds));
+  }
+
+  /**
+   * @param clock the clock the work order is ranked against.
+   * @return the work order this is the compact form of.
+   */
+  WorkOrder toWorkOrder(Clock clock) {
+    return new WorkOrder(id, entrySeconds, clock);
+  }
+
+  @Override
+  public String toString() {
+    return "QueuedWorkOrder{" + "id=" + id + ", entrySeconds=" + entrySeconds
+        + ", classification=" + getClassification() + '}';
+  }
+}
@@ -0,0 +1,120 @@
+package com.workorder.assignments.workorders.repository;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/** Iterates over work orders in rank order by merging classification queues.
+ * Each source must already be in rank order, as the queue of a classification is. The rank
+ * of each work order is computed once against a single reference time, when it becomes the
+ * head of its source, so taking the first k work orders costs O(k) and not a full sort.
+ * An iterator that starts part way through finds where to start in each classification queue
+ * by searching its positions, so a deep page costs O(log^2 n) to reach and not O(offset).
+ * Class:        RankOrderIterator
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+final class RankOrderIterator implements Iterator<QueuedWorkOrder> {
+
+  private final Iterator<QueuedWorkOrder>[] sources;
+  private final QueuedWorkOrder[] heads;
+  private final double[] headRanks;
+  private final long referenceSeconds;
+
+  /**
+   * Creates an iterator over the merge of the sources.
+   * @param sources the work orders of each classification, each in rank order.
+   * @param referenceSeconds the time to rank at in seconds from the epoch.
+   */
+  RankOrderIterator(List<Iterator<QueuedWorkOrder>> sources, long referenceSeconds) {
+    @SuppressWarnings("unchecked")
+    Iterator<QueuedWorkOrder>[] sourceArray = (Iterator<QueuedWorkOrder>[]) sources.toArray(new Iterator<?>[0]);
+    this.sources = sourceArray;
+    this.heads = new QueuedWorkOrder[this.sources.length];
+    this.headRanks = new double[this.sources.length];
+    this.referenceSeconds = referenceSeconds;
+    for (int i = 0; i < this.sources.length; i++) {
+      advance(i);
+    }
+  }
+
+  /**
+   * Creates an iterator over the merge of the classification queues that starts at a position
+   * of the rank order. The work orders before it are not visited, in each queue the first work
+   * order from the position on is found by a binary search of its positions.
+   * @param queues the classification queues, each a snapshot so they are searched as they are.
+   * @param referenceSeconds the time to rank at in seconds from the epoch.
+   * @param from the position in rank order of the first work order visited, from 0.
+   * @return an iterator over the work orders from the position.
+   */
+  static RankOrderIterator startingAt(List<QueueEntryIndex<QueuedWorkOrder>> queues, long referenceSeconds,
+                                      long from) {
+    List<Iterator<QueuedWorkOrder>> sources = new ArrayList<>(queues.size());
+    for (QueueEntryIndex<QueuedWorkOrder> queue : queues) {
+      int low = 0;
+      int high = queue.size();
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (countRankedBefore(queues, queue.get(middle), referenceSeconds) < from) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      sources.add(queue.iterator(low));
+    }
+    return new RankOrderIterator(sources, referenceSeconds);
+  }
+
+  /**
+   * Counts the work orders of all of the queues ranked before a work order. Each queue is in
+   * rank order, so those of a queue ranked before it are a prefix of the queue.
+   * @return the position of the work order in rank order.
+   */
+  private static long countRankedBefore(List<QueueEntryIndex<QueuedWorkOrder>> queues, QueuedWorkOrder workOrder,
+                                        long referenceSeconds) {
+    double rank = workOrder.getRank(referenceSeconds);
+    long count = 0L;
+    for (QueueEntryIndex<QueuedWorkOrder> queue : queues) {
+      count += queue.countWhile(other -> other.isRankedBefore(other.getRank(referenceSeconds), workOrder, rank));
+    }
+    return count;
+  }
+
+  @Override
+  public boolean hasNext() {
+    for (QueuedWorkOrder head : heads) {
+      if (head != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public QueuedWorkOrder next() {
+    int top = -1;
+    for (int i = 0; i < heads.length; i++) {
+      if ((heads[i] != null)
+          && ((top == -1) || heads[i].isRankedBefore(headRanks[i], heads[top], headRanks[top]))) {
+        top = i;
+      }
+    }
+    if (top == -1) {
+      throw new NoSuchElementException();
+    }
+    QueuedWorkOrder result = heads[top];
+    advance(top);
+    return result;
+  }
+
+  private void advance(int source) {
+    if (sources[source].hasNext()) {
+      heads[source] = sources[source].next();
+      headRanks[source] = heads[source].getRank(referenceSeconds);
+    } else {
+      heads[source] = null;
+    }
+  }
+}
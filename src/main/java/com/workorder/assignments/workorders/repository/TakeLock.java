@@ -0,0 +1,70 @@
+package com.workorder.assignments.workorders.repository;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Keeps single takes out of a batch take while letting them run alongside one another.
+ * A single take counts itself in on one of a number of stripes chosen by its thread, each on
+ * its own cache line, and then reads the flag a batch sets; it never writes a word shared by
+ * every take, so takes on different threads do not contend on the lock. A batch locks out
+ * other batches, sets the flag and waits for the single takes counted in to finish. A single
+ * take that finds the flag set counts itself out again and waits for the batch's lock.
+ * Class:        TakeLock
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+final class TakeLock {
+
+  /** Number of stripes single takes are counted on, must be a power of two. */
+  private static final int STRIPE_COUNT = 64;
+
+  /** Longs from one stripe to the next, so that no two stripes share a cache line. */
+  private static final int STRIPE_SPACING = 16;
+
+  /** The number of single takes in progress on each stripe. */
+  private final AtomicLongArray takes = new AtomicLongArray(STRIPE_COUNT * STRIPE_SPACING);
+
+  /** Held by the batch being taken. */
+  private final ReentrantLock batchLock = new ReentrantLock();
+
+  /** Set while a batch is waiting for single takes to finish or is being taken. */
+  private volatile boolean batchTaking;
+
+  /** Starts a single take, waiting for a batch being taken to finish first. */
+  void lockTake() {
+    int stripe = stripe();
+    takes.incrementAndGet(stripe);
+    while (batchTaking) {
+      takes.decrementAndGet(stripe);
+      batchLock.lock();
+      batchLock.unlock();
+      takes.incrementAndGet(stripe);
+    }
+  }
+
+  /** Finishes a single take started on this thread. */
+  void unlockTake() {
+    takes.decrementAndGet(stripe());
+  }
+
+  /** Starts a batch take, once any other batch and the single takes in progress have finished. */
+  void lockBatch() {
+    batchLock.lock();
+    batchTaking = true;
+    for (int stripe = 0; stripe < takes.length(); stripe += STRIPE_SPACING) {
+      while (takes.get(stripe) != 0) {
+        Thread.yield();
+      }
+    }
+  }
+
+  /** Finishes the batch take started on this thread. */
+  void unlockBatch() {
+    batchTaking = false;
+    batchLock.unlock();
+  }
+
+  private static int stripe() {
+    return ((int) ConcurrentLongHashMap.hash(Thread.currentThread().getId()) & (STRIPE_COUNT - 1)) * STRIPE_SPACING;
+  }
+}
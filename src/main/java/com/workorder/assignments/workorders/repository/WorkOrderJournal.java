@@ -0,0 +1,408 @@
+package com.workorder.assignments.workorders.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/** An append only binary journal of the changes made to the work order queue.
+ * The file starts with a header and is followed by fixed size records, each holding a type,
+ * the id, the queue entry seconds and a CRC32 of the rest of the record. Records are appended
+ * to a buffer in memory and written by whichever caller commits first, so callers that commit
+ * at the same time share a single write and fsync (group commit). How long a caller waits is
+ * set by the {@link SyncMode}. A record that was torn by a crash fails its check on replay,
+ * replay stops at the last whole record and the file is truncated back to it. Appends can be switched to a new file without waiting
+ * for the old one to be written, so the journal can be restarted after each snapshot.
+ * Class:        WorkOrderJournal
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+class WorkOrderJournal implements Closeable {
+
+  /** When committed records are made durable. */
+  enum SyncMode {
+    /** Each commit waits until its records are written and forced to the device. */
+    PER_OPERATION,
+    /** Commits do not wait, records are written and forced on a fixed interval. */
+    INTERVAL,
+    /** Each commit waits until its records are written, the OS decides when to force them. */
+    OS
+  }
+
+  /** Receives the records of a journal as it is replayed. */
+  interface RecordHandler {
+    void add(long id, long entrySeconds);
+
+    void remove(long id);
+  }
+
+  /** Identifies a work order journal file, "WOJ1". */
+  private static final int MAGIC = 0x574f4a31;
+  private static final int HEADER_SIZE = Integer.BYTES;
+
+  private static final byte ADD_RECORD = 1;
+  private static final byte REMOVE_RECORD = 2;
+  private static final int CHECKED_SIZE = 1 + Long.BYTES + Long.BYTES;
+  static final int RECORD_SIZE = CHECKED_SIZE + Integer.BYTES;
+
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+  private static final int REPLAY_BUFFER_SIZE = RECORD_SIZE * 64 * 1024;
+
+  private static final String NOT_A_JOURNAL_ERROR = "The file '%s' is not a work order journal.";
+  private static final String JOURNAL_FAILED_ERROR = "The work order journal could not be written.";
+
+  private final SyncMode syncMode;
+  private final ScheduledExecutorService flusher;
+
+  /** Builds each record so its checksum can be computed before it is buffered. */
+  private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+  private final CRC32 checksum = new CRC32();
+
+  /** Records appended but not yet written, guarded by this. */
+  private ByteBuffer pending = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+  /** An empty buffer to swap with pending while it is written, guarded by this. */
+  private ByteBuffer spare = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+  /** The file being appended to, guarded by this. */
+  private FileChannel channel;
+  private long appendedSequence;
+  private long writtenSequence;
+  private boolean flushing;
+  /** A rotation whose records are not yet written to the previous file, guarded by this. */
+  private Rotation rotation;
+  private IOException failure;
+
+  private WorkOrderJournal(FileChannel channel, SyncMode syncMode, long syncIntervalMillis) {
+    this.channel = channel;
+    this.syncMode = syncMode;
+    if (syncMode == SyncMode.INTERVAL) {
+      flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "work-order-journal");
+        thread.setDaemon(true);
+        return thread;
+      });
+      flusher.scheduleWithFixedDelay(this::flushAppended, syncIntervalMillis, syncIntervalMillis,
+          TimeUnit.MILLISECONDS);
+    } else {
+      flusher = null;
+    }
+  }
+
+  /**
+   * Creates an empty journal for appending, replacing the file if it exists.
+   * @param file the journal file.
+   * @param syncMode when committed records are made durable.
+   * @param syncIntervalMillis the interval between writes for the INTERVAL mode.
+   * @return the open journal.
+   * @throws IOException if the journal cannot be created.
+   */
+  static WorkOrderJournal create(Path file, SyncMode syncMode, long syncIntervalMillis) throws IOException {
+    if (syncIntervalMillis < 1) {
+      throw new IllegalArgumentException("The journal sync interval must be greater then 0");
+    }
+    return new WorkOrderJournal(createFile(file), syncMode, syncIntervalMillis);
+  }
+
+  /**
+   * Creates an empty journal file ready to be rotated to. The header is forced to the device.
+   * @param file the journal file, replaced if it exists.
+   * @return the channel to append to.
+   * @throws IOException if the file cannot be created.
+   */
+  static FileChannel createFile(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC);
+      header.flip();
+      while (header.hasRemaining()) {
+        channel.write(header);
+      }
+      channel.force(true);
+      return channel;
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Passes each whole record of a journal file to the handler, stopping at a torn record. The
+   * torn record and anything after it are truncated from the file.
+   * @param file the journal file.
+   * @param handler receives the records.
+   * @return the number of records replayed.
+   * @throws IOException if the file cannot be read or is not a work order journal.
+   */
+  static long replay(Path file, RecordHandler handler) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return replay(channel, file, handler);
+    }
+  }
+
+  /**
+   * Appends the addition of a work order.
+   * @param id the id of the work order.
+   * @param entrySeconds the queue entry time in seconds from the epoch.
+   * @return the sequence number to commit.
+   */
+  synchronized long appendAdd(long id, long entrySeconds) {
+    return append(ADD_RECORD, id, entrySeconds);
+  }
+
+  /**
+   * Appends the removal of a work order.
+   * @param id the id of the work order.
+   * @return the sequence number to commit.
+   */
+  synchronized long appendRemove(long id) {
+    return append(REMOVE_RECORD, id, 0L);
+  }
+
+  /**
+   * Makes the records up to the sequence number durable as set by the sync mode. Callers that
+   * commit while a write is in progress wait for it and are then written together.
+   * @param sequence the sequence number returned by the last append to commit.
+   * @throws UncheckedIOException if the journal cannot be written.
+   */
+  void commit(long sequence) {
+    if (syncMode != SyncMode.INTERVAL) {
+      flushTo(sequence, syncMode == SyncMode.PER_OPERATION);
+    }
+  }
+
+  /**
+   * Switches appends to a new file. Only the buffers are swapped here, so this is cheap
+   * enough to call while changes are held back. The records appended before the switch are
+   * written to the old file by {@link Rotation#finish()}, until then commits wait for them.
+   * @param next the new file, as created by createFile.
+   * @return the rotation to finish.
+   */
+  synchronized Rotation rotate(FileChannel next) {
+    if (failure != null) {
+      throw new UncheckedIOException(JOURNAL_FAILED_ERROR, failure);
+    }
+    if (rotation != null) {
+      throw new IllegalStateException("The previous rotation of the journal is not finished.");
+    }
+    // a write in progress keeps its buffer, so the records since then move to a new one.
+    rotation = new Rotation(channel, pending, appendedSequence);
+    pending = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+    channel = next;
+    return rotation;
+  }
+
+  /** Writes and forces every record appended so far and closes the journal. */
+  @Override
+  public void close() throws IOException {
+    if (flusher != null) {
+      flusher.shutdown();
+    }
+    try {
+      long sequence;
+      synchronized (this) {
+        sequence = appendedSequence;
+      }
+      flushTo(sequence, true);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      synchronized (this) {
+        channel.close();
+      }
+    }
+  }
+
+  private long append(byte type, long id, long entrySeconds) {
+    if (failure != null) {
+      throw new UncheckedIOException(JOURNAL_FAILED_ERROR, failure);
+    }
+    record.clear();
+    record.put(type).putLong(id).putLong(entrySeconds);
+    checksum.reset();
+    checksum.update(record.array(), 0, CHECKED_SIZE);
+    record.putInt((int) checksum.getValue());
+    record.flip();
+    if (pending.remaining() < RECORD_SIZE) {
+      ByteBuffer larger = ByteBuffer.allocateDirect(pending.capacity() << 1);
+      pending.flip();
+      larger.put(pending);
+      pending = larger;
+    }
+    pending.put(record);
+    return ++appendedSequence;
+  }
+
+  private void flushAppended() {
+    long sequence;
+    synchronized (this) {
+      sequence = appendedSequence;
+    }
+    try {
+      flushTo(sequence, true);
+    } catch (UncheckedIOException e) {
+      // recorded as the failure, reported to the next caller.
+    }
+  }
+
+  private void flushTo(long sequence, boolean force) {
+    ByteBuffer batch;
+    long batchSequence;
+    FileChannel target;
+    synchronized (this) {
+      while ((flushing || (rotation != null)) && (writtenSequence < sequence)) {
+        awaitChange();
+      }
+      if (failure != null) {
+        throw new UncheckedIOException(JOURNAL_FAILED_ERROR, failure);
+      }
+      if (writtenSequence >= sequence) {
+        return;
+      }
+      // this caller writes everything appended so far, for itself and anyone waiting.
+      flushing = true;
+      batch = pending;
+      pending = spare;
+      batchSequence = appendedSequence;
+      target = channel;
+    }
+
+    IOException error = write(target, batch, force);
+    written(batch, batchSequence, error);
+    if (error != null) {
+      throw new UncheckedIOException(JOURNAL_FAILED_ERROR, error);
+    }
+  }
+
+  /** Waits for a write to finish, must hold the monitor. */
+  private void awaitChange() {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UncheckedIOException(new InterruptedIOException("Interrupted waiting for the journal"));
+    }
+  }
+
+  /** Writes a batch of records to a file, returning the error if it could not be written. */
+  private static IOException write(FileChannel target, ByteBuffer batch, boolean force) {
+    try {
+      batch.flip();
+      while (batch.hasRemaining()) {
+        target.write(batch);
+      }
+      if (force) {
+        target.force(false);
+      }
+      return null;
+    } catch (IOException e) {
+      return e;
+    }
+  }
+
+  /** Records the outcome of a write and wakes the callers waiting for it. */
+  private synchronized void written(ByteBuffer batch, long batchSequence, IOException error) {
+    batch.clear();
+    spare = batch;
+    flushing = false;
+    if ((rotation != null) && (rotation.batch == batch)) {
+      rotation = null;
+    }
+    if (error == null) {
+      writtenSequence = batchSequence;
+    } else {
+      failure = error;
+    }
+    notifyAll();
+  }
+
+  /**
+   * Passes each whole record of the journal to the handler.
+   * @return the number of records replayed.
+   */
+  private static long replay(FileChannel channel, Path file, RecordHandler handler) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(REPLAY_BUFFER_SIZE);
+    buffer.limit(HEADER_SIZE);
+    while (buffer.hasRemaining() && (channel.read(buffer) >= 0)) {
+      // read the whole header
+    }
+    buffer.flip();
+    if ((buffer.remaining() < HEADER_SIZE) || (buffer.getInt() != MAGIC)) {
+      throw new IOException(String.format(NOT_A_JOURNAL_ERROR, file));
+    }
+
+    byte[] checked = new byte[CHECKED_SIZE];
+    CRC32 crc = new CRC32();
+    long records = 0L;
+    buffer.clear();
+    read:
+    while (channel.read(buffer) >= 0) {
+      buffer.flip();
+      while (buffer.remaining() >= RECORD_SIZE) {
+        buffer.get(checked);
+        int expected = buffer.getInt();
+        crc.reset();
+        crc.update(checked, 0, CHECKED_SIZE);
+        ByteBuffer fields = ByteBuffer.wrap(checked);
+        byte type = fields.get();
+        if (((int) crc.getValue() != expected) || ((type != ADD_RECORD) && (type != REMOVE_RECORD))) {
+          break read;
+        }
+        if (type == ADD_RECORD) {
+          handler.add(fields.getLong(), fields.getLong());
+        } else {
+          handler.remove(fields.getLong());
+        }
+        ++records;
+      }
+      buffer.compact();
+    }
+    long whole = HEADER_SIZE + (records * RECORD_SIZE);
+    if (channel.size() > whole) {
+      // records appended after recovery must follow the last whole record, not the torn one.
+      channel.truncate(whole);
+      channel.force(true);
+    }
+    return records;
+  }
+
+  /** The records appended to a file before appends were switched away from it. */
+  final class Rotation {
+    private final FileChannel previous;
+    private final ByteBuffer batch;
+    private final long batchSequence;
+
+    private Rotation(FileChannel previous, ByteBuffer batch, long batchSequence) {
+      this.previous = previous;
+      this.batch = batch;
+      this.batchSequence = batchSequence;
+    }
+
+    /**
+     * Writes and forces the remaining records to the previous file and closes it.
+     * @throws IOException if the previous file cannot be written.
+     */
+    void finish() throws IOException {
+      synchronized (WorkOrderJournal.this) {
+        // a write to the previous file that was in progress at the rotation goes first.
+        while (flushing) {
+          awaitChange();
+        }
+        flushing = true;
+      }
+      IOException error = write(previous, batch, true);
+      written(batch, batchSequence, error);
+      previous.close();
+      if (error != null) {
+        throw error;
+      }
+    }
+  }
+}
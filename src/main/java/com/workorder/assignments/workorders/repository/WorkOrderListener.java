@@ -0,0 +1,38 @@
+package com.workorder.assignments.workorders.repository;
+
+import com.workorder.assignments.workorders.entities.WorkOrder;
+
+/** Receives the changes made to a work order repository.
+ * Listeners are called once the change is made, on the thread of the request that made it or
+ * of a request making a later change told in the same order, so they must be quick and must
+ * not block. The changes of one work order id are told in the order they were made; changes
+ * of different ids made at the same time may be told in either order. A change made by a
+ * listener is only told once every listener has been told of the change that led to it.
+ * A listener only implements the changes it is interested in.
+ * Class:        WorkOrderListener
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public interface WorkOrderListener {
+
+  /**
+   * Called when a work order has been added to the queue.
+   * @param workOrder the work order added.
+   */
+  default void workOrderAdded(WorkOrder workOrder) {
+  }
+
+  /**
+   * Called when a work order has been taken from the top of the queue.
+   * @param workOrder the work order taken.
+   */
+  default void workOrderTaken(WorkOrder workOrder) {
+  }
+
+  /**
+   * Called when a work order has been deleted from the queue.
+   * @param workOrder the work order deleted.
+   */
+  default void workOrderDeleted(WorkOrder workOrder) {
+  }
+}
@@ -0,0 +1,248 @@
+package com.workorder.assignments.workorders.repository;
+
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/** The listeners of a repository. A listener that fails is logged and does not stop the
+ * others from being called or fail the change.
+ * Each change is recorded by the repository where it is made, under whatever orders the
+ * changes to its work order id, and told once it is complete. The changes recorded are queued
+ * by id across a fixed number of stripes and each stripe is told strictly in the order its
+ * changes were recorded, a change still being made holding back those recorded after it. So
+ * the changes of one id are always told in the order they were made, though changes of
+ * different ids may be told in a different order. A stripe is told by one request at a time,
+ * so a change may be told by a later request of the same stripe, after the request that made
+ * it has returned.
+ * A listener may itself change the repository, as a waiting take does when told of a work
+ * order added; the listeners are only told of that change once every one of them has been
+ * told of the change being told, so no listener hears of a work order taken before it hears
+ * of it being added.
+ * Class:        WorkOrderListeners
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+final class WorkOrderListeners {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WorkOrderListeners.class);
+
+  /** Number of stripes the changes are queued across, must be a power of two. */
+  private static final int STRIPE_COUNT = 64;
+
+  private final List<WorkOrderListener> listeners = new CopyOnWriteArrayList<>();
+
+  private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+  /**
+   * The stripes changed by listeners on this thread while it tells the listeners of another
+   * change, to be told once it has. Null while the thread is not telling the listeners.
+   */
+  private final ThreadLocal<ArrayDeque<Stripe>> nestedStripes = new ThreadLocal<>();
+
+  /** Creates a repository's listeners, none to start with. */
+  WorkOrderListeners() {
+    for (int i = 0; i < STRIPE_COUNT; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  /**
+   * Adds a listener.
+   * @param listener the listener to call on each change.
+   */
+  void add(WorkOrderListener listener) {
+    if (listener == null) {
+      throw new IllegalArgumentException("Passed listener must not be null");
+    }
+    listeners.add(listener);
+  }
+
+  /**
+   * Creates the change of a work order being added, to be recorded where it is added.
+   * @param workOrder the work order added.
+   * @return the change or null if there are no listeners to tell.
+   */
+  Change added(WorkOrder workOrder) {
+    return change(workOrder, WorkOrderListener::workOrderAdded);
+  }
+
+  /**
+   * Creates the change of a work order being taken from the top of the queue, to be recorded
+   * where it is taken.
+   * @param workOrder the work order taken, null for no change.
+   * @return the change or null if there is no change or no listeners to tell.
+   */
+  Change taken(WorkOrder workOrder) {
+    return change(workOrder, WorkOrderListener::workOrderTaken);
+  }
+
+  /**
+   * Creates the change of a work order being deleted, to be recorded where it is deleted.
+   * @param workOrder the work order deleted, null for no change.
+   * @return the change or null if there is no change or no listeners to tell.
+   */
+  Change deleted(WorkOrder workOrder) {
+    return change(workOrder, WorkOrderListener::workOrderDeleted);
+  }
+
+  /**
+   * Records a change where it is made, for a repository that orders its changes by a lock of
+   * its own.
+   * @param change the change, null for none.
+   */
+  void record(Change change) {
+    if (change != null) {
+      change.run();
+    }
+  }
+
+  /**
+   * Tells the listeners of a change once it is complete, after the changes recorded before
+   * it in its stripe.
+   * @param change the change recorded, null for none.
+   */
+  void tell(Change change) {
+    finish(change, Change.TOLD);
+  }
+
+  /**
+   * Tells the listeners of changes once they are complete.
+   * @param changes the changes recorded, nulls are skipped.
+   */
+  void tell(List<Change> changes) {
+    for (Change change : changes) {
+      tell(change);
+    }
+  }
+
+  /**
+   * Withdraws a change recorded that was undone before it was complete, the listeners are not
+   * told of it.
+   * @param change the change recorded, null for none.
+   */
+  void cancel(Change change) {
+    finish(change, Change.CANCELLED);
+  }
+
+  /**
+   * Withdraws changes recorded that were undone before they were complete.
+   * @param changes the changes recorded, nulls are skipped.
+   */
+  void cancel(List<Change> changes) {
+    for (Change change : changes) {
+      cancel(change);
+    }
+  }
+
+  private Change change(WorkOrder workOrder, BiConsumer<WorkOrderListener, WorkOrder> kind) {
+    if ((workOrder == null) || listeners.isEmpty()) {
+      return null;
+    }
+    Stripe stripe = stripes[(int) ConcurrentLongHashMap.hash(workOrder.getIdAsLong()) & (STRIPE_COUNT - 1)];
+    return new Change(stripe, workOrder, kind);
+  }
+
+  private void finish(Change change, int state) {
+    if (change == null) {
+      return;
+    }
+    change.state = state;
+    Stripe stripe = change.stripe;
+    ArrayDeque<Stripe> nested = nestedStripes.get();
+    if (nested != null) {
+      nested.add(stripe);
+      return;
+    }
+    nested = new ArrayDeque<>();
+    nestedStripes.set(nested);
+    try {
+      do {
+        stripe.tell(listeners);
+      } while ((stripe = nested.poll()) != null);
+    } finally {
+      nestedStripes.remove();
+    }
+  }
+
+  /** The changes of the ids of one stripe, in the order they were recorded. */
+  private static final class Stripe {
+
+    private final ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+
+    /** Set while a request is telling the listeners of the changes of the stripe. */
+    private final AtomicBoolean telling = new AtomicBoolean();
+
+    /**
+     * Tells the listeners of the complete changes at the head of the stripe, unless another
+     * request is already telling them. A change completed while the other request finishes is
+     * seen by it once it has stopped telling, or by this one.
+     */
+    void tell(List<WorkOrderListener> listeners) {
+      while (isHeadComplete() && telling.compareAndSet(false, true)) {
+        try {
+          Change head;
+          while (((head = changes.peek()) != null) && (head.state != Change.RECORDED)) {
+            changes.poll();
+            if (head.state == Change.TOLD) {
+              head.tellEach(listeners);
+            }
+          }
+        } finally {
+          telling.set(false);
+        }
+      }
+    }
+
+    private boolean isHeadComplete() {
+      Change head = changes.peek();
+      return (head != null) && (head.state != Change.RECORDED);
+    }
+  }
+
+  /**
+   * A change to a work order. Running it records it, which the repository does where the
+   * change is made, so the changes of one id are recorded in the order they are made.
+   */
+  static final class Change implements Runnable {
+
+    private static final int CREATED = 0;
+    private static final int RECORDED = 1;
+    private static final int TOLD = 2;
+    private static final int CANCELLED = 3;
+
+    private final Stripe stripe;
+    private final WorkOrder workOrder;
+    private final BiConsumer<WorkOrderListener, WorkOrder> kind;
+    private volatile int state = CREATED;
+
+    private Change(Stripe stripe, WorkOrder workOrder, BiConsumer<WorkOrderListener, WorkOrder> kind) {
+      this.stripe = stripe;
+      this.workOrder = workOrder;
+      this.kind = kind;
+    }
+
+    /** Records the change, in its stripe, after the changes already recorded there. */
+    @Override
+    public void run() {
+      state = RECORDED;
+      stripe.changes.add(this);
+    }
+
+    private void tellEach(List<WorkOrderListener> listeners) {
+      for (WorkOrderListener listener : listeners) {
+        try {
+          kind.accept(listener, workOrder);
+        } catch (RuntimeException e) {
+          LOGGER.error("tell:listener {} failed for {}", listener, workOrder, e);
+        }
+      }
+    }
+  }
+}
@@ -1,9 +1,14 @@
 package com.workorder.assignments.workorders.repository;
 
 import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.entities.WorkOrderBatchResult;
+import com.workorder.assignments.workorders.entities.WorkOrderClassification;
+import com.workorder.assignments.workorders.entities.WorkOrderSubmission;
 
 import java.math.BigInteger;
 import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.function.Predicate;
 
 /** Describes the access and management to submitted work orders.
  * Class:        WorkOrderRepository
@@ -23,6 +28,16 @@ public interface WorkOrderRepository {
    */
   WorkOrder addWorkOrder(String id, String queueEntryTime);
 
+  /**
+   * Adds a batch of work items to the queue. Each item is validated as by addWorkOrder, but
+   * a faulty item is reported rather than failing the batch. The accepted items are added to
+   * the queue of each classification in one change.
+   * @param submissions the id and entry date of each work item, duplicates within the batch
+   *                    are rejected after the first.
+   * @return the created work orders and the rejected items with the reason for each.
+   */
+  WorkOrderBatchResult addWorkOrders(List<WorkOrderSubmission> submissions);
+
   /**
    * Gets and dequeue the work order at the top of the list. After this operation
    * the top priority value is removed from the queue.
@@ -30,12 +45,53 @@ public interface WorkOrderRepository {
    */
   WorkOrder getNextWorkOrder();
 
+  /**
+   * Gets and dequeues up to count work orders from the top of the list. All of them are
+   * ranked against the same time and the batch is taken as one, so it is the top of the queue
+   * at the time, no other caller takes a work order from within it and concurrent callers
+   * never receive the same work order.
+   * @param count the maximum number of work orders to take, must be greater than 0.
+   * @return the work orders taken in rank order. An empty list for an empty queue.
+   * @throws IllegalArgumentException if the count is less than 1.
+   */
+  List<WorkOrder> getNextWorkOrders(int count);
+
+  /**
+   * Gets and dequeues the work order at the top of the list and hands it over, for a request
+   * that may no longer be able to receive it. Listeners are only told it was taken once it has
+   * been handed over. Should the hand over fail it is put back in its place, without being
+   * checked again as it was checked when it was added, and listeners are told nothing; unless
+   * its id has been added again in the meantime, when the work order taken is dropped and
+   * listeners are told it was taken, before they are told of the id added again.
+   * @param handOver receives the work order taken, returns false if it could not be handed over.
+   * @return the work order handed over. null for an empty list or if it could not be handed over.
+   */
+  WorkOrder getNextWorkOrder(Predicate<WorkOrder> handOver);
+
   /**
    * Gets a list of Id's in the queue.
    * @return a list of work order identities in rank order. Or an empty list.
    */
   List<BigInteger> getSortedListOfWorkOrderIds();
 
+  /**
+   * Gets a page of the list of Id's in the queue. Only the work orders up to the end of the
+   * page are ranked, so taking the top few of a long queue does not sort the whole queue.
+   * @param offset the number of work orders to skip from the top of the queue, must not be negative.
+   * @param limit the maximum number of identities to return, must not be negative.
+   * @return a list of work order identities in rank order. Or an empty list.
+   * @throws IllegalArgumentException if the offset or limit is negative.
+   */
+  List<BigInteger> getSortedListOfWorkOrderIds(int offset, int limit);
+
+  /**
+   * Gets an iterator over the Id's in the queue for streaming the whole list. The iterator
+   * works on a snapshot of the queue taken when it is created and ranks the work orders as
+   * it goes, so memory use does not grow with the size of the queue.
+   * @return an iterator over the work order identities in rank order.
+   */
+  PrimitiveIterator.OfLong getSortedWorkOrderIdIterator();
+
   /**
    * Removes a given work order from the queue if it exists.
    * @param workOrderId the id of the WorkOrder to remove
@@ -60,4 +116,23 @@ public interface WorkOrderRepository {
    */
   double getQueueMeanWaitTime(String referenceDate);
 
+  /**
+   * Counts the work orders of a classification in the queue.
+   * @param classification the classification to count.
+   * @return the number of work orders of the classification.
+   */
+  int getWorkOrderCount(WorkOrderClassification classification);
+
+  /**
+   * Gets the work order of a classification that entered the queue first, without removing it.
+   * @param classification the classification to look in.
+   * @return the oldest work order of the classification or null if there are none.
+   */
+  WorkOrder getOldestWorkOrder(WorkOrderClassification classification);
+
+  /**
+   * Adds a listener that is told of every work order added, taken or deleted from then on.
+   * @param listener the listener to add.
+   */
+  void addWorkOrderListener(WorkOrderListener listener);
 }
@@ -1,16 +1,35 @@
 package com.workorder.assignments.workorders.repository;
 
 import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.entities.WorkOrderBatchResult;
+import com.workorder.assignments.workorders.entities.WorkOrderClassification;
+import com.workorder.assignments.workorders.entities.WorkOrderRejectedException;
+import com.workorder.assignments.workorders.entities.WorkOrderRejection;
+import com.workorder.assignments.workorders.entities.WorkOrderSubmission;
+import com.workorder.assignments.workorders.utilities.BigIntegerConversionUtilities;
+import com.workorder.assignments.workorders.utilities.DateConverterUtilities;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigInteger;
-import java.util.AbstractMap;
+import java.time.Clock;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
 
 /** Work order repository implementation.
  * Class:        WorkOrderRepositoryImpl
@@ -18,46 +37,268 @@ import java.util.concurrent.ConcurrentHashMap;
  * For Project:  workorder
  */
 @Repository
-public class WorkOrderRepositoryImpl implements WorkOrderRepository {
+@ConditionalOnProperty(name = "workorders.repository.store", havingValue = "heap", matchIfMissing = true)
+public class WorkOrderRepositoryImpl implements WorkOrderRepository, WorkOrderRepositoryStatistics {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(WorkOrderRepositoryImpl.class);
 
-  private static final String DUPLICATE_WORK_ORDER_ID_ERROR =
+  static final String DUPLICATE_WORK_ORDER_ID_ERROR =
       "A work order for this id '%s' already exists, duplicates not allowed.";
 
-  /** Repository to hold the work orders. */
-  private AbstractMap<BigInteger,WorkOrder> workOrderRepository =
-      new ConcurrentHashMap<BigInteger,WorkOrder>();
+  private static final String INVALID_ID_ERROR =
+      "The string %s is not a valid work order id value.";
+
+  private static final String FUTURE_DATE_ERROR =
+      "The date string '%s' is in the future. This is not allowed";
+
+  static final String INVALID_COUNT_ERROR =
+      "The count %d of work orders to take must be greater then 0.";
+
+  static final String INVALID_PAGE_ERROR =
+      "The offset %d and limit %d of a page of work orders must not be negative.";
+
+  /** Default number of work orders in a classification above which ranks are computed in parallel. */
+  static final int DEFAULT_PARALLEL_SORT_THRESHOLD = 50000;
+
+  /** Repository to hold the work orders in compact form keyed by their id. */
+  private final ConcurrentLongHashMap<QueuedWorkOrder> workOrderRepository = new ConcurrentLongHashMap<>();
+
+  /** Told of each work order added, taken or deleted by a request. */
+  private final WorkOrderListeners listeners = new WorkOrderListeners();
+
+  /**
+   * The work orders of each classification in queue entry order, indexed by classification
+   * ordinal. As the rank of a work order only grows with its time in queue the head of each
+   * of these is the highest ranked work order of its classification, so the top of the whole
+   * queue is one of the four heads. Likewise the work orders of a classification that outrank
+   * any given work order are a prefix of its queue, which lets a queue position be counted
+   * rather than searched for. Each queue also sums the entry times of its work orders so
+   * the mean wait time is answered from the index too.
+   */
+  private final List<QueueEntryIndex<QueuedWorkOrder>> classificationQueues;
+
+  /** Number of work orders in a classification above which ranks are computed in parallel. */
+  private int parallelSortThreshold = DEFAULT_PARALLEL_SORT_THRESHOLD;
+
+  /** The clock work orders are validated and ranked against. */
+  private Clock clock = Clock.systemUTC();
+
+  /**
+   * Counts the changes made to the classification queues. It is moved on once a change is in
+   * the queues, so an order ranked from queues read after reading the version includes every
+   * change up to it.
+   */
+  private final AtomicLong mutationVersion = new AtomicLong();
+
+  /**
+   * The last whole queue ranked, or being ranked. Ranks only change with whole seconds, so
+   * until the clock ticks or the queues change every request is answered from it rather than
+   * ranking again, and requests that arrive while it is being ranked wait for it. It is
+   * dropped when the queues change.
+   */
+  private final AtomicReference<RankedOrder> rankedOrder = new AtomicReference<>();
+
+  /** Number of times the whole queue has been ranked. */
+  private final AtomicLong rankedOrderSorts = new AtomicLong();
+
+  /** Time in nanoseconds spent ranking the whole queue. */
+  private final AtomicLong rankedOrderSortNanos = new AtomicLong();
+
+  /** Number of work orders ranked over every ranking of the whole queue. */
+  private final AtomicLong rankedOrderSortedWorkOrders = new AtomicLong();
+
+  /** Number of requests that waited for a ranking already in progress rather than ranking. */
+  private final LongAdder coalescedReads = new LongAdder();
+
+  /**
+   * Makes a batch take the top of the queue as one. Single takes run alongside one another,
+   * each claiming its work order by removing it from the map, a batch locks them out,
+   * so no other take can claim a work order between those of the batch.
+   */
+  private final TakeLock takeLock = new TakeLock();
+
+  /** Creates an empty repository. */
+  public WorkOrderRepositoryImpl() {
+    List<QueueEntryIndex<QueuedWorkOrder>> queues = new ArrayList<>();
+    for (int i = 0; i < WorkOrderClassification.values().length; i++) {
+      queues.add(new QueueEntryIndex<>(QueuedWorkOrder.QUEUE_ENTRY, QueuedWorkOrder::getEntrySeconds));
+    }
+    classificationQueues = Collections.unmodifiableList(queues);
+  }
+
+  /**
+   * Sets the number of work orders in a classification above which the rank of each
+   * work order is computed in parallel when sorting. The queue is ranked again the next
+   * time it is read, so a ranking already made one way is not handed out in place of the other.
+   * @param parallelSortThreshold the threshold, must be positive.
+   */
+  @Value("${workorders.sort.parallel-threshold:" + DEFAULT_PARALLEL_SORT_THRESHOLD + "}")
+  void setParallelSortThreshold(int parallelSortThreshold) {
+    if (parallelSortThreshold < 1) {
+      throw new IllegalArgumentException("The parallel sort threshold must be greater then 0");
+    }
+    this.parallelSortThreshold = parallelSortThreshold;
+    rankedOrder.set(null);
+  }
+
+  /**
+   * Sets the clock work orders are validated and ranked against, the system clock unless set.
+   * @param clock the clock to read the current time from.
+   */
+  @Autowired(required = false)
+  void setClock(Clock clock) {
+    this.clock = clock;
+  }
 
   /**
    * {@inheritDoc}
    */
   @Override
   public WorkOrder addWorkOrder(String id, String queueEntryTime) {
-    LOGGER.info("ENTRY:addWorkOrder({}, {})", id, queueEntryTime);
-    WorkOrder newWorkOrder = new WorkOrder(id, queueEntryTime);
-    if (workOrderRepository.containsKey(newWorkOrder.getId())) {
-      throw new IllegalArgumentException(String.format(DUPLICATE_WORK_ORDER_ID_ERROR, id));
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:addWorkOrder({}, {})", id, queueEntryTime);
+    }
+    WorkOrder newWorkOrder = new WorkOrder(id, queueEntryTime, clock);
+    QueuedWorkOrder queuedWorkOrder =
+        new QueuedWorkOrder(newWorkOrder.getIdAsLong(), newWorkOrder.getQueueEntrySeconds());
+    WorkOrderListeners.Change added = listeners.added(newWorkOrder);
+    if (workOrderRepository.putIfAbsent(queuedWorkOrder.getId(), queuedWorkOrder, added) != null) {
+      throw new WorkOrderRejectedException(WorkOrderRejection.Reason.DUPLICATE_ID,
+          String.format(DUPLICATE_WORK_ORDER_ID_ERROR, id));
+    }
+    try {
+      indexWorkOrder(queuedWorkOrder);
+    } finally {
+      listeners.tell(added);
+    }
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:addWorkOrder{}", newWorkOrder);
     }
-    workOrderRepository.put(newWorkOrder.getId(), newWorkOrder);
-    LOGGER.info("RETURN:addWorkOrder{}", newWorkOrder);
     return newWorkOrder;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrderBatchResult addWorkOrders(List<WorkOrderSubmission> submissions) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:addWorkOrders({} work orders)", submissions.size());
+    }
+    long nowSeconds = DateConverterUtilities.getEpochSeconds(clock);
+    List<WorkOrder> created = new ArrayList<>();
+    List<WorkOrderRejection> rejected = new ArrayList<>();
+    List<List<QueuedWorkOrder>> accepted = newBatches();
+    List<WorkOrderListeners.Change> changes = new ArrayList<>();
+    for (int index = 0; index < submissions.size(); index++) {
+      QueuedWorkOrder queuedWorkOrder = validateSubmission(index, submissions.get(index), nowSeconds, rejected);
+      if (queuedWorkOrder == null) {
+        continue;
+      }
+      WorkOrder workOrder = queuedWorkOrder.toWorkOrder(clock);
+      WorkOrderListeners.Change added = listeners.added(workOrder);
+      // claiming the id here also rejects a repeat of an id earlier in the same batch.
+      if (workOrderRepository.putIfAbsent(queuedWorkOrder.getId(), queuedWorkOrder, added) != null) {
+        rejected.add(duplicateRejection(index, submissions.get(index).getId()));
+        continue;
+      }
+      accepted.get(queuedWorkOrder.getClassificationOrdinal()).add(queuedWorkOrder);
+      created.add(workOrder);
+      changes.add(added);
+    }
+
+    try {
+      indexBatches(accepted);
+    } finally {
+      listeners.tell(changes);
+    }
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:addWorkOrders:{} created, {} rejected", created.size(), rejected.size());
+    }
+    return new WorkOrderBatchResult(created, rejected);
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public WorkOrder getNextWorkOrder() {
-    LOGGER.info("ENTRY:getNextWorkOrder()");
-    if (workOrderRepository.size() > 0) {
-      List<WorkOrder> sortedWorkOrderList = getSortedWorkOrderList();
-      WorkOrder topWorkOrder = sortedWorkOrderList.get(0);
-      LOGGER.info("FOUND:getNextWorkOrder:{}", topWorkOrder);
-      return getAndDeleteWorkOrderFromRepository(topWorkOrder.getId());
+    return getNextWorkOrder(workOrder -> true);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder getNextWorkOrder(Predicate<WorkOrder> handOver) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:getNextWorkOrder()");
+    }
+    WorkOrder workOrder = null;
+    WorkOrderListeners.Change taken = null;
+    takeLock.lockTake();
+    try {
+      QueuedWorkOrder topWorkOrder;
+      while ((topWorkOrder = getTopWorkOrder()) != null) {
+        WorkOrder top = topWorkOrder.toWorkOrder(clock);
+        WorkOrderListeners.Change change = listeners.taken(top);
+        if (claimWorkOrder(topWorkOrder, change)) {
+          workOrder = top;
+          taken = change;
+          break;
+        }
+        // taken by another request in the meantime so look again.
+      }
+    } finally {
+      takeLock.unlockTake();
+    }
+    if (workOrder == null) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("EMPTY LIST:getNextWorkOrder");
+      }
+      return null;
+    }
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("FOUND:getNextWorkOrder:{}", workOrder);
+    }
+    return handOver(workOrder, handOver, taken) ? workOrder : null;
+  }
+
+  /**
+   * {@inheritDoc} No other take claims a work order while the batch is taken, so the batch is
+   * always a run of consecutive ranks from the top of the queue.
+   */
+  @Override
+  public List<WorkOrder> getNextWorkOrders(int count) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:getNextWorkOrders({})", count);
+    }
+    if (count < 1) {
+      throw new IllegalArgumentException(String.format(INVALID_COUNT_ERROR, count));
+    }
+    List<WorkOrder> workOrders = new ArrayList<>(Math.min(count, workOrderRepository.size()));
+    List<WorkOrderListeners.Change> changes = new ArrayList<>();
+    takeLock.lockBatch();
+    try {
+      Iterator<QueuedWorkOrder> rankOrder = getRankOrderIterator();
+      while ((workOrders.size() < count) && rankOrder.hasNext()) {
+        // an order deleted in the meantime is skipped.
+        QueuedWorkOrder queuedWorkOrder = rankOrder.next();
+        WorkOrder workOrder = queuedWorkOrder.toWorkOrder(clock);
+        WorkOrderListeners.Change taken = listeners.taken(workOrder);
+        if (claimWorkOrder(queuedWorkOrder, taken)) {
+          workOrders.add(workOrder);
+          changes.add(taken);
+        }
+      }
+    } finally {
+      takeLock.unlockBatch();
+      listeners.tell(changes);
+    }
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:getNextWorkOrders:{} work orders", workOrders.size());
     }
-    LOGGER.info("EMPTY LIST:getNextWorkOrder");
-    return null;
+    return workOrders;
   }
 
   /**
@@ -65,22 +306,106 @@ public class WorkOrderRepositoryImpl implements WorkOrderRepository {
    */
   @Override
   public List<BigInteger> getSortedListOfWorkOrderIds() {
-    LOGGER.info("ENTRY:getSortedListOfWorkOrderIds()");
-    List<BigInteger> returnList = new ArrayList<>(workOrderRepository.size());
-    List<WorkOrder> sortedWorkOrderList = getSortedWorkOrderList();
-    sortedWorkOrderList.forEach(workOrder -> returnList.add(workOrder.getId()));
-    LOGGER.info("RETURN:getSortedListOfWorkOrderIds:{}", returnList);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:getSortedListOfWorkOrderIds()");
+    }
+    QueuedWorkOrder[] sortedWorkOrders = getSortedWorkOrders();
+    List<BigInteger> returnList = new ArrayList<>(sortedWorkOrders.length);
+    for (QueuedWorkOrder workOrder : sortedWorkOrders) {
+      returnList.add(BigInteger.valueOf(workOrder.getId()));
+    }
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:getSortedListOfWorkOrderIds:{} work orders", returnList.size());
+    }
     return returnList;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<BigInteger> getSortedListOfWorkOrderIds(int offset, int limit) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:getSortedListOfWorkOrderIds({}, {})", offset, limit);
+    }
+    if ((offset < 0) || (limit < 0)) {
+      throw new IllegalArgumentException(String.format(INVALID_PAGE_ERROR, offset, limit));
+    }
+    QueuedWorkOrder[] sortedWorkOrders = getCachedSortedWorkOrders();
+    if (sortedWorkOrders != null) {
+      int end = (int) Math.min(sortedWorkOrders.length, (long) offset + limit);
+      List<BigInteger> returnList = new ArrayList<>(Math.max(0, end - offset));
+      for (int i = offset; i < end; i++) {
+        returnList.add(BigInteger.valueOf(sortedWorkOrders[i].getId()));
+      }
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("RETURN:getSortedListOfWorkOrderIds:{} work orders", returnList.size());
+      }
+      return returnList;
+    }
+    Iterator<QueuedWorkOrder> rankOrder = getRankOrderIterator(offset);
+    List<BigInteger> returnList = new ArrayList<>(Math.min(limit, workOrderRepository.size()));
+    while ((returnList.size() < limit) && rankOrder.hasNext()) {
+      returnList.add(BigInteger.valueOf(rankOrder.next().getId()));
+    }
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:getSortedListOfWorkOrderIds:{} work orders", returnList.size());
+    }
+    return returnList;
+  }
+
+  /**
+   * {@inheritDoc} Should the queue already have been ranked at this second since it last
+   * changed the ids are read from that order; this never ranks the whole queue itself.
+   */
+  @Override
+  public PrimitiveIterator.OfLong getSortedWorkOrderIdIterator() {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:getSortedWorkOrderIdIterator()");
+    }
+    QueuedWorkOrder[] sortedWorkOrders = getCachedSortedWorkOrders();
+    Iterator<QueuedWorkOrder> rankOrder =
+        sortedWorkOrders != null ? Arrays.asList(sortedWorkOrders).iterator() : getRankOrderIterator();
+    return new PrimitiveIterator.OfLong() {
+      @Override
+      public boolean hasNext() {
+        return rankOrder.hasNext();
+      }
+
+      @Override
+      public long nextLong() {
+        return rankOrder.next().getId();
+      }
+    };
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public WorkOrder deleteWorkOrder(BigInteger workOrderId) {
-    LOGGER.info("ENTRY:deleteWorkOrder({})", workOrderId);
-    WorkOrder workOrder = getAndDeleteWorkOrderFromRepository(workOrderId);
-    LOGGER.info("RETURN:deleteWorkOrder:{}", workOrder);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:deleteWorkOrder({})", workOrderId);
+    }
+    WorkOrder workOrder = null;
+    WorkOrderListeners.Change deleted = null;
+    if (isValidKey(workOrderId)) {
+      QueuedWorkOrder queuedWorkOrder;
+      while ((queuedWorkOrder = workOrderRepository.get(workOrderId.longValue())) != null) {
+        WorkOrder found = queuedWorkOrder.toWorkOrder(clock);
+        WorkOrderListeners.Change change = listeners.deleted(found);
+        if (deleteWorkOrderFromRepository(queuedWorkOrder, change)) {
+          workOrder = found;
+          deleted = change;
+          break;
+        }
+        // taken or replaced by another request in the meantime so look again.
+      }
+    }
+    listeners.tell(deleted);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:deleteWorkOrder:{}", workOrder);
+    }
     return workOrder;
   }
 
@@ -89,17 +414,23 @@ public class WorkOrderRepositoryImpl implements WorkOrderRepository {
    */
   @Override
   public int getWorkOrderQueuePosition(BigInteger workOrderId) {
-    LOGGER.info("ENTRY:getWorkOrderQueuePosition({})", workOrderId);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:getWorkOrderQueuePosition({})", workOrderId);
+    }
     int foundIndex = -1;
-    if (workOrderRepository.containsKey(workOrderId)) {
-      List<WorkOrder> sortedWorkOrderList = getSortedWorkOrderList();
-      LOGGER.info("SORTED_LIST:getWorkOrderQueuePosition:{}", sortedWorkOrderList);
-      for (int i = 0; ((i < sortedWorkOrderList.size()) && (foundIndex == -1)); i++) {
-        if (workOrderId.compareTo(sortedWorkOrderList.get(i).getId()) == 0) {
-          foundIndex = i;
-        }
+    QueuedWorkOrder workOrder =
+        isValidKey(workOrderId) ? workOrderRepository.get(workOrderId.longValue()) : null;
+    if (workOrder != null) {
+      long referenceSeconds = DateConverterUtilities.getEpochSeconds(clock);
+      double rank = workOrder.getRank(referenceSeconds);
+      foundIndex = 0;
+      for (QueueEntryIndex<QueuedWorkOrder> classificationQueue : classificationQueues) {
+        foundIndex += classificationQueue.countWhile(queuedWorkOrder ->
+            queuedWorkOrder.isRankedBefore(queuedWorkOrder.getRank(referenceSeconds), workOrder, rank));
+      }
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("RETURN:getWorkOrderQueuePosition:{}", foundIndex);
       }
-      LOGGER.info("RETURN:getWorkOrderQueuePosition:{}", foundIndex);
     }
     return foundIndex;
   }
@@ -109,52 +440,554 @@ public class WorkOrderRepositoryImpl implements WorkOrderRepository {
    */
   @Override
   public double getQueueMeanWaitTime(String referenceDate) {
-    LOGGER.info("ENTRY:getQueueMeanWaitTime({})", referenceDate);
-    List<WorkOrder> sortedList = getSortedWorkOrderList();
-    double mean = 0.0;
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("ENTRY:getQueueMeanWaitTime({})", referenceDate);
+    }
+    if (workOrderRepository.size() == 0) {
+      // nothing queued, so there is no wait to average whatever the reference date.
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("RETURN:getQueueMeanWaitTime:{}", 0.0);
+      }
+      return 0.0;
+    }
+    long referenceSeconds = DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(referenceDate);
+    // only work orders that entered the queue by the reference time give sensible values,
+    // they are a prefix of each classification queue so count and sum them from the index,
+    // in one walk of one snapshot so the count and sum always describe the same work orders.
+    long count = 0L;
     double sum = 0.0;
+    for (QueueEntryIndex<QueuedWorkOrder> classificationQueue : classificationQueues) {
+      long[] countAndSum =
+          classificationQueue.countAndSumWhile(workOrder -> workOrder.getEntrySeconds() <= referenceSeconds);
+      count += countAndSum[0];
+      sum += (countAndSum[0] * (double) referenceSeconds) - countAndSum[1];
+    }
+    double mean = 0.0;
+    if (count > 0) {
+      mean = sum / count;
+    }
+    else {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("getQueueMeanWaitTime:NO_VALID_WORKORDER_DATESIN_THE_PAST_FROM_REFERENCE");
+      }
+    }
+
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RETURN:getQueueMeanWaitTime:{}", mean);
+    }
+    return mean;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getWorkOrderCount(WorkOrderClassification classification) {
+    return classificationQueues.get(classification.ordinal()).size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public WorkOrder getOldestWorkOrder(WorkOrderClassification classification) {
+    QueuedWorkOrder workOrder = classificationQueues.get(classification.ordinal()).first();
+    return workOrder != null ? workOrder.toWorkOrder(clock) : null;
+  }
+
+  /**
+   * {@inheritDoc} Only the full sorted list is shared, the mean wait time and queue position
+   * are read from the indexes of the queue without a sort.
+   */
+  @Override
+  public long getCoalescedReadCount() {
+    return coalescedReads.sum();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addWorkOrderListener(WorkOrderListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Restores a work order that was validated when it was first added, as when replaying a
+   * journal. Nothing is logged as a restore may be one of millions.
+   * @param id the id of the work order.
+   * @param entrySeconds the queue entry time in seconds from the epoch.
+   * @return true if it was restored; false if the id is already in the repository.
+   */
+  boolean restoreWorkOrder(long id, long entrySeconds) {
+    QueuedWorkOrder queuedWorkOrder = new QueuedWorkOrder(id, entrySeconds);
+    if (workOrderRepository.putIfAbsent(id, queuedWorkOrder) != null) {
+      return false;
+    }
+    indexWorkOrder(queuedWorkOrder);
+    return true;
+  }
+
+  /**
+   * @param id the id of the work order.
+   * @return true if a work order with the id is in the repository; otherwise false.
+   */
+  boolean containsWorkOrder(long id) {
+    return workOrderRepository.get(id) != null;
+  }
+
+  /** @return the clock work orders are validated and ranked against. */
+  Clock getClock() {
+    return clock;
+  }
+
+  /**
+   * Restores work orders that were validated when they were first added, as when loading a
+   * snapshot. Each classification queue is changed once for all of its work orders.
+   * @param workOrders the work orders to restore.
+   * @return the number restored, work orders whose id is already in the repository are skipped.
+   */
+  int restoreWorkOrders(List<QueuedWorkOrder> workOrders) {
+    List<List<QueuedWorkOrder>> accepted = newBatches();
     int count = 0;
-    if (sortedList.size() > 0) {
-      for (WorkOrder workOrder : sortedList) {
-        long timeInQueue = workOrder.getTimeInQueue(referenceDate);
-        if (timeInQueue >= 0) { // only allow sensible values.
-          ++count;
-          sum += timeInQueue;
+    for (QueuedWorkOrder workOrder : workOrders) {
+      if (workOrderRepository.putIfAbsent(workOrder.getId(), workOrder) == null) {
+        accepted.get(workOrder.getClassificationOrdinal()).add(workOrder);
+        ++count;
+      }
+    }
+    indexBatches(accepted);
+    return count;
+  }
+
+  /**
+   * Removes a work order without logging, as when replaying a journal.
+   * @param id the id of the work order.
+   * @return true if it was removed; false if the id is not in the repository.
+   */
+  boolean discardWorkOrder(long id) {
+    return getAndDeleteWorkOrderFromRepository(id) != null;
+  }
+
+  /**
+   * Takes a snapshot of the repository for writing out. Taking it is O(1), the work orders are
+   * read from it afterwards while the repository carries on changing.
+   * @return the work orders of each classification in queue entry order.
+   */
+  List<Iterator<QueuedWorkOrder>> snapshotClassificationQueues() {
+    List<Iterator<QueuedWorkOrder>> snapshot = new ArrayList<>(classificationQueues.size());
+    for (QueueEntryIndex<QueuedWorkOrder> classificationQueue : classificationQueues) {
+      snapshot.add(classificationQueue.iterator());
+    }
+    return snapshot;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getRankedOrderSorts() {
+    return rankedOrderSorts.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getRankedOrderSortNanos() {
+    return rankedOrderSortNanos.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getRankedOrderSortedWorkOrders() {
+    return rankedOrderSortedWorkOrders.get();
+  }
+
+  /** @return the last whole queue ranked, current or not, or null if it has not been ranked. */
+  Object[] getLastRankedOrder() {
+    RankedOrder cached = rankedOrder.get();
+    return cached != null ? cached.workOrders.getNow(null) : null;
+  }
+
+  /**
+   * Gets every work order in rank order at the current second, ranking the queue only if it
+   * has not already been ranked at this second since it last changed. If another request is
+   * ranking the same queue this waits for its order rather than ranking it again, so however
+   * many requests arrive together the queue is ranked once. The array is shared with other
+   * requests and must not be changed.
+   * @return the work orders from the highest ranked down.
+   */
+  private QueuedWorkOrder[] getSortedWorkOrders() {
+    long version = mutationVersion.get();
+    long referenceSeconds = DateConverterUtilities.getEpochSeconds(clock);
+    while (true) {
+      RankedOrder cached = rankedOrder.get();
+      if ((cached != null) && cached.covers(referenceSeconds, version)) {
+        QueuedWorkOrder[] sortedWorkOrders = cached.workOrders.getNow(null);
+        if (sortedWorkOrders != null) {
+          return sortedWorkOrders;
         }
+        coalescedReads.increment();
+        return cached.await();
       }
-      if (count > 0) {
-        mean = sum / count;
+      RankedOrder ranking = new RankedOrder(referenceSeconds, version);
+      if (rankedOrder.compareAndSet(cached, ranking)) {
+        return ranking.rank(this::sortWorkOrders, rankedOrder);
       }
-      else {
-        LOGGER.info("getQueueMeanWaitTime:NO_VALID_WORKORDER_DATESIN_THE_PAST_FROM_REFERENCE");
+    }
+  }
+
+  /**
+   * Gets every work order in rank order at the current second if the queue has already been
+   * ranked at this second since it last changed. The array must not be changed.
+   * @return the work orders from the highest ranked down or null if they need ranking.
+   */
+  private QueuedWorkOrder[] getCachedSortedWorkOrders() {
+    long version = mutationVersion.get();
+    RankedOrder cached = rankedOrder.get();
+    return (cached != null) && cached.covers(DateConverterUtilities.getEpochSeconds(clock), version)
+        ? cached.workOrders.getNow(null) : null;
+  }
+
+  /**
+   * Ranks every work order in the repository. The rank of every work order is computed once
+   * against the reference time, so the order is consistent even if the clock ticks while
+   * sorting. Each classification queue is already in rank order, so the four of them are
+   * merged rather than sorted. The time taken and the number of work orders ranked are
+   * recorded here, so they count only the rankings actually made.
+   * @param referenceSeconds the time to rank at in seconds from the epoch.
+   * @return the work orders from the highest ranked down.
+   */
+  private QueuedWorkOrder[] sortWorkOrders(long referenceSeconds) {
+    long start = System.nanoTime();
+    int queueCount = classificationQueues.size();
+    QueuedWorkOrder[][] workOrders = new QueuedWorkOrder[queueCount][];
+    double[][] ranks = new double[queueCount][];
+    int size = 0;
+    for (int index = 0; index < queueCount; index++) {
+      workOrders[index] = classificationQueues.get(index).toArray(QueuedWorkOrder[]::new);
+      ranks[index] = computeRanks(referenceSeconds, workOrders[index]);
+      size += workOrders[index].length;
+    }
+
+    QueuedWorkOrder[] sortedWorkOrders = new QueuedWorkOrder[size];
+    int[] heads = new int[queueCount];
+    for (int i = 0; i < size; i++) {
+      int top = -1;
+      for (int index = 0; index < queueCount; index++) {
+        if ((heads[index] < workOrders[index].length) && ((top == -1)
+            || workOrders[index][heads[index]].isRankedBefore(ranks[index][heads[index]],
+                workOrders[top][heads[top]], ranks[top][heads[top]]))) {
+          top = index;
+        }
       }
+      sortedWorkOrders[i] = workOrders[top][heads[top]++];
     }
+    rankedOrderSortNanos.addAndGet(System.nanoTime() - start);
+    rankedOrderSortedWorkOrders.addAndGet(size);
+    rankedOrderSorts.incrementAndGet();
+    return sortedWorkOrders;
+  }
 
-    LOGGER.info("RETURN:getQueueMeanWaitTime:{}", mean);
-    return mean;
+  /**
+   * Gets an iterator over a snapshot of the repository in rank order at the current time.
+   * @return the work orders from the highest ranked down.
+   */
+  private Iterator<QueuedWorkOrder> getRankOrderIterator() {
+    return new RankOrderIterator(snapshotClassificationQueues(), DateConverterUtilities.getEpochSeconds(clock));
   }
 
   /**
-   * Gets a sorted work order list from the repository.
-   * @return a rank sorted list of work orders.
+   * Gets an iterator over a snapshot of the repository in rank order at the current time,
+   * starting at a position in that order. The work orders before the position are skipped by
+   * searching each classification queue, not by stepping over them.
+   * @param offset the position of the first work order in rank order.
+   * @return the work orders from the position down.
    */
-  private List<WorkOrder> getSortedWorkOrderList() {
-    List<WorkOrder> listToSort = new ArrayList<>(workOrderRepository.values());
-    Collections.sort(listToSort, WorkOrder.Comparators.RANK);
-    return listToSort;
+  private Iterator<QueuedWorkOrder> getRankOrderIterator(int offset) {
+    if (offset == 0) {
+      return getRankOrderIterator();
+    }
+    List<QueueEntryIndex<QueuedWorkOrder>> snapshot = new ArrayList<>(classificationQueues.size());
+    for (QueueEntryIndex<QueuedWorkOrder> classificationQueue : classificationQueues) {
+      snapshot.add(classificationQueue.snapshot());
+    }
+    return RankOrderIterator.startingAt(snapshot, DateConverterUtilities.getEpochSeconds(clock), offset);
+  }
+
+  /**
+   * Computes the rank of each work order against the reference time. Large numbers of work
+   * orders are computed in parallel.
+   * @param referenceSeconds the reference time in seconds from the epoch
+   * @param workOrders the work orders to compute the ranks of
+   * @return the rank of each work order
+   */
+  private double[] computeRanks(long referenceSeconds, QueuedWorkOrder[] workOrders) {
+    double[] ranks = new double[workOrders.length];
+    if (workOrders.length > parallelSortThreshold) {
+      Arrays.parallelSetAll(ranks, i -> workOrders[i].getRank(referenceSeconds));
+    } else {
+      for (int i = 0; i < workOrders.length; i++) {
+        ranks[i] = workOrders[i].getRank(referenceSeconds);
+      }
+    }
+    return ranks;
+  }
+
+  /**
+   * Validates a work order of a batch as addWorkOrder would, apart from the duplicate check.
+   * @param index the position of the work order in the batch.
+   * @param submission the work order submitted.
+   * @param nowSeconds the current time in seconds from the epoch.
+   * @param rejected receives the rejection if the work order is faulty.
+   * @return the work order or null if it was rejected.
+   */
+  static QueuedWorkOrder validateSubmission(int index, WorkOrderSubmission submission, long nowSeconds,
+                                            List<WorkOrderRejection> rejected) {
+    String id = submission != null ? submission.getId() : null;
+    if (!BigIntegerConversionUtilities.isStringValidId(id)) {
+      rejected.add(new WorkOrderRejection(index, id, WorkOrderRejection.Reason.INVALID_ID,
+          String.format(INVALID_ID_ERROR, id)));
+      return null;
+    }
+    long entrySeconds;
+    try {
+      entrySeconds = DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(submission.getEntryDate());
+    } catch (IllegalArgumentException e) {
+      rejected.add(new WorkOrderRejection(index, id, WorkOrderRejection.Reason.INVALID_DATE, e.getMessage()));
+      return null;
+    }
+    if (entrySeconds > nowSeconds) {
+      rejected.add(new WorkOrderRejection(index, id, WorkOrderRejection.Reason.FUTURE_DATE,
+          String.format(FUTURE_DATE_ERROR, submission.getEntryDate())));
+      return null;
+    }
+    return new QueuedWorkOrder(BigIntegerConversionUtilities.getConverttoValidWorkOrderIdValue(id), entrySeconds);
+  }
+
+  /**
+   * Creates the rejection of a work order of a batch whose id is already in the repository.
+   * @param index the position of the work order in the batch.
+   * @param id the id submitted.
+   * @return the rejection.
+   */
+  static WorkOrderRejection duplicateRejection(int index, String id) {
+    return new WorkOrderRejection(index, id, WorkOrderRejection.Reason.DUPLICATE_ID,
+        String.format(DUPLICATE_WORK_ORDER_ID_ERROR, id));
+  }
+
+  /** @return an empty batch of work orders for each classification. */
+  private List<List<QueuedWorkOrder>> newBatches() {
+    List<List<QueuedWorkOrder>> batches = new ArrayList<>(classificationQueues.size());
+    for (int i = 0; i < classificationQueues.size(); i++) {
+      batches.add(new ArrayList<>());
+    }
+    return batches;
+  }
+
+  /**
+   * Adds a batch of work orders to each classification queue with a single change to each.
+   * As for a single work order, one removed from the map before it was indexed could not be
+   * taken out of the queue by the removal, so it is taken out here.
+   * @param batches the work orders of each classification, already in the id map.
+   */
+  private void indexBatches(List<List<QueuedWorkOrder>> batches) {
+    for (int ordinal = 0; ordinal < batches.size(); ordinal++) {
+      List<QueuedWorkOrder> classificationBatch = batches.get(ordinal);
+      classificationBatch.sort(QueuedWorkOrder.QUEUE_ENTRY);
+      QueueEntryIndex<QueuedWorkOrder> classificationQueue = classificationQueues.get(ordinal);
+      classificationQueue.addAll(classificationBatch);
+      for (QueuedWorkOrder queuedWorkOrder : classificationBatch) {
+        if (workOrderRepository.get(queuedWorkOrder.getId()) != queuedWorkOrder) {
+          classificationQueue.removeInstance(queuedWorkOrder);
+        }
+      }
+    }
+    queueChanged();
+  }
+
+  /**
+   * Moves the version on once a change is in the classification queues and stops holding a
+   * ranked order of an earlier version, so the array is not kept once it can no longer be read.
+   */
+  private void queueChanged() {
+    long version = mutationVersion.incrementAndGet();
+    RankedOrder cached = rankedOrder.get();
+    if ((cached != null) && (cached.version < version)) {
+      // requests already waiting on it keep their own reference.
+      rankedOrder.compareAndSet(cached, null);
+    }
+  }
+
+  /**
+   * Finds the highest ranked work order by comparing the heads of the classification queues.
+   * All of the heads are ranked against the same reference time.
+   * @return the highest ranked work order or null if the repository is empty.
+   */
+  private QueuedWorkOrder getTopWorkOrder() {
+    long referenceSeconds = DateConverterUtilities.getEpochSeconds(clock);
+    QueuedWorkOrder topWorkOrder = null;
+    for (QueueEntryIndex<QueuedWorkOrder> classificationQueue : classificationQueues) {
+      QueuedWorkOrder head = classificationQueue.first();
+      if ((head != null)
+          && ((topWorkOrder == null) || head.isRankedBefore(topWorkOrder, referenceSeconds))) {
+        topWorkOrder = head;
+      }
+    }
+    return topWorkOrder;
+  }
+
+  /**
+   * Adds a work order that is already in the id map to its classification queue. Should the
+   * work order have been removed from the map before it was indexed, the removal could not
+   * take it out of the queue, so it is taken out here.
+   * @param queuedWorkOrder the work order to index.
+   */
+  private void indexWorkOrder(QueuedWorkOrder queuedWorkOrder) {
+    QueueEntryIndex<QueuedWorkOrder> classificationQueue =
+        classificationQueues.get(queuedWorkOrder.getClassificationOrdinal());
+    classificationQueue.put(queuedWorkOrder);
+    if (workOrderRepository.get(queuedWorkOrder.getId()) != queuedWorkOrder) {
+      classificationQueue.removeInstance(queuedWorkOrder);
+    }
+    queueChanged();
+  }
+
+  /**
+   * Claims a work order for the request. Removing the very work order from the id map is the
+   * claim, so exactly one request claims it however many try; the map only locks the one
+   * segment holding the id and the classification queue is changed by compare and set.
+   * Whether the claim succeeds or not the work order is then taken out of its classification
+   * queue, so a request that loses the race finishes the winner's removal rather than waiting
+   * for it and no request can hold up the others.
+   * @param queuedWorkOrder the work order to claim.
+   * @param taken the change to record if it is claimed, null for none.
+   * @return true if this request claimed the work order; false if another request had.
+   */
+  private boolean claimWorkOrder(QueuedWorkOrder queuedWorkOrder, WorkOrderListeners.Change taken) {
+    boolean claimed = workOrderRepository.remove(queuedWorkOrder.getId(), queuedWorkOrder, taken);
+    classificationQueues.get(queuedWorkOrder.getClassificationOrdinal()).removeInstance(queuedWorkOrder);
+    queueChanged();
+    return claimed;
+  }
+
+  /**
+   * Hands over a work order taken from the queue, putting it back in its place if it cannot be
+   * handed over. Listeners are told it was taken unless it is put back.
+   * @param workOrder the work order taken.
+   * @param handOver receives the work order, returns false if it could not be handed over.
+   * @param taken the change recorded as the work order was taken.
+   * @return true if it was handed over; otherwise false.
+   */
+  private boolean handOver(WorkOrder workOrder, Predicate<WorkOrder> handOver, WorkOrderListeners.Change taken) {
+    boolean handedOver = false;
+    try {
+      handedOver = handOver.test(workOrder);
+    } finally {
+      if (!handedOver && restoreWorkOrder(workOrder.getIdAsLong(), workOrder.getQueueEntrySeconds())) {
+        listeners.cancel(taken);
+      } else {
+        if (!handedOver) {
+          LOGGER.warn("DUPLICATE:getNextWorkOrder:{} was added again before it could be put back", workOrder);
+        }
+        listeners.tell(taken);
+      }
+    }
+    return handedOver;
+  }
+
+  /**
+   * Deletes the very work order given if it is still in the repository.
+   * @param queuedWorkOrder the work order to delete.
+   * @param deleted the change to record if it is deleted, null for none.
+   * @return true if it was deleted; false if it had already been taken or deleted.
+   */
+  private boolean deleteWorkOrderFromRepository(QueuedWorkOrder queuedWorkOrder, WorkOrderListeners.Change deleted) {
+    if (!workOrderRepository.remove(queuedWorkOrder.getId(), queuedWorkOrder, deleted)) {
+      return false;
+    }
+    classificationQueues.get(queuedWorkOrder.getClassificationOrdinal()).removeInstance(queuedWorkOrder);
+    queueChanged();
+    return true;
   }
 
   /**
    * If a work order with the given id exists in the repository it is retrieved and deleted.
    * @param workOrderId id to retrieve and delete
-   * @return found WorkOrder or null if not found.
+   * @return found work order or null if not found.
    */
-  private WorkOrder getAndDeleteWorkOrderFromRepository(BigInteger workOrderId) {
-    WorkOrder foundValue = null;
-    if (workOrderRepository.containsKey(workOrderId)) {
-      foundValue = workOrderRepository.get(workOrderId);
-      workOrderRepository.remove(workOrderId);
+  private QueuedWorkOrder getAndDeleteWorkOrderFromRepository(long workOrderId) {
+    QueuedWorkOrder foundValue = workOrderRepository.remove(workOrderId);
+    if (foundValue != null) {
+      classificationQueues.get(foundValue.getClassificationOrdinal()).removeInstance(foundValue);
+      queueChanged();
     }
     return foundValue;
   }
+
+  /**
+   * Determines whether an id can be a key of the repository. Every work order id is
+   * between 1 and 9223372036854775807 so anything else cannot be in the repository.
+   * @param workOrderId the id to test
+   * @return true if the id is in the range of work order ids; otherwise false.
+   */
+  private static boolean isValidKey(BigInteger workOrderId) {
+    return (workOrderId != null) && (workOrderId.signum() > 0) && (workOrderId.bitLength() < Long.SIZE);
+  }
+
+  /**
+   * The whole queue in rank order, with the second it was ranked at and the version ranked.
+   * The order is completed by the request that ranks it, others wait for it to complete.
+   */
+  private static final class RankedOrder {
+
+    private final long referenceSeconds;
+    private final long version;
+    private final CompletableFuture<QueuedWorkOrder[]> workOrders = new CompletableFuture<>();
+
+    RankedOrder(long referenceSeconds, long version) {
+      this.referenceSeconds = referenceSeconds;
+      this.version = version;
+    }
+
+    /**
+     * A later second or version is as good as the one asked for, it was ranked after the
+     * question was asked and holds every change made up to it.
+     * @return true if this answers for the queue at the given second and version.
+     */
+    boolean covers(long referenceSeconds, long version) {
+      return (this.referenceSeconds >= referenceSeconds) && (this.version >= version);
+    }
+
+    /**
+     * Ranks the queue and completes the order, or fails it and stops holding it if the
+     * ranking fails so the next request ranks again.
+     */
+    QueuedWorkOrder[] rank(LongFunction<QueuedWorkOrder[]> sort, AtomicReference<RankedOrder> holder) {
+      try {
+        QueuedWorkOrder[] sortedWorkOrders = sort.apply(referenceSeconds);
+        workOrders.complete(sortedWorkOrders);
+        return sortedWorkOrders;
+      } catch (RuntimeException | Error e) {
+        holder.compareAndSet(this, null);
+        workOrders.completeExceptionally(e);
+        throw e;
+      }
+    }
+
+    /** Waits for another request to rank the queue and rethrows its failure if it failed. */
+    QueuedWorkOrder[] await() {
+      try {
+        return workOrders.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw e;
+      }
+    }
+  }
 }
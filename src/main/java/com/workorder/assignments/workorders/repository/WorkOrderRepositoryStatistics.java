@@ -0,0 +1,28 @@
+package com.workorder.assignments.workorders.repository;
+
+/** Counts kept by a work order repository about how it answers reads.
+ * Only a repository that shares reads between callers and ranks the whole queue at once keeps
+ * these, so they are kept apart from the queue itself and read by the metrics only when the
+ * repository in use offers them.
+ * Class:        WorkOrderRepositoryStatistics
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public interface WorkOrderRepositoryStatistics {
+
+  /**
+   * Counts the reads that were answered by waiting for the same read already being worked out
+   * for another caller, against the same queue, rather than working it out again.
+   * @return the number of reads shared so far.
+   */
+  long getCoalescedReadCount();
+
+  /** @return the number of times the whole queue has been ranked. */
+  long getRankedOrderSorts();
+
+  /** @return the total time in nanoseconds spent ranking the whole queue. */
+  long getRankedOrderSortNanos();
+
+  /** @return the total number of work orders ranked over every ranking of the whole queue. */
+  long getRankedOrderSortedWorkOrders();
+}
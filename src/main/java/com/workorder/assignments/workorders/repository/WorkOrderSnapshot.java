@@ -0,0 +1,163 @@
+package com.workorder.assignments.workorders.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/** Reads and writes compact binary snapshots of the work order queue.
+ * A snapshot is a header with the number of work orders, followed by the id, the queue entry
+ * seconds and the classification ordinal of each work order and lastly a CRC32 of the work
+ * orders. The work orders are written one classification at a time in queue entry order, which
+ * is the order the repository holds them in, so a snapshot loads without sorting. A snapshot
+ * is written to a temporary file that replaces the previous snapshot only once it is complete.
+ * Class:        WorkOrderSnapshot
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+final class WorkOrderSnapshot {
+
+  /** Identifies a work order snapshot file, "WOS1". */
+  private static final int MAGIC = 0x574f5331;
+  private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+  private static final int RECORD_SIZE = Long.BYTES + Long.BYTES + 1;
+  private static final int TRAILER_SIZE = Integer.BYTES;
+
+  private static final int BUFFER_SIZE = RECORD_SIZE * 64 * 1024;
+
+  private static final String NOT_A_SNAPSHOT_ERROR = "The file '%s' is not a whole work order snapshot.";
+  private static final String CORRUPT_SNAPSHOT_ERROR = "The work order snapshot '%s' is corrupt.";
+
+  /** This is a helper static class so hide the default constructor. */
+  private WorkOrderSnapshot() {
+    // hide default constructor
+  }
+
+  /**
+   * Writes a snapshot of the work orders, replacing any previous snapshot once it is complete.
+   * @param file the snapshot file.
+   * @param sources the work orders of each classification in queue entry order.
+   * @return the number of work orders written.
+   * @throws IOException if the snapshot cannot be written.
+   */
+  static long write(Path file, List<Iterator<QueuedWorkOrder>> sources) throws IOException {
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    long count = 0L;
+    CRC32 crc = new CRC32();
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      // the count is not known yet, the header is written once the work orders are.
+      buffer.position(HEADER_SIZE);
+      buffer.flip();
+      writeAll(channel, buffer);
+      for (Iterator<QueuedWorkOrder> source : sources) {
+        while (source.hasNext()) {
+          if (buffer.remaining() < RECORD_SIZE) {
+            writeRecords(channel, buffer, crc);
+          }
+          QueuedWorkOrder workOrder = source.next();
+          buffer.putLong(workOrder.getId()).putLong(workOrder.getEntrySeconds())
+              .put((byte) workOrder.getClassificationOrdinal());
+          ++count;
+        }
+      }
+      writeRecords(channel, buffer, crc);
+      buffer.putInt((int) crc.getValue());
+      buffer.flip();
+      writeAll(channel, buffer);
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(count);
+      header.flip();
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+      channel.force(true);
+    }
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return count;
+  }
+
+  /**
+   * Loads a snapshot into the repository in one pass.
+   * @param file the snapshot file.
+   * @param repository the repository to load into.
+   * @return the number of work orders loaded.
+   * @throws IOException if the snapshot cannot be read or is not whole.
+   */
+  static int load(Path file, WorkOrderRepositoryImpl repository) throws IOException {
+    List<QueuedWorkOrder> workOrders;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      buffer.limit(HEADER_SIZE);
+      readFully(channel, buffer);
+      buffer.flip();
+      if ((buffer.remaining() < HEADER_SIZE) || (buffer.getInt() != MAGIC)) {
+        throw new IOException(String.format(NOT_A_SNAPSHOT_ERROR, file));
+      }
+      long count = buffer.getLong();
+      if ((count < 0L) || (count > Integer.MAX_VALUE)
+          || (channel.size() != HEADER_SIZE + (count * RECORD_SIZE) + TRAILER_SIZE)) {
+        throw new IOException(String.format(NOT_A_SNAPSHOT_ERROR, file));
+      }
+
+      workOrders = new ArrayList<>((int) count);
+      CRC32 crc = new CRC32();
+      buffer.clear();
+      while (workOrders.size() < count) {
+        buffer.limit((int) Math.min(BUFFER_SIZE, (count - workOrders.size()) * RECORD_SIZE));
+        readFully(channel, buffer);
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+          QueuedWorkOrder workOrder = new QueuedWorkOrder(buffer.getLong(), buffer.getLong());
+          if (buffer.get() != workOrder.getClassificationOrdinal()) {
+            throw new IOException(String.format(CORRUPT_SNAPSHOT_ERROR, file));
+          }
+          workOrders.add(workOrder);
+        }
+        buffer.clear();
+      }
+      buffer.limit(TRAILER_SIZE);
+      readFully(channel, buffer);
+      buffer.flip();
+      if (buffer.getInt() != (int) crc.getValue()) {
+        throw new IOException(String.format(CORRUPT_SNAPSHOT_ERROR, file));
+      }
+    } catch (IllegalArgumentException e) {
+      // an id that is not a work order id.
+      throw new IOException(String.format(CORRUPT_SNAPSHOT_ERROR, file), e);
+    }
+    return repository.restoreWorkOrders(workOrders);
+  }
+
+  /** Writes the records in the buffer and adds them to the checksum. */
+  private static void writeRecords(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+    buffer.flip();
+    crc.update(buffer.duplicate());
+    writeAll(channel, buffer);
+  }
+
+  /** Writes the whole of a flipped buffer and clears it. */
+  private static void writeAll(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new IOException("Unexpected end of the work order snapshot.");
+      }
+    }
+  }
+}
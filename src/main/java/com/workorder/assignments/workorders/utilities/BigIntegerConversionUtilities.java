@@ -1,8 +1,6 @@
 package com.workorder.assignments.workorders.utilities;
 
 import java.math.BigInteger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /** Class to convert and check the project usage of Big Integer.
  *   Class:        BigIntegerConversionUtilities
@@ -12,11 +10,11 @@ import java.util.regex.Pattern;
 
 public class BigIntegerConversionUtilities {
 
-  /** Regular Expression Pattern for matching a valid work order id. */
-  private static final String POSITIVE_BIG_INTEGER_PATTERN = "[1-9]\\d{0,17}[0-7]?";
+  /** The number of digits in the largest work order id, 9223372036854775807. */
+  private static final int MAXIMUM_ID_DIGITS = 19;
 
-  /** Create a regular expression matching object. */
-  private static Pattern pattern = Pattern.compile(POSITIVE_BIG_INTEGER_PATTERN);
+  /** Returned by the parser for a string that is not a valid work order id. */
+  private static final long INVALID_ID = -1L;
 
   /** Exception string for an invalid value. */
   private static final String INVALID_STRING_FORMAT_ERROR =
@@ -33,33 +31,61 @@ public class BigIntegerConversionUtilities {
    * @throws IllegalArgumentException if the string cannot be converted.
    */
   public static BigInteger getConverttoValidWorkOrderId(String id) {
+    return BigInteger.valueOf(getConverttoValidWorkOrderIdValue(id));
+  }
+
+  /**Convert a String representing a work order id to a primitive long without allocating.
+   * @param id the string value to be converted
+   * @return the value of the id
+   * @throws IllegalArgumentException if the string cannot be converted.
+   */
+  public static long getConverttoValidWorkOrderIdValue(String id) {
 
-    if (isStringValidId(id)) {
-      return new BigInteger(id);
-    } else {
+    long value = parseId(id);
+    if (value == INVALID_ID) {
       throw new IllegalArgumentException(String.format(INVALID_STRING_FORMAT_ERROR, id));
     }
+    return value;
   }
 
   /**
    * Checks if a string is a valid representation of a work order identity.
-   * The check is performed by using a regular expression.
+   * The check is performed by parsing the string.
    * @param id the string representation of the id
    * @return true if the string can be converted to a valid identity; otherwise false.
    */
   public static final boolean isStringValidId(String id) {
+    return parseId(id) != INVALID_ID;
+  }
+
+  /**
+   * Parses a work order id in a single pass over its characters. A valid id is only decimal
+   * digits, has no leading zero and is between 1 and 9223372036854775807.
+   * @param id the string representation of the id
+   * @return the value of the id or INVALID_ID if the string is not a valid id.
+   */
+  private static long parseId(String id) {
 
     // check the input for validity
-    if ((id == null) || (id.isEmpty())) {
-      return false;
+    if ((id == null) || (id.isEmpty()) || (id.length() > MAXIMUM_ID_DIGITS)) {
+      return INVALID_ID;
     }
-    // create a matcher for the input
-    Matcher matcher = pattern.matcher(id);
-
-    // if there is no match return false. If there is ensure there are no extraneous characters.
-    if (matcher.find()) {
-      return (matcher.group(0).length() == id.length());
+    int digit = id.charAt(0) - '0';
+    if ((digit < 1) || (digit > 9)) {
+      return INVALID_ID;
+    }
+    long value = digit;
+    for (int i = 1; i < id.length(); i++) {
+      digit = id.charAt(i) - '0';
+      if ((digit < 0) || (digit > 9)) {
+        return INVALID_ID;
+      }
+      // reject anything that would pass the maximum, only possible with the 19th digit.
+      if (value > (Long.MAX_VALUE - digit) / 10) {
+        return INVALID_ID;
+      }
+      value = (value * 10) + digit;
     }
-    return false;
+    return value;
   }
 }
@@ -0,0 +1,132 @@
+package com.workorder.assignments.workorders.utilities;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/** A clock that reads the time a ticker thread last published.
+ * Class:        CachedClock
+ *               Ranks and validation only need the time to the second, yet they read it on
+ *               every request. A daemon thread reads the system clock once a tick and publishes
+ *               it, so reading this clock is a single volatile read; nothing is allocated unless
+ *               an Instant is asked for. The time read is at most a tick behind the system clock.
+ *               Clocks made by {@link #withZone} share the ticker of the clock they were made
+ *               from, closing any of them stops it.
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public final class CachedClock extends Clock implements Closeable {
+
+  private final Ticker ticker;
+  private final ZoneId zone;
+
+  /**
+   * Creates a clock and starts its ticker.
+   * @param zone the time zone of the clock.
+   * @param tickMillis the interval in milliseconds between reads of the system clock.
+   * @throws IllegalArgumentException if the interval is not positive.
+   */
+  public CachedClock(ZoneId zone, long tickMillis) {
+    this(new Ticker(tickMillis), zone);
+  }
+
+  private CachedClock(Ticker ticker, ZoneId zone) {
+    this.ticker = ticker;
+    this.zone = zone;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ZoneId getZone() {
+    return zone;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Clock withZone(ZoneId zone) {
+    return this.zone.equals(zone) ? this : new CachedClock(ticker, zone);
+  }
+
+  /**
+   * {@inheritDoc} This is the time published by the last tick.
+   */
+  @Override
+  public long millis() {
+    return ticker.millis;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Instant instant() {
+    return Instant.ofEpochMilli(ticker.millis);
+  }
+
+  /** Stops the ticker, the clock then stays at the time of the last tick. */
+  @Override
+  public void close() {
+    ticker.stop();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof CachedClock)) {
+      return false;
+    }
+    CachedClock clock = (CachedClock) o;
+    return (ticker == clock.ticker) && zone.equals(clock.zone);
+  }
+
+  @Override
+  public int hashCode() {
+    return System.identityHashCode(ticker) ^ zone.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "CachedClock[" + zone + "]";
+  }
+
+  /** Reads the system clock once a tick and publishes it. */
+  private static final class Ticker implements Runnable {
+
+    private final long tickNanos;
+    private final Thread thread;
+    private volatile long millis = System.currentTimeMillis();
+    private volatile boolean running = true;
+
+    Ticker(long tickMillis) {
+      if (tickMillis < 1L) {
+        throw new IllegalArgumentException("The clock tick must be greater then 0");
+      }
+      tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+      thread = new Thread(this, "work-order-clock");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        millis = System.currentTimeMillis();
+        LockSupport.parkNanos(tickNanos);
+      }
+    }
+
+    void stop() {
+      running = false;
+      LockSupport.unpark(thread);
+    }
+  }
+}
@@ -1,28 +1,34 @@
 package com.workorder.assignments.workorders.utilities;
 
 
-import java.time.DateTimeException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.regex.Pattern;
 
 /**
  * Class:        DateConverterUtilities
  *                Static class to manage the date validation from string.
  *                For this project only ISO_8601 wll be handled for UTC only.
- *                Dates in the form yyyy-MM-ddTHH:mm:ssZ will be used. This is a formatter
- *                that is predefined in the DateTimeFormatter class.
+ *                Dates in the form yyyy-MM-ddTHH:mm:ssZ will be used. As this is a fixed
+ *                layout the strings are parsed directly by character position.
  * Created By:   brownless
  */
 
 public class DateConverterUtilities {
 
-  /** Regex to match the date string. e.g. 2017-12-31T17:42:57Z*/
-  private static final String ISO_8601_REGEX =
-      "^\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}Z$";
+  /** Layout of the date string, a '0' marks a digit. e.g. 2017-12-31T17:42:57Z*/
+  private static final String ISO_8601_LAYOUT = "0000-00-00T00:00:00Z";
 
-  /** Pattern for matching the ISO 8601 date format. */
-  private static final Pattern ISO8601_PATTERN = Pattern.compile(ISO_8601_REGEX);
+  /** Seconds in a day. */
+  private static final long SECONDS_PER_DAY = 86400L;
+
+  /** Days in each 400 year cycle of the Gregorian calendar. */
+  private static final long DAYS_PER_CYCLE = 146097L;
+
+  /** Days from 0000-03-01, the start of the calendar used by the epoch day calculation, to 1970-01-01. */
+  private static final long DAYS_0000_TO_1970 = 719468L;
 
   /** Error string for parse error exception. */
   private static final String PARSE_ERROR_STRING =
@@ -68,19 +74,47 @@ public class DateConverterUtilities {
   public static final ZonedDateTime getDateTimefromIso8601StringFormat(
       final String iso8601Representation) {
 
-    if (isDateStringInIso8601Format(iso8601Representation)) {
-      try {
-        ZonedDateTime zonedDateTime =
-            ZonedDateTime.parse(iso8601Representation, DateTimeFormatter.ISO_DATE_TIME);
+    return ZonedDateTime.ofInstant(
+        Instant.ofEpochSecond(getEpochSecondsFromIso8601StringFormat(iso8601Representation)),
+        ZoneOffset.UTC);
+  }
 
-        return ZonedDateTime.parse(iso8601Representation, DateTimeFormatter.ISO_DATE_TIME);
-      } catch (DateTimeException dte) {
-        throw new IllegalArgumentException(
-            String.format(PARSE_ERROR_STRING, iso8601Representation), dte);
-      }
-    } else {
+  /**
+   * Reads the time from a clock in whole seconds from the epoch, without allocating.
+   *
+   * @param clock the clock to read.
+   * @return seconds from the epoch of the current time of the clock.
+   */
+  public static long getEpochSeconds(final Clock clock) {
+    return Math.floorDiv(clock.millis(), 1000L);
+  }
+
+  /**
+   * Converts a ISO8601 date form string to the number of seconds from the epoch
+   * 1970-01-01T00:00:00Z. The string is parsed in one pass without allocating.
+   *
+   * @param iso8601Representation the string representation of the date, assumed to be in UTC.
+   * @return seconds from the epoch of the date represented by the string.
+   * @throws IllegalArgumentException if the string is not in the format or is not a valid date.
+   *
+   */
+  public static long getEpochSecondsFromIso8601StringFormat(final String iso8601Representation) {
+
+    if (!isDateStringInIso8601Format(iso8601Representation)) {
       throw new IllegalArgumentException(String.format(PARSE_ERROR_STRING, iso8601Representation));
     }
+    int year = parseDigits(iso8601Representation, 0, 4);
+    int month = parseDigits(iso8601Representation, 5, 2);
+    int day = parseDigits(iso8601Representation, 8, 2);
+    int hour = parseDigits(iso8601Representation, 11, 2);
+    int minute = parseDigits(iso8601Representation, 14, 2);
+    int second = parseDigits(iso8601Representation, 17, 2);
+
+    if ((month < 1) || (month > 12) || (day < 1) || (day > lengthOfMonth(year, month))
+        || (hour > 23) || (minute > 59) || (second > 59)) {
+      throw new IllegalArgumentException(String.format(PARSE_ERROR_STRING, iso8601Representation));
+    }
+    return (epochDay(year, month, day) * SECONDS_PER_DAY) + (hour * 3600L) + (minute * 60L) + second;
   }
 
   /**
@@ -92,9 +126,54 @@ public class DateConverterUtilities {
    */
   public static boolean isDateStringInIso8601Format(final String dateString) {
 
-    if ((dateString != null) && (!dateString.isEmpty())) {
-      return ISO8601_PATTERN.matcher(dateString).matches();
+    if ((dateString == null) || (dateString.length() != ISO_8601_LAYOUT.length())) {
+      return false;
+    }
+    for (int i = 0; i < ISO_8601_LAYOUT.length(); i++) {
+      char expected = ISO_8601_LAYOUT.charAt(i);
+      char actual = dateString.charAt(i);
+      if ((expected == '0') ? ((actual < '0') || (actual > '9')) : (actual != expected)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Reads a number from a run of digits already known to be valid. */
+  private static int parseDigits(final String value, final int start, final int length) {
+    int result = 0;
+    for (int i = start; i < start + length; i++) {
+      result = (result * 10) + (value.charAt(i) - '0');
     }
-    return false;
+    return result;
+  }
+
+  /** Gets the number of days in a month of the proleptic Gregorian calendar. */
+  private static int lengthOfMonth(final int year, final int month) {
+    switch (month) {
+      case 2:
+        boolean leapYear = ((year % 4) == 0) && (((year % 100) != 0) || ((year % 400) == 0));
+        return leapYear ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  /**
+   * Gets the number of days from 1970-01-01 to a date. The year is taken to start in
+   * March so that the leap day is the last day of the year.
+   */
+  private static long epochDay(final int year, final int month, final int day) {
+    long marchYear = (month <= 2) ? year - 1 : year;
+    long cycle = Math.floorDiv(marchYear, 400L);
+    long yearOfCycle = marchYear - (cycle * 400L);
+    long dayOfYear = (((153L * (month > 2 ? month - 3 : month + 9)) + 2L) / 5L) + day - 1L;
+    long dayOfCycle = (yearOfCycle * 365L) + (yearOfCycle / 4L) - (yearOfCycle / 100L) + dayOfYear;
+    return (cycle * DAYS_PER_CYCLE) + dayOfCycle - DAYS_0000_TO_1970;
   }
 }
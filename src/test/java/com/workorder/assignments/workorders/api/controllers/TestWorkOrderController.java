@@ -0,0 +1,70 @@
+package com.workorder.assignments.workorders.api.controllers;
+
+import com.workorder.assignments.workorders.repository.WorkOrderRepository;
+import com.workorder.assignments.workorders.repository.WorkOrderRepositoryImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Class:        TestWorkOrderController
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class TestWorkOrderController {
+
+  private static final String ENTRY_TIME = "2018-11-25T23:45:42Z";
+
+  /** Long enough that nothing is sent unless a test asks. */
+  private static final long MANUAL_FLUSH_MILLIS = 3600000L;
+
+  private WorkOrderRepository repository;
+
+  private WorkOrderEventStream eventStream;
+
+  private WorkOrderPositionWatches positionWatches;
+
+  private MockMvc mockMvc;
+
+  @BeforeEach
+  void createController () {
+    repository = new WorkOrderRepositoryImpl();
+    eventStream = new WorkOrderEventStream(repository, 16, MANUAL_FLUSH_MILLIS, 1, MANUAL_FLUSH_MILLIS);
+    positionWatches = new WorkOrderPositionWatches(repository, 1000L, MANUAL_FLUSH_MILLIS);
+    mockMvc = MockMvcBuilders.standaloneSetup(new WorkOrderController(repository,
+        new WorkOrderTakeWaiters(repository, 1000L), eventStream, positionWatches)).build();
+  }
+
+  @AfterEach
+  void closeController () {
+    eventStream.close();
+    positionWatches.close();
+  }
+
+  @Test
+  @DisplayName("Test each take is mapped by its parameters and asking to both wait and count is refused.")
+  void testTakeMappings () throws Exception {
+    repository.addWorkOrder("7", ENTRY_TIME);
+    repository.addWorkOrder("8", ENTRY_TIME);
+    repository.addWorkOrder("11", ENTRY_TIME);
+
+    mockMvc.perform(patch("/workorder").param("wait", "0").param("count", "2"))
+        .andExpect(status().isBadRequest());
+    assertEquals(3, repository.getSortedListOfWorkOrderIds().size());
+
+    mockMvc.perform(patch("/workorder").param("count", "2"))
+        .andExpect(status().isOk()).andExpect(content().json("[7,8]"));
+    mockMvc.perform(patch("/workorder"))
+        .andExpect(status().isOk()).andExpect(content().string("11"));
+    mockMvc.perform(patch("/workorder"))
+        .andExpect(status().isOk()).andExpect(content().string("-1"));
+  }
+}
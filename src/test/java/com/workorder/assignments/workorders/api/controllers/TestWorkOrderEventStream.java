@@ -0,0 +1,189 @@
+package com.workorder.assignments.workorders.api.controllers;
+
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.entities.WorkOrderEvent;
+import com.workorder.assignments.workorders.repository.WorkOrderRepository;
+import com.workorder.assignments.workorders.repository.WorkOrderRepositoryImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * Class:        TestWorkOrderEventStream
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class TestWorkOrderEventStream {
+
+  private static final String ENTRY_TIME = "2018-11-25T23:45:42Z";
+
+  /** Long enough that events are only sent when a test flushes. */
+  private static final long MANUAL_FLUSH_MILLIS = 3600000L;
+
+  private WorkOrderEventStream eventStream;
+
+  private WorkOrderPositionWatches positionWatches;
+
+  @AfterEach
+  void closeStream () {
+    if (eventStream != null) {
+      eventStream.close();
+    }
+    if (positionWatches != null) {
+      positionWatches.close();
+    }
+  }
+
+  @Test
+  @DisplayName("Test adds, takes and deletes are streamed to a client in order.")
+  void testChangesStreamed () throws Exception {
+    WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    MockMvc mockMvc = createMockMvc(repository, 16);
+    MockHttpServletResponse response = subscribe(mockMvc, null);
+
+    repository.addWorkOrder("7", ENTRY_TIME);
+    repository.addWorkOrder("15", ENTRY_TIME);
+    repository.getNextWorkOrder();
+    repository.deleteWorkOrder(BigInteger.valueOf(7L));
+    eventStream.flush();
+
+    String content = awaitContent(response, text -> text.contains("event:DELETED"));
+    assertTrue(content.indexOf("id:0\nevent:ADDED") < content.indexOf("id:1\nevent:ADDED"));
+    assertTrue(content.indexOf("id:1\nevent:ADDED") < content.indexOf("id:2\nevent:TAKEN"));
+    assertTrue(content.contains("\"id\":15,\"classification\":\"MANAGEMENT_OVERRIDE\",\"entryDate\":\"" + ENTRY_TIME));
+    assertTrue(content.contains("id:3\nevent:DELETED"));
+    assertEquals(1, eventStream.getSubscriberCount());
+  }
+
+  @Test
+  @DisplayName("Test a client carries on after the last event it received.")
+  void testResumeFromLastEventId () throws Exception {
+    WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    MockMvc mockMvc = createMockMvc(repository, 16);
+    for (int id = 1; id <= 5; id++) {
+      repository.addWorkOrder(String.valueOf(id), ENTRY_TIME);
+    }
+    MockHttpServletResponse response = subscribe(mockMvc, 2L);
+    eventStream.flush();
+
+    String content = awaitContent(response, text -> text.contains("id:4\n"));
+    assertFalse(content.contains("id:2\n"));
+    assertTrue(content.contains("id:3\n"));
+  }
+
+  @Test
+  @DisplayName("Test a client that falls behind the buffer is told it lagged and disconnected.")
+  void testLaggingClientDisconnected () throws Exception {
+    WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    MockMvc mockMvc = createMockMvc(repository, 4);
+    MockHttpServletResponse response = subscribe(mockMvc, null);
+    for (int id = 1; id <= 10; id++) {
+      repository.addWorkOrder(String.valueOf(id), ENTRY_TIME);
+    }
+    eventStream.flush();
+
+    String content = awaitContent(response, text -> text.contains("event:" + WorkOrderEventStream.LAGGED_EVENT));
+    assertFalse(content.contains("event:ADDED"));
+    long deadline = System.currentTimeMillis() + 5000L;
+    while ((eventStream.getSubscriberCount() > 0) && (System.currentTimeMillis() < deadline)) {
+      Thread.sleep(10L);
+    }
+    assertEquals(0, eventStream.getSubscriberCount());
+  }
+
+  @Test
+  @DisplayName("Test an event written late does not overwrite a later event a lap of the ring on in the same slot.")
+  void testLateWriteKeepsLaterEvent () throws Exception {
+    WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    MockMvc mockMvc = createMockMvc(repository, 4);
+    for (int id = 1; id <= 6; id++) {
+      repository.addWorkOrder(String.valueOf(id), ENTRY_TIME);
+    }
+    MockHttpServletResponse response = subscribe(mockMvc, 3L);
+    // the request that numbered event 1 only now writes it, to the slot event 5 is in.
+    eventStream.write(new WorkOrderEvent(1L, WorkOrderEvent.Type.ADDED, new WorkOrder("2", ENTRY_TIME)));
+    eventStream.flush();
+
+    String content = awaitContent(response, text -> text.contains("id:5\n"));
+    assertTrue(content.contains("id:4\n"));
+    assertFalse(content.contains("event:" + WorkOrderEventStream.LAGGED_EVENT));
+  }
+
+  @Test
+  @DisplayName("Test a client that reads too slowly is disconnected and its sender freed for the other clients.")
+  void testStalledClientDisconnected () throws Exception {
+    WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    MockMvc mockMvc = createMockMvc(repository, 16, 100L);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    eventStream.subscribe(new SseEmitter() {
+      @Override
+      public void send(SseEventBuilder builder) throws IOException {
+        try {
+          // a client that never reads, so the write never finishes.
+          new CountDownLatch(1).await();
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+          throw new InterruptedIOException();
+        }
+      }
+    }, null);
+    repository.addWorkOrder("7", ENTRY_TIME);
+    eventStream.flush();
+    Thread.sleep(200L);
+    MockHttpServletResponse response = subscribe(mockMvc, null);
+    eventStream.flush();
+
+    assertTrue(interrupted.await(5L, TimeUnit.SECONDS));
+    assertEquals(1, eventStream.getSubscriberCount());
+    repository.addWorkOrder("15", ENTRY_TIME);
+    eventStream.flush();
+    awaitContent(response, text -> text.contains("event:ADDED"));
+  }
+
+  private MockMvc createMockMvc (WorkOrderRepository repository, int bufferSize) {
+    return createMockMvc(repository, bufferSize, MANUAL_FLUSH_MILLIS);
+  }
+
+  private MockMvc createMockMvc (WorkOrderRepository repository, int bufferSize, long writeTimeoutMillis) {
+    eventStream = new WorkOrderEventStream(repository, bufferSize, MANUAL_FLUSH_MILLIS, 1, writeTimeoutMillis);
+    WorkOrderTakeWaiters takeWaiters = new WorkOrderTakeWaiters(repository, 1000L);
+    positionWatches = new WorkOrderPositionWatches(repository, 1000L, MANUAL_FLUSH_MILLIS);
+    return MockMvcBuilders.standaloneSetup(
+        new WorkOrderController(repository, takeWaiters, eventStream, positionWatches)).build();
+  }
+
+  private static MockHttpServletResponse subscribe (MockMvc mockMvc, Long lastEventId) throws Exception {
+    return lastEventId == null
+        ? mockMvc.perform(get("/workorder/events")).andExpect(request().asyncStarted()).andReturn().getResponse()
+        : mockMvc.perform(get("/workorder/events").header("Last-Event-ID", lastEventId))
+            .andExpect(request().asyncStarted()).andReturn().getResponse();
+  }
+
+  private static String awaitContent (MockHttpServletResponse response, Predicate<String> done) throws Exception {
+    long deadline = System.currentTimeMillis() + 5000L;
+    String content = response.getContentAsString();
+    while (!done.test(content) && (System.currentTimeMillis() < deadline)) {
+      Thread.sleep(10L);
+      content = response.getContentAsString();
+    }
+    assertTrue(done.test(content), content);
+    return content;
+  }
+}
@@ -0,0 +1,207 @@
+package com.workorder.assignments.workorders.api.controllers;
+
+import com.workorder.assignments.workorders.entities.WorkOrderPositionNotice;
+import com.workorder.assignments.workorders.repository.WorkOrderRepository;
+import com.workorder.assignments.workorders.repository.WorkOrderRepositoryImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * Class:        TestWorkOrderPositionWatches
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class TestWorkOrderPositionWatches {
+
+  private static final String ENTRY_TIME = "2018-11-25T23:45:42Z";
+
+  /** Long enough that watches are only checked when a test checks them. */
+  private static final long MANUAL_CHECK_MILLIS = 3600000L;
+
+  private WorkOrderPositionWatches watches;
+
+  @AfterEach
+  void closeWatches () {
+    if (watches != null) {
+      watches.close();
+    }
+  }
+
+  @Test
+  @DisplayName("Test a watch is answered at once when the work order is already at the position or not queued.")
+  void testWatchAnsweredAtOnce () {
+    WorkOrderRepository repository = createRepository(1, 2, 4);
+    watches = new WorkOrderPositionWatches(repository, 60000L, MANUAL_CHECK_MILLIS);
+
+    assertNotice(watches.watch(BigInteger.valueOf(1L), 0, 30000L), WorkOrderPositionNotice.Status.REACHED, 0);
+    assertNotice(watches.watch(BigInteger.valueOf(4L), 2, 30000L), WorkOrderPositionNotice.Status.REACHED, 2);
+    assertNotice(watches.watch(BigInteger.valueOf(9L), 0, 30000L), WorkOrderPositionNotice.Status.NOT_FOUND, -1);
+    assertNotice(watches.watch(BigInteger.valueOf(4L), 0, 0L), WorkOrderPositionNotice.Status.WAITING, 2);
+    assertEquals(0, watches.getWatchCount());
+    assertThrows(IllegalArgumentException.class, () -> watches.watch(BigInteger.ONE, -1, 30000L));
+    assertThrows(IllegalArgumentException.class, () -> watches.watch(BigInteger.ONE, 0, -1L));
+  }
+
+  @Test
+  @DisplayName("Test every watch is answered by one check once its work order reaches its position.")
+  void testWatchesReachedInOneCheck () {
+    WorkOrderRepository repository = createRepository(1, 2, 4, 7, 8, 11);
+    watches = new WorkOrderPositionWatches(repository, 60000L, MANUAL_CHECK_MILLIS);
+    DeferredResult<WorkOrderPositionNotice> top = watches.watch(BigInteger.valueOf(7L), 0, 30000L);
+    DeferredResult<WorkOrderPositionNotice> second = watches.watch(BigInteger.valueOf(7L), 1, 30000L);
+    DeferredResult<WorkOrderPositionNotice> last = watches.watch(BigInteger.valueOf(11L), 2, 30000L);
+    assertEquals(3, watches.getWatchCount());
+
+    repository.getNextWorkOrders(2);
+    watches.check();
+    assertFalse(top.hasResult());
+    assertNotice(second, WorkOrderPositionNotice.Status.REACHED, 1);
+    assertFalse(last.hasResult());
+
+    repository.getNextWorkOrder();
+    watches.check();
+    assertNotice(top, WorkOrderPositionNotice.Status.REACHED, 0);
+    assertNotice(last, WorkOrderPositionNotice.Status.REACHED, 2);
+    assertEquals(0, watches.getWatchCount());
+  }
+
+  @Test
+  @DisplayName("Test watches end as soon as their work order is taken or deleted.")
+  void testWatchesEndWhenWorkOrderLeaves () {
+    WorkOrderRepository repository = createRepository(1, 2, 4, 7);
+    watches = new WorkOrderPositionWatches(repository, 60000L, MANUAL_CHECK_MILLIS);
+    DeferredResult<WorkOrderPositionNotice> taken = watches.watch(BigInteger.valueOf(2L), 0, 30000L);
+    DeferredResult<WorkOrderPositionNotice> deleted = watches.watch(BigInteger.valueOf(7L), 0, 30000L);
+
+    repository.getNextWorkOrders(2);
+    assertNotice(taken, WorkOrderPositionNotice.Status.TAKEN, -1);
+    repository.deleteWorkOrder(BigInteger.valueOf(7L));
+    assertNotice(deleted, WorkOrderPositionNotice.Status.DELETED, -1);
+    assertEquals(0, watches.getWatchCount());
+  }
+
+  @Test
+  @DisplayName("Test a watch whose request completes or fails before it is answered is no longer watched.")
+  void testAbandonedWatchesRemoved () throws Exception {
+    WorkOrderRepository repository = createRepository(1, 2, 4, 7);
+    watches = new WorkOrderPositionWatches(repository, 60000L, MANUAL_CHECK_MILLIS);
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new WorkOrderController(repository,
+        new WorkOrderTakeWaiters(repository, 1000L), null, watches)).build();
+    MockAsyncContext completed = startWatch(mockMvc, 7L);
+    MockAsyncContext failed = startWatch(mockMvc, 4L);
+    assertEquals(2, watches.getWatchCount());
+
+    completed.complete();
+    assertEquals(1, watches.getWatchCount());
+    for (AsyncListener listener : failed.getListeners()) {
+      listener.onError(new AsyncEvent(failed, new IOException("the client went away")));
+    }
+    assertEquals(0, watches.getWatchCount());
+  }
+
+  @Test
+  @DisplayName("Test a check reads only down to the deepest position watched, once per second of the clock.")
+  void testCheckReadsTopOncePerSecond () {
+    AtomicInteger walks = new AtomicInteger();
+    AtomicInteger idsRead = new AtomicInteger();
+    WorkOrderRepository repository = new WorkOrderRepositoryImpl() {
+      @Override
+      public PrimitiveIterator.OfLong getSortedWorkOrderIdIterator() {
+        walks.incrementAndGet();
+        PrimitiveIterator.OfLong ids = super.getSortedWorkOrderIdIterator();
+        return new PrimitiveIterator.OfLong() {
+          @Override
+          public boolean hasNext() {
+            return ids.hasNext();
+          }
+
+          @Override
+          public long nextLong() {
+            idsRead.incrementAndGet();
+            return ids.nextLong();
+          }
+        };
+      }
+    };
+    for (int id : new int[] {1, 2, 4, 7, 8, 11, 13, 14}) {
+      repository.addWorkOrder(String.valueOf(id), ENTRY_TIME);
+    }
+    AtomicReference<Instant> now = new AtomicReference<>(Instant.parse("2018-11-29T11:46:00Z"));
+    watches = new WorkOrderPositionWatches(repository, 60000L, MANUAL_CHECK_MILLIS);
+    watches.setClock(new Clock() {
+      @Override
+      public ZoneId getZone() {
+        return ZoneOffset.UTC;
+      }
+
+      @Override
+      public Clock withZone(ZoneId zone) {
+        return this;
+      }
+
+      @Override
+      public Instant instant() {
+        return now.get();
+      }
+    });
+    DeferredResult<WorkOrderPositionNotice> watched = watches.watch(BigInteger.valueOf(14L), 2, 30000L);
+
+    watches.check();
+    assertEquals(1, walks.get());
+    assertEquals(3, idsRead.get());
+    // nothing changed and the clock has not moved on a second.
+    now.set(now.get().plusMillis(999L));
+    watches.check();
+    assertEquals(1, walks.get());
+    now.set(now.get().plusMillis(1L));
+    watches.check();
+    assertEquals(2, walks.get());
+    assertEquals(6, idsRead.get());
+    assertFalse(watched.hasResult());
+  }
+
+  /** Starts a request watching for a work order to reach the top of the queue. */
+  private static MockAsyncContext startWatch (MockMvc mockMvc, long id) throws Exception {
+    return (MockAsyncContext) mockMvc.perform(get("/workorder/queue_position/" + id + "/watch").param("threshold", "0"))
+        .andExpect(request().asyncStarted()).andReturn().getRequest().getAsyncContext();
+  }
+
+  /** Creates a repository holding the given normal work orders, queued in that order. */
+  private static WorkOrderRepository createRepository (int... ids) {
+    WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    for (int id : ids) {
+      repository.addWorkOrder(String.valueOf(id), ENTRY_TIME);
+    }
+    return repository;
+  }
+
+  private static void assertNotice (DeferredResult<WorkOrderPositionNotice> result,
+                                    WorkOrderPositionNotice.Status status, int position) {
+    WorkOrderPositionNotice notice = (WorkOrderPositionNotice) result.getResult();
+    assertEquals(status, notice.getStatus());
+    assertEquals(position, notice.getPosition());
+  }
+}
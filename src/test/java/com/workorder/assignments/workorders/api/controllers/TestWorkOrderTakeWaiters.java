@@ -0,0 +1,176 @@
+package com.workorder.assignments.workorders.api.controllers;
+
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.repository.WorkOrderListener;
+import com.workorder.assignments.workorders.repository.WorkOrderRepository;
+import com.workorder.assignments.workorders.repository.WorkOrderRepositoryImpl;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Class:        TestWorkOrderTakeWaiters
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class TestWorkOrderTakeWaiters {
+
+  private static final String ENTRY_TIME = "2018-11-25T23:45:42Z";
+
+  @Test
+  @DisplayName("Test a take returns at once when the queue has a work order or no wait is asked for.")
+  void testTakeWithoutWaiting () {
+    WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    WorkOrderTakeWaiters waiters = new WorkOrderTakeWaiters(repository, 60000L);
+    assertEquals(WorkOrderTakeWaiters.NO_WORK_ORDER, waiters.take(0L).getResult());
+
+    repository.addWorkOrder("7", ENTRY_TIME);
+    assertEquals(BigInteger.valueOf(7L), waiters.take(1000L).getResult());
+    assertEquals(0, waiters.getWaitingCount());
+    assertThrows(IllegalArgumentException.class, () -> waiters.take(-1L));
+  }
+
+  @Test
+  @DisplayName("Test waiting takes are served in order, each by one work order as it is added.")
+  void testWaitersServedInOrder () {
+    WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    WorkOrderTakeWaiters waiters = new WorkOrderTakeWaiters(repository, 60000L);
+    DeferredResult<BigInteger> first = waiters.take(30000L);
+    DeferredResult<BigInteger> second = waiters.take(30000L);
+    assertFalse(first.hasResult());
+    assertEquals(2, waiters.getWaitingCount());
+
+    repository.addWorkOrder("7", ENTRY_TIME);
+    assertEquals(BigInteger.valueOf(7L), first.getResult());
+    assertFalse(second.hasResult());
+    assertTrue(repository.getSortedListOfWorkOrderIds().isEmpty());
+
+    repository.addWorkOrder("8", ENTRY_TIME);
+    assertEquals(BigInteger.valueOf(8L), second.getResult());
+    assertEquals(0, waiters.getWaitingCount());
+    repository.addWorkOrder("9", ENTRY_TIME);
+    assertEquals(1, repository.getSortedListOfWorkOrderIds().size());
+  }
+
+  @Test
+  @DisplayName("Test a work order passes over a take that has already completed and stays queued if none are left.")
+  void testCompletedWaiterSkipped () {
+    WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    WorkOrderTakeWaiters waiters = new WorkOrderTakeWaiters(repository, 60000L);
+    DeferredResult<BigInteger> expired = waiters.take(30000L);
+    DeferredResult<BigInteger> waiting = waiters.take(30000L);
+    expired.setResult(WorkOrderTakeWaiters.NO_WORK_ORDER);
+
+    repository.addWorkOrder("7", ENTRY_TIME);
+    assertEquals(BigInteger.valueOf(7L), waiting.getResult());
+
+    DeferredResult<BigInteger> alsoExpired = waiters.take(30000L);
+    alsoExpired.setResult(WorkOrderTakeWaiters.NO_WORK_ORDER);
+    // the take has completed, so the work order stays in the queue.
+    repository.addWorkOrder("8", ENTRY_TIME);
+    assertEquals(1, repository.getSortedListOfWorkOrderIds().size());
+    assertEquals(0, waiters.getWaitingCount());
+  }
+
+  @Test
+  @DisplayName("Test a work order is not taken for a take that has already completed.")
+  void testCompletedWaiterNotTaken () {
+    WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    WorkOrderTakeWaiters waiters = new WorkOrderTakeWaiters(repository, 60000L);
+    List<String> events = new ArrayList<>();
+    repository.addWorkOrderListener(new WorkOrderListener() {
+      @Override
+      public void workOrderAdded(WorkOrder workOrder) {
+        events.add("ADDED " + workOrder.getId());
+      }
+
+      @Override
+      public void workOrderTaken(WorkOrder workOrder) {
+        events.add("TAKEN " + workOrder.getId());
+      }
+    });
+    waiters.take(30000L).setResult(WorkOrderTakeWaiters.NO_WORK_ORDER);
+
+    repository.addWorkOrder("7", ENTRY_TIME);
+    assertEquals(Collections.singletonList("ADDED 7"), events);
+    assertEquals(0, waiters.getWaitingCount());
+  }
+
+  @Test
+  @DisplayName("Test a listener added after the waiters hears of a work order added before it is taken by a waiting take.")
+  void testAddedToldBeforeTaken () {
+    WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    WorkOrderTakeWaiters waiters = new WorkOrderTakeWaiters(repository, 60000L);
+    List<String> events = new ArrayList<>();
+    repository.addWorkOrderListener(new WorkOrderListener() {
+      @Override
+      public void workOrderAdded(WorkOrder workOrder) {
+        events.add("ADDED " + workOrder.getId());
+      }
+
+      @Override
+      public void workOrderTaken(WorkOrder workOrder) {
+        events.add("TAKEN " + workOrder.getId());
+      }
+    });
+    DeferredResult<BigInteger> waiting = waiters.take(30000L);
+
+    repository.addWorkOrder("7", ENTRY_TIME);
+    assertEquals(BigInteger.valueOf(7L), waiting.getResult());
+    assertEquals(Arrays.asList("ADDED 7", "TAKEN 7"), events);
+  }
+
+  @Test
+  @DisplayName("Test concurrent adds and waiting takes hand each work order to exactly one take.")
+  void testConcurrentHandOver () throws InterruptedException {
+    WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    WorkOrderTakeWaiters waiters = new WorkOrderTakeWaiters(repository, 60000L);
+    List<DeferredResult<BigInteger>> results = new ArrayList<>();
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      List<DeferredResult<BigInteger>> taken = new ArrayList<>();
+      workers.add(new Thread(() -> {
+        for (int j = 0; j < 500; j++) {
+          taken.add(waiters.take(30000L));
+        }
+        synchronized (results) {
+          results.addAll(taken);
+        }
+      }));
+      final int worker = i;
+      workers.add(new Thread(() -> {
+        for (int id = worker + 1; id <= 2000; id += 4) {
+          repository.addWorkOrder(String.valueOf(id), ENTRY_TIME);
+        }
+      }));
+    }
+    for (Thread worker : workers) {
+      worker.start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    Set<Object> ids = new HashSet<>();
+    for (DeferredResult<BigInteger> result : results) {
+      assertTrue(result.hasResult());
+      assertTrue(ids.add(result.getResult()));
+    }
+    assertEquals(2000, ids.size());
+    assertEquals(0, waiters.getWaitingCount());
+    assertTrue(repository.getSortedListOfWorkOrderIds().isEmpty());
+  }
+}
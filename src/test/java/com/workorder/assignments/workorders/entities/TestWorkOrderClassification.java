@@ -102,4 +102,23 @@ class TestWorkOrderClassification {
     assertThrows(IllegalArgumentException.class, ()-> WorkOrderClassification.determineClassificationFromId(null));
   }
 
+  @Test
+  @DisplayName("Primitive id classification matches the BigInteger id classification")
+  void testPrimitiveIdMatchesBigIntegerId () {
+    for (long id = 1; id <= 100; id++) {
+      assertEquals (WorkOrderClassification.determineClassificationFromId(BigInteger.valueOf(id)),
+          WorkOrderClassification.determineClassificationFromId(id));
+    }
+    assertEquals (WorkOrderClassification.MANAGEMENT_OVERRIDE,
+        WorkOrderClassification.determineClassificationFromId(MAXIMUM_MANAGEMENT_OVERRIDE_ID.longValue()));
+    assertEquals (WorkOrderClassification.NORMAL,
+        WorkOrderClassification.determineClassificationFromId(MAXIMUM_ID.longValue()));
+  }
+
+  @Test
+  @DisplayName("IllegalArgumentException results from a zero primitive work order id value")
+  void testPrimitiveValueOutOfRangeIdZero () {
+    assertThrows(IllegalArgumentException.class, ()-> WorkOrderClassification.determineClassificationFromId(0L));
+  }
+
 }
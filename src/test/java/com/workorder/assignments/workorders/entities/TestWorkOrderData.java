@@ -2,6 +2,10 @@ package com.workorder.assignments.workorders.entities;
 
 import com.workorder.assignments.workorders.entities.WorkOrder;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
 /** Class to hold common test data.
  * Class:        TestWorkOrderData
  * Created By:   brownless
@@ -27,6 +31,9 @@ public abstract class TestWorkOrderData {
 
   public static final String FUTURE_TIME = "2125-11-25T23:45:43Z";
 
+  /** The time the expected orders of the test data were worked out at, ranks change as time passes. */
+  public static final Clock TEST_CLOCK = Clock.fixed(Instant.parse("2018-11-29T11:46:00Z"), ZoneOffset.UTC);
+
   public static final WorkOrder MANAGEMENT_WORK_ORDER = new WorkOrder(MANAGEMENT_ID, ENTRY_TIME);
   public static final WorkOrder OLDER_MANAGEMENT_WORK_ORDER = new WorkOrder(OLDER_MANAGEMENT_ID, OLDER_ENTRY_TIME);
   public static final WorkOrder ANCIENT_MANAGEMENT_WORK_ORDER = new WorkOrder(ANCIENT_MANAGEMENT_ID, ANCIENT__ENTRY_TIME);
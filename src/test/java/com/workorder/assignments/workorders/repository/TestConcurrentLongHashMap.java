@@ -0,0 +1,88 @@
+package com.workorder.assignments.workorders.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Class:        TestConcurrentLongHashMap
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class TestConcurrentLongHashMap {
+
+  @Test
+  @DisplayName("Test values are added once and removed once.")
+  void testPutIfAbsentAndRemove () {
+    ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>();
+    assertNull(map.putIfAbsent(Long.MAX_VALUE, "max"));
+    assertEquals("max", map.putIfAbsent(Long.MAX_VALUE, "other"));
+    assertTrue(map.containsKey(Long.MAX_VALUE));
+    assertFalse(map.remove(Long.MAX_VALUE, "other"));
+    assertTrue(map.remove(Long.MAX_VALUE, "max"));
+    assertNull(map.remove(Long.MAX_VALUE));
+    assertEquals(0, map.size());
+  }
+
+  @Test
+  @DisplayName("Test null values are rejected.")
+  void testNullValue () {
+    ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>();
+    assertThrows(IllegalArgumentException.class, ()-> map.putIfAbsent(1L, null));
+  }
+
+  @Test
+  @DisplayName("Test the map behaves like a hash map through growth and removals.")
+  void testMapMatchesHashMap () {
+    ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<>();
+    Map<Long, Long> expected = new HashMap<>();
+    Random random = new Random(7L);
+    for (int i = 0; i < 200000; i++) {
+      long key = random.nextInt(50000) + 1L;
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(key), map.remove(key));
+      } else {
+        assertEquals(expected.putIfAbsent(key, key), map.putIfAbsent(key, key));
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    for (long key = 1; key <= 50000; key++) {
+      assertEquals(expected.get(key), map.get(key));
+    }
+  }
+
+  @Test
+  @DisplayName("Test concurrent additions of the same keys succeed exactly once.")
+  void testConcurrentPutIfAbsent () throws InterruptedException {
+    ConcurrentLongHashMap<Integer> map = new ConcurrentLongHashMap<>();
+    AtomicInteger added = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    for (int thread = 0; thread < 4; thread++) {
+      final int value = thread;
+      executor.execute(() -> {
+        for (long key = 1; key <= 20000; key++) {
+          if (map.putIfAbsent(key, value) == null) {
+            added.incrementAndGet();
+          }
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    assertEquals(20000, added.get());
+    assertEquals(20000, map.size());
+  }
+}
@@ -0,0 +1,270 @@
+package com.workorder.assignments.workorders.repository;
+
+import com.workorder.assignments.workorders.entities.TestWorkOrderData;
+import com.workorder.assignments.workorders.entities.WorkOrderSubmission;
+import com.workorder.assignments.workorders.utilities.DateConverterUtilities;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Class:        TestJournaledWorkOrderRepository
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class TestJournaledWorkOrderRepository extends TestWorkOrderData {
+
+  private Path directory;
+  private Path journalFile;
+  private Path snapshotFile;
+
+  @BeforeEach
+  void createDirectory () throws IOException {
+    directory = Files.createTempDirectory("workorders");
+    journalFile = directory.resolve("workorders.journal");
+    snapshotFile = directory.resolve("workorders.snapshot");
+  }
+
+  @AfterEach
+  void deleteDirectory () throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  @Test
+  @DisplayName("Ensure every kind of change is restored from the journal.")
+  void testChangesAreRestored () throws IOException {
+
+    List<BigInteger> expected;
+    try (JournaledWorkOrderRepository repository = open("PER_OPERATION")) {
+      addWorkOrders(repository, 1, 200);
+      repository.addWorkOrders(Arrays.asList(new WorkOrderSubmission("201", ENTRY_TIME),
+          new WorkOrderSubmission("1", ENTRY_TIME)));
+      repository.getNextWorkOrder();
+      repository.getNextWorkOrders(10);
+      repository.deleteWorkOrder(BigInteger.valueOf(151L));
+      repository.deleteWorkOrder(BigInteger.valueOf(151L));
+      repository.getNextWorkOrder(workOrder -> false);
+      expected = repository.getSortedListOfWorkOrderIds();
+    }
+    assertEquals(189, expected.size());
+
+    try (JournaledWorkOrderRepository repository = open("PER_OPERATION")) {
+      assertEquals(expected, repository.getSortedListOfWorkOrderIds());
+      repository.addWorkOrder("151", ENTRY_TIME);
+      assertThrows(IllegalArgumentException.class, ()-> repository.addWorkOrder("201", ENTRY_TIME));
+    }
+    try (JournaledWorkOrderRepository repository = open("OS")) {
+      assertEquals(190, repository.getSortedListOfWorkOrderIds().size());
+    }
+  }
+
+  @Test
+  @DisplayName("Ensure a torn record at the end of the journal is dropped.")
+  void testTornRecordIsDropped () throws IOException {
+
+    List<BigInteger> expected;
+    try (JournaledWorkOrderRepository repository = open("PER_OPERATION")) {
+      addWorkOrders(repository, 1, 50);
+      expected = repository.getSortedListOfWorkOrderIds();
+    }
+    long length = Files.size(journalFile);
+    Files.write(journalFile, new byte[] {1, 0, 0, 0, 0, 0, 0, 0, 99, 0, 0}, StandardOpenOption.APPEND);
+
+    try (JournaledWorkOrderRepository repository = open("PER_OPERATION")) {
+      assertEquals(expected, repository.getSortedListOfWorkOrderIds());
+      // restored into a snapshot so the journal starts again.
+      assertTrue(Files.size(journalFile) < length);
+      repository.addWorkOrder("99", ENTRY_TIME);
+    }
+    try (JournaledWorkOrderRepository repository = open("PER_OPERATION")) {
+      assertEquals(51, repository.getSortedListOfWorkOrderIds().size());
+    }
+  }
+
+  @Test
+  @DisplayName("Ensure replay truncates the journal back to its last whole record.")
+  void testReplayTruncatesTornRecord () throws IOException {
+
+    try (JournaledWorkOrderRepository repository = open("PER_OPERATION")) {
+      addWorkOrders(repository, 1, 10);
+    }
+    long length = Files.size(journalFile);
+    Files.write(journalFile, new byte[] {1, 0, 0, 0, 0, 0, 0, 0, 99, 0, 0}, StandardOpenOption.APPEND);
+
+    List<Long> added = new ArrayList<>();
+    long records = WorkOrderJournal.replay(journalFile, new WorkOrderJournal.RecordHandler() {
+      @Override
+      public void add(long id, long entrySeconds) {
+        added.add(id);
+      }
+
+      @Override
+      public void remove(long id) {
+      }
+    });
+    assertEquals(10L, records);
+    assertEquals(10, added.size());
+    assertEquals(length, Files.size(journalFile));
+  }
+
+  @Test
+  @DisplayName("Ensure changes made by concurrent requests are all journaled.")
+  void testConcurrentChangesAreRestored () throws IOException, InterruptedException {
+
+    try (JournaledWorkOrderRepository repository = open("PER_OPERATION")) {
+      List<Thread> writers = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        final int first = (i * 250) + 1;
+        writers.add(new Thread(() -> addWorkOrders(repository, first, first + 249)));
+      }
+      for (Thread writer : writers) {
+        writer.start();
+      }
+      for (Thread writer : writers) {
+        writer.join();
+      }
+      repository.getNextWorkOrders(100);
+    }
+    try (JournaledWorkOrderRepository repository = open("INTERVAL")) {
+      assertEquals(900, repository.getSortedListOfWorkOrderIds().size());
+      repository.getNextWorkOrders(100);
+    }
+    try (JournaledWorkOrderRepository repository = open("OS")) {
+      assertEquals(800, repository.getSortedListOfWorkOrderIds().size());
+    }
+  }
+
+  @Test
+  @DisplayName("Ensure a file that is not a journal is not replayed.")
+  void testNotAJournal () throws IOException {
+    Files.write(journalFile, "not a journal".getBytes());
+    assertThrows(IOException.class, ()-> open("PER_OPERATION"));
+    assertThrows(IllegalArgumentException.class, ()-> JournaledWorkOrderRepository.open(
+        new WorkOrderRepositoryImpl(), journalFile, snapshotFile, "SOMETIMES", 10L, 0L));
+  }
+
+  @Test
+  @DisplayName("Ensure the queue is restored from a snapshot and the journal written after it.")
+  void testRestoreFromSnapshotAndJournal () throws IOException {
+
+    List<BigInteger> expected;
+    try (JournaledWorkOrderRepository repository = open("PER_OPERATION")) {
+      addWorkOrders(repository, 1, 300);
+      repository.getNextWorkOrders(20);
+      assertEquals(280L, repository.checkpoint());
+      addWorkOrders(repository, 301, 320);
+      repository.deleteWorkOrder(BigInteger.valueOf(151L));
+      repository.getNextWorkOrder();
+      assertEquals(298L, repository.checkpoint());
+      repository.deleteWorkOrder(BigInteger.valueOf(152L));
+      expected = repository.getSortedListOfWorkOrderIds();
+    }
+    assertEquals(297, expected.size());
+
+    try (JournaledWorkOrderRepository repository = open("PER_OPERATION")) {
+      assertEquals(expected, repository.getSortedListOfWorkOrderIds());
+    }
+  }
+
+  @Test
+  @DisplayName("Ensure changes made while a snapshot is written are kept.")
+  void testChangesDuringCheckpoint () throws IOException, InterruptedException {
+
+    try (JournaledWorkOrderRepository repository = open("PER_OPERATION")) {
+      Thread writer = new Thread(() -> addWorkOrders(repository, 1, 2000));
+      writer.start();
+      while (writer.isAlive()) {
+        repository.checkpoint();
+      }
+      writer.join();
+    }
+    try (JournaledWorkOrderRepository repository = open("OS")) {
+      assertEquals(2000, repository.getSortedListOfWorkOrderIds().size());
+    }
+  }
+
+  @Test
+  @DisplayName("Ensure replaying a journal the snapshot already holds leaves the queue the same.")
+  void testReplayingJournalTwice () throws IOException {
+
+    List<BigInteger> expected;
+    try (JournaledWorkOrderRepository repository = open("PER_OPERATION")) {
+      addWorkOrders(repository, 1, 100);
+      repository.deleteWorkOrder(BigInteger.valueOf(10L));
+      repository.getNextWorkOrders(5);
+      repository.addWorkOrder("10", ENTRY_TIME);
+      expected = repository.getSortedListOfWorkOrderIds();
+    }
+    byte[] journal = Files.readAllBytes(journalFile);
+    open("PER_OPERATION").close();
+    // as if the service stopped after the snapshot was written but before the journal restarted.
+    Files.write(journalFile, journal);
+
+    try (JournaledWorkOrderRepository repository = open("PER_OPERATION")) {
+      assertEquals(expected, repository.getSortedListOfWorkOrderIds());
+    }
+  }
+
+  @Test
+  @DisplayName("Ensure a change that cannot be journaled leaves the queue as it was, now and after a restart.")
+  void testFailedCommitLeavesQueue () throws IOException {
+
+    List<BigInteger> expected;
+    JournaledWorkOrderRepository repository = open("PER_OPERATION");
+    addWorkOrders(repository, 1, 20);
+    expected = repository.getSortedListOfWorkOrderIds();
+    // the interrupt closes the journal file as the take is written.
+    Thread.currentThread().interrupt();
+    try {
+      assertThrows(UncheckedIOException.class, repository::getNextWorkOrder);
+    } finally {
+      Thread.interrupted();
+    }
+    assertEquals(expected, repository.getSortedListOfWorkOrderIds());
+    assertThrows(UncheckedIOException.class, () -> repository.addWorkOrder("21", ENTRY_TIME));
+    assertThrows(UncheckedIOException.class, () -> repository.deleteWorkOrder(BigInteger.ONE));
+    assertThrows(UncheckedIOException.class,
+        () -> repository.addWorkOrders(Arrays.asList(new WorkOrderSubmission("22", ENTRY_TIME))));
+    assertEquals(expected, repository.getSortedListOfWorkOrderIds());
+    assertThrows(IOException.class, repository::close);
+
+    try (JournaledWorkOrderRepository restored = open("PER_OPERATION")) {
+      assertEquals(expected, restored.getSortedListOfWorkOrderIds());
+    }
+  }
+
+  private JournaledWorkOrderRepository open(String syncMode) throws IOException {
+    return JournaledWorkOrderRepository.open(new WorkOrderRepositoryImpl(), journalFile, snapshotFile,
+        syncMode, 5L, 0L);
+  }
+
+  private static void addWorkOrders(JournaledWorkOrderRepository repository, int first, int last) {
+    ZonedDateTime entryTime = DateConverterUtilities.getDateTimefromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    for (int id = first; id <= last; id++) {
+      repository.addWorkOrder(String.valueOf(id),
+          DateConverterUtilities.getDateInIso8601Format(entryTime.plusHours(id % 70)));
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package com.workorder.assignments.workorders.repository;
+
+import com.workorder.assignments.workorders.entities.WorkOrderClassification;
+import com.workorder.assignments.workorders.entities.WorkOrderRejectedException;
+import com.workorder.assignments.workorders.entities.WorkOrderRejection;
+import com.workorder.assignments.workorders.entities.WorkOrderSubmission;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Class:        TestMeteredWorkOrderRepository
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class TestMeteredWorkOrderRepository {
+
+  private static final String ENTRY_TIME = "2018-11-25T23:45:42Z";
+
+  private MeterRegistry registry;
+  private WorkOrderRepository repository;
+
+  @BeforeEach
+  void createRepository () {
+    registry = new SimpleMeterRegistry();
+    repository = new MeteredWorkOrderRepository(new WorkOrderRepositoryImpl(), registry);
+  }
+
+  @Test
+  @DisplayName("Test each operation is timed under its own tag.")
+  void testOperationsTimed () {
+    repository.addWorkOrder("7", ENTRY_TIME);
+    repository.addWorkOrder("8", ENTRY_TIME);
+    repository.getWorkOrderQueuePosition(BigInteger.valueOf(8L));
+    repository.getSortedListOfWorkOrderIds();
+    repository.getNextWorkOrder();
+
+    assertEquals(2L, operationCount("add"));
+    assertEquals(1L, operationCount("position"));
+    assertEquals(1L, operationCount("sortedList"));
+    assertEquals(1L, operationCount("take"));
+    assertEquals(0L, operationCount("delete"));
+    assertTrue(registry.get(MeteredWorkOrderRepository.OPERATION_TIMER).tag("operation", "add").timer()
+        .totalTime(TimeUnit.NANOSECONDS) > 0.0);
+    assertEquals(0.0, registry.get(MeteredWorkOrderRepository.COALESCED_COUNTER).functionCounter().count());
+  }
+
+  @Test
+  @DisplayName("Test only the rankings of the whole queue actually made are timed.")
+  void testSortsRecorded () {
+    repository.addWorkOrder("7", ENTRY_TIME);
+    repository.addWorkOrder("8", ENTRY_TIME);
+    repository.getSortedListOfWorkOrderIds();
+    // answered from the ranking already made.
+    repository.getSortedListOfWorkOrderIds();
+    assertEquals(1.0, registry.get(MeteredWorkOrderRepository.SORT_TIMER).functionTimer().count());
+    assertEquals(2.0, registry.get(MeteredWorkOrderRepository.SORT_SIZE_COUNTER).functionCounter().count());
+
+    repository.addWorkOrder("9", ENTRY_TIME);
+    // streamed ids are ranked as they are read rather than by ranking the whole queue.
+    PrimitiveIterator.OfLong ids = repository.getSortedWorkOrderIdIterator();
+    assertTrue(ids.hasNext());
+    assertEquals(1.0, registry.get(MeteredWorkOrderRepository.SORT_TIMER).functionTimer().count());
+    repository.getSortedListOfWorkOrderIds();
+    assertEquals(2.0, registry.get(MeteredWorkOrderRepository.SORT_TIMER).functionTimer().count());
+    assertEquals(5.0, registry.get(MeteredWorkOrderRepository.SORT_SIZE_COUNTER).functionCounter().count());
+    assertTrue(registry.get(MeteredWorkOrderRepository.SORT_TIMER).functionTimer()
+        .totalTime(TimeUnit.NANOSECONDS) > 0.0);
+  }
+
+  @Test
+  @DisplayName("Test the statistics meters are only registered for a repository that keeps statistics.")
+  void testStatisticsOnlyWhenKept () {
+    MeterRegistry unkept = new SimpleMeterRegistry();
+    WorkOrderRepository metered = new MeteredWorkOrderRepository(new WorkOrderRepositoryImpl(), null, unkept,
+        Clock.systemUTC());
+    metered.addWorkOrder("7", ENTRY_TIME);
+    metered.getSortedListOfWorkOrderIds();
+    assertNull(unkept.find(MeteredWorkOrderRepository.SORT_TIMER).functionTimer());
+    assertNull(unkept.find(MeteredWorkOrderRepository.SORT_SIZE_COUNTER).functionCounter());
+    assertNull(unkept.find(MeteredWorkOrderRepository.COALESCED_COUNTER).functionCounter());
+    assertEquals(1L, unkept.get(MeteredWorkOrderRepository.OPERATION_TIMER).tag("operation", "add").timer().count());
+  }
+
+  @Test
+  @DisplayName("Test dequeues handed over and rejections are counted, rejections by reason.")
+  void testDequeuesAndRejectionsCounted () {
+    repository.addWorkOrders(Arrays.asList(new WorkOrderSubmission("7", ENTRY_TIME),
+        new WorkOrderSubmission("8", ENTRY_TIME), new WorkOrderSubmission("7", ENTRY_TIME),
+        new WorkOrderSubmission("x", ENTRY_TIME)));
+    assertThrows(IllegalArgumentException.class, () -> repository.addWorkOrder("8", ENTRY_TIME));
+    assertThrows(IllegalArgumentException.class, () -> repository.addWorkOrder("9", "2018-11-25"));
+    String future = Instant.now().plusSeconds(3600L).toString().substring(0, 19) + "Z";
+    assertThrows(IllegalArgumentException.class, () -> repository.addWorkOrder("10", future));
+    // a work order that could not be handed over is back in the queue, so is not counted.
+    assertNull(repository.getNextWorkOrder(workOrder -> false));
+    repository.getNextWorkOrders(5);
+    repository.getNextWorkOrder();
+
+    assertEquals(2.0, registry.get(MeteredWorkOrderRepository.DEQUEUED_COUNTER).counter().count());
+    assertEquals(2.0, rejectedCount("DUPLICATE_ID"));
+    assertEquals(1.0, rejectedCount("INVALID_ID"));
+    assertEquals(1.0, rejectedCount("INVALID_DATE"));
+    assertEquals(1.0, rejectedCount("FUTURE_DATE"));
+  }
+
+  @Test
+  @DisplayName("Test the depth and oldest entry age of each classification are gauged.")
+  void testQueueGauges () {
+    long entrySeconds = Instant.now().getEpochSecond() - 600L;
+    repository.addWorkOrder("7", Instant.ofEpochSecond(entrySeconds).toString());
+    repository.addWorkOrder("8", Instant.ofEpochSecond(entrySeconds + 300L).toString());
+    repository.addWorkOrder("15", Instant.ofEpochSecond(entrySeconds + 300L).toString());
+
+    assertEquals(2.0, gauge(MeteredWorkOrderRepository.DEPTH_GAUGE, WorkOrderClassification.NORMAL));
+    assertEquals(1.0, gauge(MeteredWorkOrderRepository.DEPTH_GAUGE, WorkOrderClassification.MANAGEMENT_OVERRIDE));
+    assertEquals(0.0, gauge(MeteredWorkOrderRepository.DEPTH_GAUGE, WorkOrderClassification.VIP));
+    assertEquals(600.0, gauge(MeteredWorkOrderRepository.OLDEST_AGE_GAUGE, WorkOrderClassification.NORMAL), 5.0);
+    assertEquals(0.0, gauge(MeteredWorkOrderRepository.OLDEST_AGE_GAUGE, WorkOrderClassification.PRIORITY));
+
+    repository.deleteWorkOrder(BigInteger.valueOf(7L));
+    assertEquals(1.0, gauge(MeteredWorkOrderRepository.DEPTH_GAUGE, WorkOrderClassification.NORMAL));
+    assertEquals(300.0, gauge(MeteredWorkOrderRepository.OLDEST_AGE_GAUGE, WorkOrderClassification.NORMAL), 5.0);
+  }
+
+  @Test
+  @DisplayName("Test the oldest entry age and future dates are read against the clock given.")
+  void testGaugesReadTheClock () {
+    Clock clock = Clock.fixed(Instant.parse("2018-11-26T00:00:00Z"), ZoneOffset.UTC);
+    WorkOrderRepositoryImpl store = new WorkOrderRepositoryImpl();
+    store.setClock(clock);
+    MeterRegistry clocked = new SimpleMeterRegistry();
+    WorkOrderRepository metered = new MeteredWorkOrderRepository(store, store, clocked, clock);
+    metered.addWorkOrder("7", ENTRY_TIME);
+    WorkOrderRejectedException rejected = assertThrows(WorkOrderRejectedException.class,
+        () -> metered.addWorkOrder("8", "2018-11-26T00:00:01Z"));
+
+    assertEquals(WorkOrderRejection.Reason.FUTURE_DATE, rejected.getReason());
+    assertEquals(1.0, clocked.get(MeteredWorkOrderRepository.REJECTED_COUNTER).tag("reason", "FUTURE_DATE")
+        .counter().count());
+    assertEquals(858.0, clocked.get(MeteredWorkOrderRepository.OLDEST_AGE_GAUGE)
+        .tag("classification", WorkOrderClassification.NORMAL.name()).gauge().value());
+  }
+
+  private long operationCount (String operation) {
+    return registry.get(MeteredWorkOrderRepository.OPERATION_TIMER).tag("operation", operation).timer().count();
+  }
+
+  private double rejectedCount (String reason) {
+    return registry.get(MeteredWorkOrderRepository.REJECTED_COUNTER).tag("reason", reason).counter().count();
+  }
+
+  private double gauge (String name, WorkOrderClassification classification) {
+    return registry.get(name).tag("classification", classification.name()).gauge().value();
+  }
+}
@@ -0,0 +1,224 @@
+package com.workorder.assignments.workorders.repository;
+
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.entities.WorkOrderBatchResult;
+import com.workorder.assignments.workorders.entities.WorkOrderClassification;
+import com.workorder.assignments.workorders.entities.WorkOrderRejectedException;
+import com.workorder.assignments.workorders.entities.WorkOrderRejection;
+import com.workorder.assignments.workorders.entities.WorkOrderSubmission;
+import com.workorder.assignments.workorders.utilities.DateConverterUtilities;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Class:        TestOffHeapWorkOrderRepository
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class TestOffHeapWorkOrderRepository {
+
+  private static final long ENTRY_SECONDS = 1480117542L;
+
+  private Path directory;
+  private OffHeapWorkOrderRepository repository;
+
+  @BeforeEach
+  void createRepository () throws IOException {
+    directory = Files.createTempDirectory("workorders");
+    repository = new OffHeapWorkOrderRepository(directory, 16);
+  }
+
+  @AfterEach
+  void closeRepository () throws IOException {
+    repository.close();
+    Files.delete(directory);
+  }
+
+  @Test
+  @DisplayName("Test the off heap store answers as the heap store does under random changes.")
+  void testMatchesHeapRepository () {
+    WorkOrderRepositoryImpl heapRepository = new WorkOrderRepositoryImpl();
+    Random random = new Random(42L);
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < 500; i++) {
+        String id = Long.toString(1 + random.nextInt(20000));
+        String date = date(ENTRY_SECONDS + random.nextInt(1000000));
+        boolean duplicate = false;
+        try {
+          heapRepository.addWorkOrder(id, date);
+        } catch (IllegalArgumentException e) {
+          duplicate = true;
+        }
+        if (duplicate) {
+          assertThrows(IllegalArgumentException.class, () -> repository.addWorkOrder(id, date));
+        } else {
+          repository.addWorkOrder(id, date);
+        }
+      }
+      for (int i = 0; i < 50; i++) {
+        BigInteger id = BigInteger.valueOf(1 + random.nextInt(20000));
+        WorkOrder deleted = heapRepository.deleteWorkOrder(id);
+        WorkOrder offHeapDeleted = repository.deleteWorkOrder(id);
+        assertEquals(deleted != null ? deleted.getId() : null, offHeapDeleted != null ? offHeapDeleted.getId() : null);
+      }
+      assertEquals(heapRepository.getNextWorkOrder().getId(), repository.getNextWorkOrder().getId());
+      assertNull(heapRepository.getNextWorkOrder(workOrder -> false));
+      assertNull(repository.getNextWorkOrder(workOrder -> false));
+      assertEquals(ids(heapRepository.getNextWorkOrders(10)), ids(repository.getNextWorkOrders(10)));
+      assertEquals(heapRepository.getSortedListOfWorkOrderIds(), repository.getSortedListOfWorkOrderIds());
+      for (int i = 0; i < 20; i++) {
+        BigInteger id = BigInteger.valueOf(1 + random.nextInt(20000));
+        assertEquals(heapRepository.getWorkOrderQueuePosition(id), repository.getWorkOrderQueuePosition(id));
+      }
+      String reference = date(ENTRY_SECONDS + random.nextInt(1000000));
+      assertEquals(heapRepository.getQueueMeanWaitTime(reference), repository.getQueueMeanWaitTime(reference), 1e-6);
+      for (WorkOrderClassification classification : WorkOrderClassification.values()) {
+        assertEquals(heapRepository.getWorkOrderCount(classification), repository.getWorkOrderCount(classification));
+        assertEquals(heapRepository.getOldestWorkOrder(classification).getId(),
+            repository.getOldestWorkOrder(classification).getId());
+      }
+    }
+    assertEquals(heapRepository.getSortedListOfWorkOrderIds(100, 50), repository.getSortedListOfWorkOrderIds(100, 50));
+  }
+
+  @Test
+  @DisplayName("Test the sorted iterator reads past a batch and keeps going while the store changes.")
+  void testIteratorAcrossBatches () {
+    for (long id = 1; id <= 5000; id++) {
+      repository.addWorkOrder(Long.toString(id * 2), date(ENTRY_SECONDS + id));
+    }
+    PrimitiveIterator.OfLong iterator = repository.getSortedWorkOrderIdIterator();
+    List<BigInteger> sorted = new ArrayList<>(repository.getSortedListOfWorkOrderIds());
+    int count = 0;
+    while (iterator.hasNext()) {
+      assertEquals(sorted.get(count++).longValue(), iterator.nextLong());
+      if (count == 2000) {
+        // a work order far down the queue is removed before it is read.
+        repository.deleteWorkOrder(sorted.remove(4000));
+      }
+    }
+    assertEquals(4999, count);
+  }
+
+  @Test
+  @DisplayName("Test a batch is added in one pass with the same rejections as the heap store.")
+  void testAddingBatchOfWorkOrders () {
+    repository.addWorkOrder("7", date(ENTRY_SECONDS));
+    List<WorkOrderSubmission> submissions = Arrays.asList(
+        new WorkOrderSubmission("1", date(ENTRY_SECONDS)),
+        new WorkOrderSubmission("abc", date(ENTRY_SECONDS)),
+        new WorkOrderSubmission("7", date(ENTRY_SECONDS)),
+        new WorkOrderSubmission("2", "not a date"),
+        new WorkOrderSubmission("1", date(ENTRY_SECONDS)),
+        new WorkOrderSubmission("3", date(Instant.now().getEpochSecond() + 3600)));
+    WorkOrderBatchResult result = repository.addWorkOrders(submissions);
+
+    assertEquals(1, result.getCreated().size());
+    List<WorkOrderRejection.Reason> reasons = new ArrayList<>();
+    List<Integer> indexes = new ArrayList<>();
+    for (WorkOrderRejection rejection : result.getRejected()) {
+      reasons.add(rejection.getReason());
+      indexes.add(rejection.getIndex());
+    }
+    assertEquals(Arrays.asList(1, 2, 3, 4, 5), indexes);
+    assertEquals(Arrays.asList(WorkOrderRejection.Reason.INVALID_ID, WorkOrderRejection.Reason.DUPLICATE_ID,
+        WorkOrderRejection.Reason.INVALID_DATE, WorkOrderRejection.Reason.DUPLICATE_ID,
+        WorkOrderRejection.Reason.FUTURE_DATE), reasons);
+    assertEquals(2, repository.size());
+  }
+
+  @Test
+  @DisplayName("Test freed nodes are reused and the id index grows past its initial capacity.")
+  void testGrowAndReuse () {
+    for (int round = 0; round < 3; round++) {
+      for (long id = 1; id <= 10000; id++) {
+        repository.addWorkOrder(Long.toString(id), date(ENTRY_SECONDS + id));
+      }
+      assertEquals(10000, repository.size());
+      assertEquals(0, repository.getWorkOrderQueuePosition(BigInteger.valueOf(15)));
+      assertEquals(10000, repository.getNextWorkOrders(20000).size());
+      assertNull(repository.getNextWorkOrder());
+    }
+    assertEquals(0.0, repository.getQueueMeanWaitTime("not a date"));
+    repository.close();
+    assertThrows(IllegalStateException.class, () -> repository.addWorkOrder("1", date(ENTRY_SECONDS)));
+    assertThrows(IllegalStateException.class, () -> repository.getWorkOrderQueuePosition(BigInteger.ONE));
+    assertThrows(IllegalStateException.class, () -> repository.getQueueMeanWaitTime(date(ENTRY_SECONDS)));
+    assertThrows(IllegalArgumentException.class, () -> new OffHeapWorkOrderRepository(directory, 0));
+  }
+
+  @Test
+  @DisplayName("Test a full store rejects further work orders and is left as it was.")
+  void testFullStoreRejects () {
+    OffHeapWorkOrderRepository full = new OffHeapWorkOrderRepository(directory, 4, 20, Clock.systemUTC());
+    try {
+      List<String> added = new ArrayList<>();
+      full.addWorkOrderListener(new WorkOrderListener() {
+        @Override
+        public void workOrderAdded(WorkOrder workOrder) {
+          added.add(workOrder.getId().toString());
+        }
+      });
+      for (long id = 1; id <= 20; id++) {
+        full.addWorkOrder(Long.toString(id), date(ENTRY_SECONDS + id));
+      }
+      List<BigInteger> queued = full.getSortedListOfWorkOrderIds();
+
+      WorkOrderRejectedException e = assertThrows(WorkOrderRejectedException.class,
+          () -> full.addWorkOrder("21", date(ENTRY_SECONDS)));
+      assertEquals(WorkOrderRejection.Reason.STORE_FULL, e.getReason());
+      assertEquals(queued, full.getSortedListOfWorkOrderIds());
+      assertEquals(-1, full.getWorkOrderQueuePosition(BigInteger.valueOf(21)));
+      assertEquals(20, added.size());
+
+      full.getNextWorkOrder();
+      WorkOrderBatchResult result = full.addWorkOrders(Arrays.asList(
+          new WorkOrderSubmission("21", date(ENTRY_SECONDS)),
+          new WorkOrderSubmission("22", date(ENTRY_SECONDS)),
+          new WorkOrderSubmission("2", date(ENTRY_SECONDS))));
+      assertEquals(Collections.singletonList(BigInteger.valueOf(21)), ids(result.getCreated()));
+      assertEquals(2, result.getRejected().size());
+      assertEquals(WorkOrderRejection.Reason.STORE_FULL, result.getRejected().get(0).getReason());
+      assertEquals(WorkOrderRejection.Reason.DUPLICATE_ID, result.getRejected().get(1).getReason());
+      assertEquals(20, full.size());
+      assertEquals(21, added.size());
+    } finally {
+      full.close();
+    }
+    assertThrows(IllegalArgumentException.class,
+        () -> new OffHeapWorkOrderRepository(directory, 4, OffHeapWorkOrderRepository.MAXIMUM_CAPACITY + 1,
+            Clock.systemUTC()));
+  }
+
+  private static List<BigInteger> ids(List<WorkOrder> workOrders) {
+    List<BigInteger> ids = new ArrayList<>();
+    workOrders.forEach(workOrder -> ids.add(workOrder.getId()));
+    assertTrue(ids.size() == workOrders.size());
+    return ids;
+  }
+
+  private static String date(long seconds) {
+    return DateConverterUtilities.getDateInIso8601Format(Instant.ofEpochSecond(seconds).atZone(ZoneOffset.UTC));
+  }
+}
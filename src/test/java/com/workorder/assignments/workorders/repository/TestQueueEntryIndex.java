@@ -0,0 +1,171 @@
+package com.workorder.assignments.workorders.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Class:        TestQueueEntryIndex
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class TestQueueEntryIndex {
+
+  @Test
+  @DisplayName("Test an empty index.")
+  void testEmptyIndex () {
+    QueueEntryIndex<Long> index = new QueueEntryIndex<>(Comparator.naturalOrder());
+    assertEquals(0, index.size());
+    assertNull(index.first());
+    assertEquals(0, index.countWhile(value -> true));
+    assertFalse(index.remove(1L));
+  }
+
+  @Test
+  @DisplayName("Test duplicates are rejected and missing values are not removed.")
+  void testDuplicateValues () {
+    QueueEntryIndex<Long> index = new QueueEntryIndex<>(Comparator.naturalOrder());
+    assertTrue(index.add(5L));
+    assertFalse(index.add(5L));
+    assertEquals(1, index.size());
+    assertTrue(index.remove(5L));
+    assertFalse(index.remove(5L));
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  @DisplayName("Test put takes the place of an equal value and only that instance is removed.")
+  void testPutAndRemoveInstance () {
+    QueueEntryIndex<String> index = new QueueEntryIndex<>(Comparator.naturalOrder());
+    String first = new String("work order");
+    String second = new String("work order");
+    index.put(first);
+    index.put(second);
+    assertEquals(1, index.size());
+    assertSame(second, index.first());
+    assertFalse(index.removeInstance(first));
+    assertEquals(1, index.size());
+    assertTrue(index.removeInstance(second));
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  @DisplayName("Test the index keeps the same order and counts as a sorted set.")
+  void testIndexMatchesSortedSet () {
+    QueueEntryIndex<Long> index = new QueueEntryIndex<>(Comparator.naturalOrder());
+    TreeSet<Long> expected = new TreeSet<>();
+    Random random = new Random(42L);
+    for (int i = 0; i < 5000; i++) {
+      long value = random.nextInt(2000);
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(value), index.remove(value));
+      } else {
+        assertEquals(expected.add(value), index.add(value));
+      }
+    }
+
+    assertEquals(expected.size(), index.size());
+    assertEquals(expected.first(), index.first());
+    assertArrayEquals(expected.toArray(new Long[0]), index.toArray(Long[]::new));
+    List<Long> iterated = new ArrayList<>();
+    index.iterator().forEachRemaining(iterated::add);
+    assertEquals(new ArrayList<>(expected), iterated);
+    for (long bound = 0; bound < 2000; bound += 97) {
+      final long limit = bound;
+      assertEquals(expected.headSet(limit).size(), index.countWhile(value -> value < limit));
+    }
+  }
+
+  @Test
+  @DisplayName("Test a batch added in one change keeps the index ordered.")
+  void testAddAll () {
+    QueueEntryIndex<Long> index = new QueueEntryIndex<>(Comparator.naturalOrder());
+    TreeSet<Long> expected = new TreeSet<>();
+    for (long value = 0; value < 1000; value += 3) {
+      index.add(value);
+      expected.add(value);
+    }
+    List<Long> batch = new ArrayList<>();
+    for (long value = 1; value < 1500; value += 3) {
+      batch.add(value);
+    }
+    index.addAll(batch);
+    index.addAll(new ArrayList<>());
+    expected.addAll(batch);
+
+    assertEquals(expected.size(), index.size());
+    assertArrayEquals(expected.toArray(new Long[0]), index.toArray(Long[]::new));
+    assertEquals(expected.headSet(700L).size(), index.countWhile(value -> value < 700L));
+  }
+
+  @Test
+  @DisplayName("Test prefix counts and sums of the weights match counting and summing a sorted set.")
+  void testSumWhile () {
+    QueueEntryIndex<Long> index = new QueueEntryIndex<>(Comparator.naturalOrder(), Long::longValue);
+    TreeSet<Long> expected = new TreeSet<>();
+    Random random = new Random(7L);
+    for (int i = 0; i < 3000; i++) {
+      long value = random.nextInt(2000);
+      if (random.nextInt(3) == 0) {
+        index.remove(value);
+        expected.remove(value);
+      } else {
+        index.add(value);
+        expected.add(value);
+      }
+    }
+    List<Long> batch = new ArrayList<>();
+    for (long value = 2000; value < 2500; value++) {
+      batch.add(value);
+    }
+    index.addAll(batch);
+    expected.addAll(batch);
+
+    assertArrayEquals(new long[] {0L, 0L}, index.countAndSumWhile(value -> false));
+    for (long bound = 0; bound <= 2500; bound += 83) {
+      final long limit = bound;
+      long sum = expected.headSet(limit).stream().mapToLong(Long::longValue).sum();
+      assertArrayEquals(new long[] {expected.headSet(limit).size(), sum},
+          index.countAndSumWhile(value -> value < limit));
+    }
+  }
+
+  @Test
+  @DisplayName("Test values are got and iterated from a position, and a snapshot keeps the values it was taken with.")
+  void testPositionsAndSnapshot () {
+    QueueEntryIndex<Long> index = new QueueEntryIndex<>(Comparator.naturalOrder());
+    List<Long> expected = new ArrayList<>();
+    for (long value = 0; value < 3000; value += 3) {
+      index.add(value);
+      expected.add(value);
+    }
+    QueueEntryIndex<Long> snapshot = index.snapshot();
+    index.remove(0L);
+    index.add(1L);
+
+    for (int position = 0; position <= expected.size(); position += 37) {
+      if (position < expected.size()) {
+        assertEquals(expected.get(position), snapshot.get(position));
+      }
+      List<Long> iterated = new ArrayList<>();
+      snapshot.iterator(position).forEachRemaining(iterated::add);
+      assertEquals(expected.subList(position, expected.size()), iterated);
+    }
+    assertFalse(snapshot.iterator(expected.size()).hasNext());
+    assertEquals(Long.valueOf(1L), index.get(0));
+    assertThrows(IndexOutOfBoundsException.class, () -> snapshot.get(expected.size()));
+  }
+}
@@ -0,0 +1,101 @@
+package com.workorder.assignments.workorders.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Class:        TestTakeLock
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class TestTakeLock {
+
+  @Test
+  @DisplayName("Test single takes run together and a batch waits for them, then holds them off until it is done.")
+  void testBatchExcludesSingleTakes () throws InterruptedException {
+    TakeLock takeLock = new TakeLock();
+    takeLock.lockTake();
+    CountDownLatch otherTake = new CountDownLatch(1);
+    runThread(() -> {
+      takeLock.lockTake();
+      takeLock.unlockTake();
+      otherTake.countDown();
+    });
+    assertTrue(otherTake.await(5L, TimeUnit.SECONDS));
+
+    CountDownLatch batchLocked = new CountDownLatch(1);
+    CountDownLatch batchDone = new CountDownLatch(1);
+    runThread(() -> {
+      takeLock.lockBatch();
+      batchLocked.countDown();
+      try {
+        batchDone.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      takeLock.unlockBatch();
+    });
+    assertFalse(batchLocked.await(200L, TimeUnit.MILLISECONDS));
+    takeLock.unlockTake();
+    assertTrue(batchLocked.await(5L, TimeUnit.SECONDS));
+
+    CountDownLatch takeLocked = new CountDownLatch(1);
+    runThread(() -> {
+      takeLock.lockTake();
+      takeLocked.countDown();
+      takeLock.unlockTake();
+    });
+    assertFalse(takeLocked.await(200L, TimeUnit.MILLISECONDS));
+    batchDone.countDown();
+    assertTrue(takeLocked.await(5L, TimeUnit.SECONDS));
+  }
+
+  @Test
+  @DisplayName("Test no single take is in progress while a batch is, however many threads take.")
+  void testConcurrentTakesAndBatches () throws InterruptedException {
+    TakeLock takeLock = new TakeLock();
+    AtomicInteger singleTakes = new AtomicInteger();
+    AtomicBoolean overlapped = new AtomicBoolean();
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      final boolean batch = i < 2;
+      threads[i] = new Thread(() -> {
+        for (int n = 0; n < 20000; n++) {
+          if (batch) {
+            takeLock.lockBatch();
+            if (singleTakes.get() != 0) {
+              overlapped.set(true);
+            }
+            takeLock.unlockBatch();
+          } else {
+            takeLock.lockTake();
+            singleTakes.incrementAndGet();
+            singleTakes.decrementAndGet();
+            takeLock.unlockTake();
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertFalse(overlapped.get());
+    assertEquals(0, singleTakes.get());
+  }
+
+  private static void runThread (Runnable runnable) {
+    Thread thread = new Thread(runnable);
+    thread.setDaemon(true);
+    thread.start();
+  }
+}
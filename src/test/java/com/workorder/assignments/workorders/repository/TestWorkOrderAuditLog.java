@@ -0,0 +1,132 @@
+package com.workorder.assignments.workorders.repository;
+
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Class:        TestWorkOrderAuditLog
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class TestWorkOrderAuditLog {
+
+  private static final String ENTRY_TIME = "2018-11-25T23:45:42Z";
+
+  private static final long ENTRY_SECONDS = 1543189542L;
+
+  /** Changes recorded back to back, many times the ring, so the ring wraps while it drains. */
+  private static final int BURST_CHANGES = 400000;
+
+  private Path file;
+
+  @BeforeEach
+  void createFile () throws IOException {
+    file = Files.createTempFile("workorders", ".audit");
+  }
+
+  @AfterEach
+  void deleteFile () throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  @DisplayName("Test the changes made to a repository are written to the audit file in order.")
+  void testChangesAudited () throws IOException {
+    WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    Clock clock = Clock.fixed(Instant.parse("2018-11-29T11:46:00.250Z"), ZoneOffset.UTC);
+    WorkOrderAuditLog auditLog = new WorkOrderAuditLog(file, 16, clock);
+    repository.addWorkOrderListener(auditLog);
+    repository.addWorkOrder("7", ENTRY_TIME);
+    repository.addWorkOrder("15", ENTRY_TIME);
+    repository.getNextWorkOrder();
+    repository.deleteWorkOrder(BigInteger.valueOf(7L));
+    repository.deleteWorkOrder(BigInteger.valueOf(7L));
+    auditLog.close();
+
+    List<WorkOrderAuditLog.Entry> entries = WorkOrderAuditLog.read(file);
+    assertEquals(4, entries.size());
+    assertEntry(entries.get(0), WorkOrderAuditLog.Type.ADDED, 7L);
+    assertEntry(entries.get(1), WorkOrderAuditLog.Type.ADDED, 15L);
+    assertEntry(entries.get(2), WorkOrderAuditLog.Type.TAKEN, 15L);
+    assertEntry(entries.get(3), WorkOrderAuditLog.Type.DELETED, 7L);
+    for (WorkOrderAuditLog.Entry entry : entries) {
+      assertEquals(clock.millis(), entry.getTimeMillis());
+    }
+    assertEquals(4L * WorkOrderAuditLog.RECORD_SIZE, Files.size(file));
+  }
+
+  @Test
+  @DisplayName("Test no change is lost when many threads fill a small ring.")
+  void testConcurrentChangesAllAudited () throws IOException, InterruptedException {
+    WorkOrderAuditLog auditLog = new WorkOrderAuditLog(file, 8);
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      final int worker = i;
+      workers.add(new Thread(() -> {
+        for (long id = worker + 1; id <= 20000; id += 4) {
+          auditLog.workOrderAdded(new WorkOrder(id, ENTRY_SECONDS));
+        }
+      }));
+    }
+    for (Thread worker : workers) {
+      worker.start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    auditLog.close();
+
+    Set<Long> ids = new HashSet<>();
+    for (WorkOrderAuditLog.Entry entry : WorkOrderAuditLog.read(file)) {
+      assertTrue(ids.add(entry.getId()));
+    }
+    assertEquals(20000, ids.size());
+    assertEquals(0L, auditLog.getPendingCount());
+  }
+
+  @Test
+  @DisplayName("Test a burst of changes recorded back to back is written in full.")
+  void testRecordBurst () throws IOException {
+    WorkOrderAuditLog auditLog = new WorkOrderAuditLog(file, 65536);
+    WorkOrder workOrder = new WorkOrder(7L, ENTRY_SECONDS);
+    for (int i = 0; i < BURST_CHANGES; i++) {
+      auditLog.workOrderAdded(workOrder);
+    }
+    auditLog.close();
+
+    assertEquals((long) BURST_CHANGES * WorkOrderAuditLog.RECORD_SIZE, Files.size(file));
+    assertEquals(0L, auditLog.getPendingCount());
+  }
+
+  @Test
+  @DisplayName("Test the ring must be a power of two in size.")
+  void testInvalidBufferSize () {
+    assertThrows(IllegalArgumentException.class, () -> new WorkOrderAuditLog(file, 12));
+    assertThrows(IllegalArgumentException.class, () -> new WorkOrderAuditLog(file, 0));
+  }
+
+  private static void assertEntry (WorkOrderAuditLog.Entry entry, WorkOrderAuditLog.Type type, long id) {
+    assertEquals(type, entry.getType());
+    assertEquals(id, entry.getId());
+    assertEquals(ENTRY_SECONDS, entry.getEntrySeconds());
+  }
+}
@@ -9,16 +9,34 @@ package com.workorder.assignments.workorders.repository;
 
 import com.workorder.assignments.workorders.entities.TestWorkOrderData;
 import com.workorder.assignments.workorders.utilities.BigIntegerConversionUtilities;
+import com.workorder.assignments.workorders.utilities.DateConverterUtilities;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.entities.WorkOrderBatchResult;
+import com.workorder.assignments.workorders.entities.WorkOrderClassification;
+import com.workorder.assignments.workorders.entities.WorkOrderRejection;
+import com.workorder.assignments.workorders.entities.WorkOrderSubmission;
 import org.junit.runner.RunWith;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.math.BigInteger;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -174,7 +192,8 @@ public class TestWorkOrderRepository extends TestWorkOrderData {
   @DisplayName("Test proper sorting of really old priority work ID")
   void testProperSortingOfReallyOldWorkId () {
 
-    final WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    final WorkOrderRepositoryImpl repository = new WorkOrderRepositoryImpl();
+    repository.setClock(TEST_CLOCK);
     repository.addWorkOrder(MANAGEMENT_ID, ENTRY_TIME);
     repository.addWorkOrder(OLDER_MANAGEMENT_ID, OLDER_ENTRY_TIME);
     repository.addWorkOrder(ANCIENT_MANAGEMENT_ID, ANCIENT__ENTRY_TIME);
@@ -199,7 +218,8 @@ public class TestWorkOrderRepository extends TestWorkOrderData {
   @DisplayName("Test proper sorting of really old priority and Normal work ID")
   void testProperSortingOfReallyOldPriorityAndNormalWorkId () {
 
-    final WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    final WorkOrderRepositoryImpl repository = new WorkOrderRepositoryImpl();
+    repository.setClock(TEST_CLOCK);
     repository.addWorkOrder(MANAGEMENT_ID, ENTRY_TIME);
     repository.addWorkOrder(OLDER_MANAGEMENT_ID, OLDER_ENTRY_TIME);
     repository.addWorkOrder(ANCIENT_MANAGEMENT_ID, ANCIENT__ENTRY_TIME);
@@ -222,6 +242,673 @@ public class TestWorkOrderRepository extends TestWorkOrderData {
     assertEquals(NORMAL_ID, list.get(7).toString());
   }
 
+  @Test
+  @DisplayName("Dequeue work orders of every classification and ensure they leave in rank order.")
+  void testGetNextWorkOrderFollowsRankOrder () {
+
+    final WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    repository.addWorkOrder(MANAGEMENT_ID, ENTRY_TIME);
+    repository.addWorkOrder(OLDER_MANAGEMENT_ID, OLDER_ENTRY_TIME);
+    repository.addWorkOrder(ANCIENT_MANAGEMENT_ID, ANCIENT__ENTRY_TIME);
+    repository.addWorkOrder(VIP_ID, ENTRY_TIME);
+    repository.addWorkOrder(OLD_NORMAL_ID, ANCIENT__ENTRY_TIME);
+    repository.addWorkOrder(PRIORITY_ID, ENTRY_TIME);
+    repository.addWorkOrder(OLD_PRIORITY_ID, ANCIENT__ENTRY_TIME);
+    repository.addWorkOrder(NORMAL_ID, ENTRY_TIME);
+
+    List<BigInteger> list = repository.getSortedListOfWorkOrderIds();
+    for (BigInteger id : list) {
+      assertEquals(id, repository.getNextWorkOrder().getId());
+    }
+    assertNull(repository.getNextWorkOrder());
+  }
+
+  @Test
+  @DisplayName("Ensure the sorted list is the same when the ranks are computed in parallel.")
+  void testParallelSortedListMatchesSequential () {
+
+    final WorkOrderRepositoryImpl repository = new WorkOrderRepositoryImpl();
+    ZonedDateTime entryTime = DateConverterUtilities.getDateTimefromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    for (int id = 1; id <= 2000; id++) {
+      repository.addWorkOrder(String.valueOf(id),
+          DateConverterUtilities.getDateInIso8601Format(entryTime.plusHours(id % 500)));
+    }
+
+    List<BigInteger> sequentialList = repository.getSortedListOfWorkOrderIds();
+    repository.setParallelSortThreshold(1);
+    List<BigInteger> parallelList = repository.getSortedListOfWorkOrderIds();
+    // the list was ranked again in parallel rather than read from the sequential ranking.
+    assertEquals(2L, repository.getRankedOrderSorts());
+    assertEquals(2000, parallelList.size());
+    assertEquals(sequentialList, parallelList);
+  }
+
+  @Test
+  @DisplayName("Ensure the queue position of every work order is its index in the sorted list.")
+  void testQueuePositionMatchesSortedList () {
+
+    final WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    ZonedDateTime entryTime = DateConverterUtilities.getDateTimefromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    for (int id = 1; id <= 300; id++) {
+      repository.addWorkOrder(String.valueOf(id),
+          DateConverterUtilities.getDateInIso8601Format(entryTime.plusHours(id % 70)));
+    }
+    repository.deleteWorkOrder(BigInteger.valueOf(150L));
+
+    List<BigInteger> list = repository.getSortedListOfWorkOrderIds();
+    for (int i = 0; i < list.size(); i++) {
+      assertEquals(i, repository.getWorkOrderQueuePosition(list.get(i)));
+    }
+    assertEquals(-1, repository.getWorkOrderQueuePosition(BigInteger.valueOf(150L)));
+  }
+
+  @Test
+  @DisplayName("Ensure pages of the sorted list match the same range of the full list.")
+  void testSortedListPages () {
+
+    final WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    ZonedDateTime entryTime = DateConverterUtilities.getDateTimefromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    for (int id = 1; id <= 300; id++) {
+      repository.addWorkOrder(String.valueOf(id),
+          DateConverterUtilities.getDateInIso8601Format(entryTime.plusHours(id % 70)));
+    }
+
+    List<BigInteger> list = repository.getSortedListOfWorkOrderIds();
+    assertEquals(list.subList(0, 50), repository.getSortedListOfWorkOrderIds(0, 50));
+    assertEquals(list.subList(120, 170), repository.getSortedListOfWorkOrderIds(120, 50));
+    assertEquals(list.subList(280, 300), repository.getSortedListOfWorkOrderIds(280, 50));
+    assertEquals(list, repository.getSortedListOfWorkOrderIds(0, Integer.MAX_VALUE));
+    assertTrue(repository.getSortedListOfWorkOrderIds(300, 50).isEmpty());
+    assertTrue(repository.getSortedListOfWorkOrderIds(10, 0).isEmpty());
+  }
+
+  @Test
+  @DisplayName("Ensure deep pages of a queue that has not been ranked match the same range of the full list.")
+  void testSortedListPagesBeforeRanking () {
+
+    final WorkOrderRepositoryImpl repository = new WorkOrderRepositoryImpl();
+    repository.setClock(TEST_CLOCK);
+    ZonedDateTime entryTime = DateConverterUtilities.getDateTimefromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    for (int id = 1; id <= 1000; id++) {
+      repository.addWorkOrder(String.valueOf(id),
+          DateConverterUtilities.getDateInIso8601Format(entryTime.plusMinutes(id % 97)));
+    }
+
+    List<List<BigInteger>> pages = new ArrayList<>();
+    for (int offset = 0; offset <= 1000; offset += 45) {
+      pages.add(repository.getSortedListOfWorkOrderIds(offset, 45));
+    }
+    assertEquals(0, repository.getRankedOrderSorts());
+
+    List<BigInteger> list = repository.getSortedListOfWorkOrderIds();
+    for (int page = 0; page < pages.size(); page++) {
+      int offset = page * 45;
+      assertEquals(list.subList(offset, Math.min(offset + 45, list.size())), pages.get(page));
+    }
+  }
+
+  @Test
+  @DisplayName("Ensure a page with a negative offset or limit fails.")
+  void testSortedListPageWithNegativeValues () {
+    final WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    assertThrows(IllegalArgumentException.class, ()-> repository.getSortedListOfWorkOrderIds(-1, 10));
+    assertThrows(IllegalArgumentException.class, ()-> repository.getSortedListOfWorkOrderIds(0, -1));
+  }
+
+  @Test
+  @DisplayName("Ensure the streamed ids match the sorted list.")
+  void testSortedIdIteratorMatchesSortedList () {
+
+    final WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    ZonedDateTime entryTime = DateConverterUtilities.getDateTimefromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    for (int id = 1; id <= 300; id++) {
+      repository.addWorkOrder(String.valueOf(id),
+          DateConverterUtilities.getDateInIso8601Format(entryTime.plusHours(id % 70)));
+    }
+
+    PrimitiveIterator.OfLong ids = repository.getSortedWorkOrderIdIterator();
+    // changes after the iterator is created are not seen by it.
+    repository.getNextWorkOrder();
+    repository.addWorkOrder("301", ENTRY_TIME);
+    List<BigInteger> streamed = new ArrayList<>();
+    ids.forEachRemaining((long id) -> streamed.add(BigInteger.valueOf(id)));
+    assertEquals(300, streamed.size());
+    List<BigInteger> current = repository.getSortedListOfWorkOrderIds();
+    current.remove(BigInteger.valueOf(301L));
+    assertEquals(current, streamed.subList(1, 300));
+  }
+
+  @Test
+  @DisplayName("Ensure the ranked order is reused until the queue changes and each change is seen.")
+  void testRankedOrderReusedUntilQueueChanges () {
+
+    final WorkOrderRepositoryImpl repository = new WorkOrderRepositoryImpl();
+    repository.setClock(TEST_CLOCK);
+    for (int id = 1; id <= 30; id++) {
+      repository.addWorkOrder(String.valueOf(id), ENTRY_TIME);
+    }
+
+    List<BigInteger> list = repository.getSortedListOfWorkOrderIds();
+    long sorts = repository.getRankedOrderSorts();
+    assertEquals(list, repository.getSortedListOfWorkOrderIds());
+    assertEquals(list.subList(5, 15), repository.getSortedListOfWorkOrderIds(5, 10));
+    assertEquals(sorts, repository.getRankedOrderSorts());
+
+    repository.addWorkOrder("31", ENTRY_TIME);
+    assertNull(repository.getLastRankedOrder());
+    assertTrue(repository.getSortedListOfWorkOrderIds().contains(BigInteger.valueOf(31L)));
+    repository.deleteWorkOrder(BigInteger.valueOf(31L));
+    assertEquals(list, repository.getSortedListOfWorkOrderIds());
+    WorkOrder top = repository.getNextWorkOrder();
+    assertEquals(list.get(0), top.getId());
+    assertEquals(list.subList(1, 30), repository.getSortedListOfWorkOrderIds());
+  }
+
+  @Test
+  @DisplayName("Ensure a batch adds the valid work orders and reports each faulty one.")
+  void testAddingBatchOfWorkOrders () {
+
+    final WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    repository.addWorkOrder(NORMAL_ID, ENTRY_TIME);
+    WorkOrderBatchResult result = repository.addWorkOrders(Arrays.asList(
+        new WorkOrderSubmission(PRIORITY_ID, ENTRY_TIME),
+        new WorkOrderSubmission("0", ENTRY_TIME),
+        new WorkOrderSubmission(VIP_ID, "2018-13-25T23:45:42Z"),
+        new WorkOrderSubmission(MANAGEMENT_ID, "2918-11-25T23:45:42Z"),
+        new WorkOrderSubmission(NORMAL_ID, ENTRY_TIME),
+        new WorkOrderSubmission(PRIORITY_ID, ENTRY_TIME),
+        null,
+        new WorkOrderSubmission(MANAGEMENT_ID, ENTRY_TIME)));
+
+    assertEquals(2, result.getCreated().size());
+    assertEquals(PRIORITY_ID, result.getCreated().get(0).getId().toString());
+    assertEquals(MANAGEMENT_ID, result.getCreated().get(1).getId().toString());
+
+    List<WorkOrderRejection> rejected = result.getRejected();
+    assertEquals(6, rejected.size());
+    assertEquals(1, rejected.get(0).getIndex());
+    assertEquals(WorkOrderRejection.Reason.INVALID_ID, rejected.get(0).getReason());
+    assertEquals(WorkOrderRejection.Reason.INVALID_DATE, rejected.get(1).getReason());
+    assertEquals(WorkOrderRejection.Reason.FUTURE_DATE, rejected.get(2).getReason());
+    assertEquals(WorkOrderRejection.Reason.DUPLICATE_ID, rejected.get(3).getReason());
+    assertEquals(WorkOrderRejection.Reason.DUPLICATE_ID, rejected.get(4).getReason());
+    assertEquals(5, rejected.get(4).getIndex());
+    assertEquals(WorkOrderRejection.Reason.INVALID_ID, rejected.get(5).getReason());
+
+    List<BigInteger> list = repository.getSortedListOfWorkOrderIds();
+    assertEquals(3, list.size());
+    assertEquals(MANAGEMENT_ID, list.get(0).toString());
+    assertNull(repository.deleteWorkOrder(new BigInteger(VIP_ID)));
+  }
+
+  @Test
+  @DisplayName("Ensure a batch gives the same queue as adding the work orders one at a time.")
+  void testBatchMatchesSingleAdds () {
+
+    final WorkOrderRepository singleRepository = new WorkOrderRepositoryImpl();
+    final WorkOrderRepository batchRepository = new WorkOrderRepositoryImpl();
+    ZonedDateTime entryTime = DateConverterUtilities.getDateTimefromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    List<WorkOrderSubmission> firstBatch = new ArrayList<>();
+    List<WorkOrderSubmission> secondBatch = new ArrayList<>();
+    for (int id = 300; id >= 1; id--) {
+      String entryDate = DateConverterUtilities.getDateInIso8601Format(entryTime.plusHours(id % 70));
+      singleRepository.addWorkOrder(String.valueOf(id), entryDate);
+      (id % 2 == 0 ? firstBatch : secondBatch).add(new WorkOrderSubmission(String.valueOf(id), entryDate));
+    }
+    assertEquals(150, batchRepository.addWorkOrders(firstBatch).getCreated().size());
+    assertEquals(150, batchRepository.addWorkOrders(secondBatch).getCreated().size());
+
+    List<BigInteger> list = batchRepository.getSortedListOfWorkOrderIds();
+    assertEquals(singleRepository.getSortedListOfWorkOrderIds(), list);
+    for (int i = 0; i < list.size(); i++) {
+      assertEquals(i, batchRepository.getWorkOrderQueuePosition(list.get(i)));
+    }
+    assertTrue(batchRepository.addWorkOrders(new ArrayList<>()).getCreated().isEmpty());
+  }
+
+  @Test
+  @DisplayName("Ensure a batch taken from the queue is the top of the sorted list.")
+  void testGetNextWorkOrdersTakesTopOfSortedList () {
+
+    final WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    ZonedDateTime entryTime = DateConverterUtilities.getDateTimefromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    for (int id = 1; id <= 300; id++) {
+      repository.addWorkOrder(String.valueOf(id),
+          DateConverterUtilities.getDateInIso8601Format(entryTime.plusHours(id % 70)));
+    }
+
+    List<BigInteger> list = repository.getSortedListOfWorkOrderIds();
+    List<WorkOrder> taken = repository.getNextWorkOrders(50);
+    assertEquals(50, taken.size());
+    for (int i = 0; i < taken.size(); i++) {
+      assertEquals(list.get(i), taken.get(i).getId());
+    }
+    assertEquals(list.subList(50, 300), repository.getSortedListOfWorkOrderIds());
+    assertEquals(250, repository.getNextWorkOrders(1000).size());
+    assertTrue(repository.getNextWorkOrders(1).isEmpty());
+    assertThrows(IllegalArgumentException.class, ()-> repository.getNextWorkOrders(0));
+  }
+
+  @Test
+  @DisplayName("Ensure concurrent batches never take the same work order twice.")
+  void testConcurrentGetNextWorkOrders () throws InterruptedException {
+
+    final WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    ZonedDateTime entryTime = DateConverterUtilities.getDateTimefromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    for (int id = 1; id <= 2000; id++) {
+      repository.addWorkOrder(String.valueOf(id),
+          DateConverterUtilities.getDateInIso8601Format(entryTime.plusHours(id % 70)));
+    }
+
+    Set<BigInteger> takenIds = ConcurrentHashMap.newKeySet();
+    AtomicInteger takenCount = new AtomicInteger();
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      workers.add(new Thread(() -> {
+        List<WorkOrder> taken = repository.getNextWorkOrders(7);
+        while (!taken.isEmpty()) {
+          taken.forEach(workOrder -> takenIds.add(workOrder.getId()));
+          takenCount.addAndGet(taken.size());
+          taken = repository.getNextWorkOrders(7);
+        }
+      }));
+    }
+    for (Thread worker : workers) {
+      worker.start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    assertEquals(2000, takenCount.get());
+    assertEquals(2000, takenIds.size());
+  }
+
+  @Test
+  @DisplayName("Ensure concurrent adds of an id admit one and concurrent takes and deletes remove each order once.")
+  void testConcurrentAddDeleteAndDequeue () throws InterruptedException {
+
+    final WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    ZonedDateTime entryTime = DateConverterUtilities.getDateTimefromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    AtomicInteger admitted = new AtomicInteger();
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      workers.add(new Thread(() -> {
+        for (int id = 1; id <= 2000; id++) {
+          try {
+            repository.addWorkOrder(String.valueOf(id),
+                DateConverterUtilities.getDateInIso8601Format(entryTime.plusHours(id % 70)));
+            admitted.incrementAndGet();
+          } catch (IllegalArgumentException e) {
+            // another worker added it first.
+          }
+        }
+      }));
+    }
+    runAll(workers);
+    assertEquals(2000, admitted.get());
+    assertEquals(2000, repository.getSortedListOfWorkOrderIds().size());
+
+    Set<BigInteger> removedIds = ConcurrentHashMap.newKeySet();
+    AtomicInteger removedCount = new AtomicInteger();
+    workers.clear();
+    for (int i = 0; i < 8; i++) {
+      final int worker = i;
+      workers.add(new Thread(() -> {
+        if (worker % 2 == 0) {
+          WorkOrder taken = repository.getNextWorkOrder();
+          while (taken != null) {
+            removedIds.add(taken.getId());
+            removedCount.incrementAndGet();
+            taken = repository.getNextWorkOrder();
+          }
+        } else {
+          for (int id = 2000 - worker; id > 0; id -= 7) {
+            WorkOrder deleted = repository.deleteWorkOrder(BigInteger.valueOf(id));
+            if (deleted != null) {
+              removedIds.add(deleted.getId());
+              removedCount.incrementAndGet();
+            }
+          }
+        }
+      }));
+    }
+    runAll(workers);
+    assertEquals(2000, removedCount.get());
+    assertEquals(2000, removedIds.size());
+    assertTrue(repository.getSortedListOfWorkOrderIds().isEmpty());
+    assertNull(repository.getNextWorkOrder());
+  }
+
+  @Test
+  @DisplayName("Ensure concurrent sorted lists of the same queue share one ranking.")
+  void testConcurrentSortedListsShareRanking () throws InterruptedException {
+
+    final WorkOrderRepositoryImpl repository = new WorkOrderRepositoryImpl();
+    repository.setClock(TEST_CLOCK);
+    long entrySeconds = DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    for (long id = 1L; id <= 200000L; id++) {
+      repository.restoreWorkOrder(id, entrySeconds + (id % 5000L));
+    }
+
+    CountDownLatch start = new CountDownLatch(1);
+    List<List<BigInteger>> lists = Collections.synchronizedList(new ArrayList<>());
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      workers.add(new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        lists.add(repository.getSortedListOfWorkOrderIds());
+      }));
+    }
+    for (Thread worker : workers) {
+      worker.start();
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    assertEquals(8, lists.size());
+    lists.forEach(list -> assertEquals(lists.get(0), list));
+    assertEquals(200000, lists.get(0).size());
+    assertEquals(1L, repository.getRankedOrderSorts());
+    assertTrue(repository.getCoalescedReadCount() <= 7);
+  }
+
+  @Test
+  @DisplayName("Ensure a work order of a batch deleted while the batch is added does not stay in the queue.")
+  void testBatchAddRacingDelete () throws InterruptedException {
+
+    for (int round = 0; round < 50; round++) {
+      final WorkOrderRepositoryImpl repository = new WorkOrderRepositoryImpl();
+      repository.setClock(TEST_CLOCK);
+      List<WorkOrderSubmission> submissions = new ArrayList<>();
+      for (int id = 1; id <= 2000; id++) {
+        submissions.add(new WorkOrderSubmission(String.valueOf(id), ENTRY_TIME));
+      }
+      List<Thread> workers = new ArrayList<>();
+      workers.add(new Thread(() -> repository.addWorkOrders(submissions)));
+      workers.add(new Thread(() -> {
+        for (long id = 2000L; id >= 1L; id -= 10L) {
+          // retried until the batch has put the id in the map.
+          while (repository.deleteWorkOrder(BigInteger.valueOf(id)) == null) {
+            Thread.yield();
+          }
+        }
+      }));
+      runAll(workers);
+
+      List<BigInteger> sorted = repository.getSortedListOfWorkOrderIds();
+      assertEquals(1800, sorted.size());
+      int count = 0;
+      for (WorkOrderClassification classification : WorkOrderClassification.values()) {
+        count += repository.getWorkOrderCount(classification);
+      }
+      assertEquals(1800, count);
+      for (BigInteger id : sorted) {
+        assertTrue(repository.getWorkOrderQueuePosition(id) >= 0, "deleted " + id + " is still queued");
+      }
+    }
+  }
+
+  private static void runAll (List<Thread> workers) throws InterruptedException {
+    for (Thread worker : workers) {
+      worker.start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+  }
+
+  @Test
+  @DisplayName("Ensure the mean wait time matches averaging the wait of each work order.")
+  void testMeanWaitTimeMatchesAverage () {
+
+    final WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    ZonedDateTime entryTime = DateConverterUtilities.getDateTimefromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    for (int id = 1; id <= 300; id++) {
+      repository.addWorkOrder(String.valueOf(id),
+          DateConverterUtilities.getDateInIso8601Format(entryTime.plusMinutes(id * 37 % 1000)));
+    }
+    repository.getNextWorkOrders(20);
+    repository.deleteWorkOrder(BigInteger.valueOf(77L));
+
+    ZonedDateTime referenceTime = entryTime.plusMinutes(500);
+    double sum = 0.0;
+    int count = 0;
+    for (BigInteger id : repository.getSortedListOfWorkOrderIds()) {
+      long entryMinutes = id.longValue() * 37 % 1000;
+      if (entryMinutes <= 500) {
+        sum += (500 - entryMinutes) * 60;
+        ++count;
+      }
+    }
+    assertEquals(sum / count,
+        repository.getQueueMeanWaitTime(DateConverterUtilities.getDateInIso8601Format(referenceTime)), 1e-6);
+    assertEquals(0.0, repository.getQueueMeanWaitTime(DateConverterUtilities.getDateInIso8601Format(entryTime.minusSeconds(1))));
+  }
+
+  @Test
+  @DisplayName("Ensure a work order that cannot be handed over goes back to its place without telling listeners.")
+  void testHandOverFails () {
+
+    final WorkOrderRepositoryImpl repository = new WorkOrderRepositoryImpl();
+    repository.setClock(TEST_CLOCK);
+    for (int id = 1; id <= 20; id++) {
+      repository.addWorkOrder(String.valueOf(id), ENTRY_TIME);
+    }
+    List<BigInteger> expected = repository.getSortedListOfWorkOrderIds();
+    List<String> events = new ArrayList<>();
+    repository.addWorkOrderListener(new WorkOrderListener() {
+      @Override
+      public void workOrderAdded(WorkOrder workOrder) {
+        events.add("ADDED " + workOrder.getId());
+      }
+
+      @Override
+      public void workOrderTaken(WorkOrder workOrder) {
+        events.add("TAKEN " + workOrder.getId());
+      }
+    });
+
+    assertNull(repository.getNextWorkOrder(workOrder -> false));
+    assertEquals(expected, repository.getSortedListOfWorkOrderIds());
+    assertTrue(events.isEmpty());
+    assertThrows(IllegalStateException.class, () -> repository.getNextWorkOrder(workOrder -> {
+      throw new IllegalStateException();
+    }));
+    assertEquals(expected, repository.getSortedListOfWorkOrderIds());
+    assertTrue(events.isEmpty());
+
+    assertNull(repository.getNextWorkOrder(workOrder -> {
+      repository.addWorkOrder(workOrder.getId().toString(), ENTRY_TIME);
+      return false;
+    }));
+    assertEquals(expected.size(), repository.getSortedListOfWorkOrderIds().size());
+    assertEquals(Arrays.asList("TAKEN " + expected.get(0), "ADDED " + expected.get(0)), events);
+
+    WorkOrder handedOver = repository.getNextWorkOrder(workOrder -> true);
+    assertEquals(expected.get(0), handedOver.getId());
+    assertEquals(Arrays.asList("TAKEN " + expected.get(0), "ADDED " + expected.get(0),
+        "TAKEN " + expected.get(0)), events);
+  }
+
+  @Test
+  @DisplayName("Ensure listeners hear the changes of each work order in the order they were made while others change it.")
+  void testListenersToldInChangeOrder () throws InterruptedException {
+
+    final WorkOrderRepositoryImpl repository = new WorkOrderRepositoryImpl();
+    repository.setClock(TEST_CLOCK);
+    final Map<BigInteger, Boolean> queued = new ConcurrentHashMap<>();
+    final AtomicBoolean outOfOrder = new AtomicBoolean();
+    repository.addWorkOrderListener(new WorkOrderListener() {
+      @Override
+      public void workOrderAdded(WorkOrder workOrder) {
+        if (queued.put(workOrder.getId(), Boolean.TRUE) == Boolean.TRUE) {
+          outOfOrder.set(true);
+        }
+      }
+
+      @Override
+      public void workOrderTaken(WorkOrder workOrder) {
+        removed(workOrder);
+      }
+
+      @Override
+      public void workOrderDeleted(WorkOrder workOrder) {
+        removed(workOrder);
+      }
+
+      private void removed(WorkOrder workOrder) {
+        if (queued.put(workOrder.getId(), Boolean.FALSE) != Boolean.TRUE) {
+          outOfOrder.set(true);
+        }
+      }
+    });
+
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      final int worker = i;
+      workers.add(new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int n = 0; n < 20000; n++) {
+          String id = String.valueOf(1 + (n % 8));
+          if (worker % 3 == 0) {
+            repository.addWorkOrder(id, ENTRY_TIME);
+          } else if (worker % 3 == 1) {
+            repository.deleteWorkOrder(new BigInteger(id));
+          } else {
+            repository.getNextWorkOrder();
+          }
+        }
+      }));
+    }
+    for (Thread worker : workers) {
+      worker.start();
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    assertFalse(outOfOrder.get());
+    for (BigInteger id : repository.getSortedListOfWorkOrderIds()) {
+      assertEquals(Boolean.TRUE, queued.get(id));
+    }
+  }
+
+  @Test
+  @DisplayName("Ensure each batch taken while other requests take is a run of consecutive ranks.")
+  void testConcurrentBatchesAreContiguous () throws InterruptedException {
+
+    final WorkOrderRepositoryImpl repository = new WorkOrderRepositoryImpl();
+    repository.setClock(TEST_CLOCK);
+    long entrySeconds = DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    for (int id = 1; id <= 20000; id++) {
+      repository.restoreWorkOrder(id, entrySeconds + (id * 7L));
+    }
+    List<BigInteger> ranked = repository.getSortedListOfWorkOrderIds();
+
+    List<List<WorkOrder>> batches = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> takers = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      final boolean batch = i < 4;
+      takers.add(new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        if (batch) {
+          List<WorkOrder> taken;
+          while (!(taken = repository.getNextWorkOrders(7)).isEmpty()) {
+            batches.add(taken);
+          }
+        } else {
+          while (repository.getNextWorkOrder() != null) {
+            Thread.yield();
+          }
+        }
+      }));
+    }
+    for (Thread taker : takers) {
+      taker.start();
+    }
+    start.countDown();
+    for (Thread taker : takers) {
+      taker.join();
+    }
+
+    assertTrue(repository.getSortedListOfWorkOrderIds().isEmpty());
+    for (List<WorkOrder> taken : batches) {
+      int first = ranked.indexOf(taken.get(0).getId());
+      for (int i = 0; i < taken.size(); i++) {
+        assertEquals(ranked.get(first + i), taken.get(i).getId());
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Ensure the mean wait time matches averaging the wait of each work order while others add and delete.")
+  void testMeanWaitTimeWhileQueueChanges () throws InterruptedException {
+
+    final WorkOrderRepositoryImpl repository = new WorkOrderRepositoryImpl();
+    long entrySeconds = DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    long referenceSeconds = entrySeconds + 10000L;
+    double sum = 0.0;
+    int count = 0;
+    for (long id = 1L; id <= 1001L; id++) {
+      long workOrderEntrySeconds = entrySeconds + (id * 37L % 1001L) - 500L;
+      repository.restoreWorkOrder(id, workOrderEntrySeconds);
+      sum += referenceSeconds - workOrderEntrySeconds;
+      ++count;
+    }
+    double expectedMean = sum / count;
+    // the work orders added and deleted wait for the mean, so the mean is the same with or without them.
+    long churnEntrySeconds = referenceSeconds - Math.round(expectedMean);
+    assertEquals(expectedMean, (double) (referenceSeconds - churnEntrySeconds));
+
+    AtomicBoolean running = new AtomicBoolean(true);
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      final long firstId = 100000L * (i + 1);
+      workers.add(new Thread(() -> {
+        while (running.get()) {
+          for (long id = firstId; id < firstId + 16L; id++) {
+            repository.restoreWorkOrder(id, churnEntrySeconds);
+          }
+          for (long id = firstId; id < firstId + 16L; id++) {
+            repository.discardWorkOrder(id);
+          }
+        }
+      }));
+    }
+    for (Thread worker : workers) {
+      worker.start();
+    }
+    String referenceDate = DateConverterUtilities.getDateInIso8601Format(
+        DateConverterUtilities.getDateTimefromIso8601StringFormat(ANCIENT__ENTRY_TIME).plusSeconds(10000L));
+    try {
+      for (int i = 0; i < 5000; i++) {
+        assertEquals(expectedMean, repository.getQueueMeanWaitTime(referenceDate), 1e-6);
+      }
+    } finally {
+      running.set(false);
+      for (Thread worker : workers) {
+        worker.join();
+      }
+    }
+  }
+
   @Test
   void testMeanFunction () {
     // all of the following work on the same entry time tpo test the basic rank sorting for categories
@@ -237,4 +924,17 @@ public class TestWorkOrderRepository extends TestWorkOrderData {
     assertEquals(0.0, repository.getQueueMeanWaitTime("2018-11-25T23:43:43Z"));
 
   }
+
+  @Test
+  @DisplayName("Test an empty queue has no mean wait time whatever the reference date, the date is only read when there is a queue.")
+  void testMeanOfEmptyQueue () {
+    final WorkOrderRepository repository = new WorkOrderRepositoryImpl();
+    assertEquals(0.0, repository.getQueueMeanWaitTime("not a date"));
+
+    repository.addWorkOrder(NORMAL_ID, ENTRY_TIME);
+    assertThrows(IllegalArgumentException.class, () -> repository.getQueueMeanWaitTime("not a date"));
+
+    repository.getNextWorkOrder();
+    assertEquals(0.0, repository.getQueueMeanWaitTime("not a date"));
+  }
 }
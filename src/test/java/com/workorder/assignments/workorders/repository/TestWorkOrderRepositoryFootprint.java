@@ -0,0 +1,73 @@
+package com.workorder.assignments.workorders.repository;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.workorder.assignments.workorders.entities.TestWorkOrderData;
+import com.workorder.assignments.workorders.entities.WorkOrder;
+import com.workorder.assignments.workorders.utilities.DateConverterUtilities;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+import org.slf4j.LoggerFactory;
+
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Class:        TestWorkOrderRepositoryFootprint
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class TestWorkOrderRepositoryFootprint extends TestWorkOrderData {
+
+  private static final int WORK_ORDER_COUNT = 1000000;
+
+  /** Budget for the heap held per queued work order with compressed references. */
+  private static final double MAXIMUM_BYTES_PER_WORK_ORDER = 100.0;
+
+  private final Logger repositoryLogger = (Logger) LoggerFactory.getLogger(WorkOrderRepositoryImpl.class);
+  private Level repositoryLogLevel;
+
+  @BeforeEach
+  void quietRepositoryLogging () {
+    repositoryLogLevel = repositoryLogger.getLevel();
+    repositoryLogger.setLevel(Level.WARN);
+  }
+
+  @AfterEach
+  void restoreRepositoryLogging () {
+    repositoryLogger.setLevel(repositoryLogLevel);
+  }
+
+  @Test
+  @DisplayName("Measure the heap held by the repository per work order at 1M work orders.")
+  void testBytesPerWorkOrder () {
+    assumeTrue(VM.current().sizeOfField("object") == 4,
+        "footprint budget assumes compressed references");
+
+    final WorkOrderRepositoryImpl repository = new WorkOrderRepositoryImpl();
+    ZonedDateTime entryTime = DateConverterUtilities.getDateTimefromIso8601StringFormat(ANCIENT__ENTRY_TIME);
+    for (int id = 1; id <= WORK_ORDER_COUNT; id++) {
+      repository.addWorkOrder(String.valueOf(id),
+          DateConverterUtilities.getDateInIso8601Format(entryTime.plusSeconds(id)));
+    }
+    assertEquals(WORK_ORDER_COUNT, repository.getSortedListOfWorkOrderIds().size());
+
+    // the ranked order is only held until the queue changes.
+    WorkOrder taken = repository.getNextWorkOrder();
+    repository.addWorkOrder(taken.getId().toString(),
+        DateConverterUtilities.getDateInIso8601Format(taken.getQueueEntryDate()));
+    assertNull(repository.getLastRankedOrder());
+
+    double bytesPerWorkOrder = (double) GraphLayout.parseInstance(repository).totalSize() / WORK_ORDER_COUNT;
+    assertTrue(bytesPerWorkOrder < MAXIMUM_BYTES_PER_WORK_ORDER,
+        String.format("%.1f bytes per work order", bytesPerWorkOrder));
+  }
+}
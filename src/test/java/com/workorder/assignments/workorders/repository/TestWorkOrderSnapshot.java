@@ -0,0 +1,87 @@
+package com.workorder.assignments.workorders.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Class:        TestWorkOrderSnapshot
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class TestWorkOrderSnapshot {
+
+  private static final long ENTRY_SECONDS = 1480117542L;
+
+  private Path snapshotFile;
+
+  @BeforeEach
+  void createSnapshotFile () throws IOException {
+    snapshotFile = Files.createTempFile("workorders", ".snapshot");
+  }
+
+  @AfterEach
+  void deleteSnapshotFile () throws IOException {
+    Files.deleteIfExists(snapshotFile);
+  }
+
+  @Test
+  @DisplayName("Test a snapshot loads back into the same queue.")
+  void testWriteAndLoad () throws IOException {
+    WorkOrderRepositoryImpl repository = new WorkOrderRepositoryImpl();
+    for (long id = 1; id <= 500000; id++) {
+      repository.restoreWorkOrder(id, ENTRY_SECONDS + ((id * 7919) % 100000));
+    }
+    assertEquals(500000L, WorkOrderSnapshot.write(snapshotFile, repository.snapshotClassificationQueues()));
+
+    WorkOrderRepositoryImpl loaded = new WorkOrderRepositoryImpl();
+    assertEquals(500000, WorkOrderSnapshot.load(snapshotFile, loaded));
+    assertEquals(repository.getSortedListOfWorkOrderIds(0, 1000), loaded.getSortedListOfWorkOrderIds(0, 1000));
+    List<BigInteger> ids = repository.getSortedListOfWorkOrderIds(400000, 100);
+    for (BigInteger id : ids) {
+      assertEquals(repository.getWorkOrderQueuePosition(id), loaded.getWorkOrderQueuePosition(id));
+    }
+  }
+
+  @Test
+  @DisplayName("Test an empty queue makes an empty snapshot.")
+  void testEmptySnapshot () throws IOException {
+    assertEquals(0L, WorkOrderSnapshot.write(snapshotFile, new WorkOrderRepositoryImpl().snapshotClassificationQueues()));
+    WorkOrderRepositoryImpl loaded = new WorkOrderRepositoryImpl();
+    assertEquals(0, WorkOrderSnapshot.load(snapshotFile, loaded));
+    assertTrue(loaded.getSortedListOfWorkOrderIds().isEmpty());
+  }
+
+  @Test
+  @DisplayName("Test a damaged snapshot is not loaded.")
+  void testDamagedSnapshot () throws IOException {
+    WorkOrderRepositoryImpl repository = new WorkOrderRepositoryImpl();
+    for (long id = 1; id <= 1000; id++) {
+      repository.restoreWorkOrder(id, ENTRY_SECONDS + id);
+    }
+    WorkOrderSnapshot.write(snapshotFile, repository.snapshotClassificationQueues());
+    try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {42}), 5000L);
+    }
+    assertThrows(IOException.class, ()-> WorkOrderSnapshot.load(snapshotFile, new WorkOrderRepositoryImpl()));
+
+    try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 1);
+    }
+    assertThrows(IOException.class, ()-> WorkOrderSnapshot.load(snapshotFile, new WorkOrderRepositoryImpl()));
+  }
+}
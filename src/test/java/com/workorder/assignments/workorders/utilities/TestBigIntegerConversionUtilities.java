@@ -3,6 +3,8 @@ package com.workorder.assignments.workorders.utilities;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.math.BigInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -24,6 +26,10 @@ public class TestBigIntegerConversionUtilities {
   private final String TOO_MANY_CHARACTERS = "922337203685477583421";
   private final String NON_NUMERIC_CHARACTER = "1287E65";
   private final String ALL_NON_NUMERIC_CHARACTERS = "ETuvH";
+  private final String NINETEEN_DIGITS_PAST_MAXIMUM = "9999999999999999997";
+  private final String NINETEEN_DIGITS_ENDING_IN_EIGHT = "1000000000000000008";
+  private final String LEADING_ZERO = "0128765";
+  private final String LEADING_SPACE = " 128765";
 
   /* ============================================================================
       TEST isStringValidId method
@@ -52,6 +58,14 @@ public class TestBigIntegerConversionUtilities {
     assertTrue(BigIntegerConversionUtilities.isStringValidId(MAXIMUM_VALUE));
   }
 
+  @Test
+  @DisplayName("Test a 19 digit id below the maximum whose last digit is above 7 is valid")
+  void testNineteenDigitsEndingInEight () {
+    assertTrue(BigIntegerConversionUtilities.isStringValidId(NINETEEN_DIGITS_ENDING_IN_EIGHT));
+    assertEquals(new BigInteger(NINETEEN_DIGITS_ENDING_IN_EIGHT),
+        BigIntegerConversionUtilities.getConverttoValidWorkOrderId(NINETEEN_DIGITS_ENDING_IN_EIGHT));
+  }
+
   @Test
   @DisplayName("Test smallest valid value for id")
   void testMinimumValidIdValue () {
@@ -151,4 +165,41 @@ public class TestBigIntegerConversionUtilities {
   void testAllNonNumericCharactersInId () {
     assertThrows(IllegalArgumentException.class, ()-> BigIntegerConversionUtilities.getConverttoValidWorkOrderId(ALL_NON_NUMERIC_CHARACTERS));
   }
+
+  @Test
+  @DisplayName("Test a 19 digit id above the maximum fails")
+  void testNineteenDigitsPastMaximum () {
+    assertFalse(BigIntegerConversionUtilities.isStringValidId(NINETEEN_DIGITS_PAST_MAXIMUM));
+    assertThrows(IllegalArgumentException.class, ()-> BigIntegerConversionUtilities.getConverttoValidWorkOrderId(NINETEEN_DIGITS_PAST_MAXIMUM));
+  }
+
+  @Test
+  @DisplayName("Test id with a leading zero or space fails")
+  void testLeadingCharactersInId () {
+    assertFalse(BigIntegerConversionUtilities.isStringValidId(LEADING_ZERO));
+    assertFalse(BigIntegerConversionUtilities.isStringValidId(LEADING_SPACE));
+  }
+
+  /* ============================================================================
+      TEST getConverttoValidWorkOrderIdValue method
+   ==============================================================================*/
+
+  @Test
+  @DisplayName("Test primitive work order ids are produced across the range")
+  void testPrimitiveValidValues () {
+    assertEquals (1L, BigIntegerConversionUtilities.getConverttoValidWorkOrderIdValue(SMALLEST_VALUE));
+    assertEquals (128765L, BigIntegerConversionUtilities.getConverttoValidWorkOrderIdValue(VALID_VALUE));
+    assertEquals (1000000000000000008L, BigIntegerConversionUtilities.getConverttoValidWorkOrderIdValue(NINETEEN_DIGITS_ENDING_IN_EIGHT));
+    assertEquals (Long.MAX_VALUE, BigIntegerConversionUtilities.getConverttoValidWorkOrderIdValue(MAXIMUM_VALUE));
+  }
+
+  @Test
+  @DisplayName("Test invalid primitive work order ids fail")
+  void testPrimitiveInvalidValues () {
+    assertThrows(IllegalArgumentException.class, ()-> BigIntegerConversionUtilities.getConverttoValidWorkOrderIdValue(null));
+    assertThrows(IllegalArgumentException.class, ()-> BigIntegerConversionUtilities.getConverttoValidWorkOrderIdValue(ZERO_VALUE));
+    assertThrows(IllegalArgumentException.class, ()-> BigIntegerConversionUtilities.getConverttoValidWorkOrderIdValue(NEGATIVE_VALUE));
+    assertThrows(IllegalArgumentException.class, ()-> BigIntegerConversionUtilities.getConverttoValidWorkOrderIdValue(MAXIMUM_VALUE_PLUS_ONE));
+    assertThrows(IllegalArgumentException.class, ()-> BigIntegerConversionUtilities.getConverttoValidWorkOrderIdValue(NON_NUMERIC_CHARACTER));
+  }
 }
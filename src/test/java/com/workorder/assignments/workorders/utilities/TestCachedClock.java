@@ -0,0 +1,68 @@
+package com.workorder.assignments.workorders.utilities;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Class:        TestCachedClock
+ * Created By:   brownless
+ * For Project:  workorder
+ */
+public class TestCachedClock {
+
+  @Test
+  @DisplayName("Test the clock follows the system clock to within a tick.")
+  void testFollowsSystemClock () throws InterruptedException {
+    try (CachedClock clock = new CachedClock(ZoneOffset.UTC, 5L)) {
+      long before = System.currentTimeMillis();
+      Thread.sleep(50L);
+      long read = clock.millis();
+      assertTrue(read >= before, "the clock has ticked since it started");
+      assertTrue(read <= System.currentTimeMillis());
+    }
+  }
+
+  @Test
+  @DisplayName("Test a clock in another zone shares the time and stops with the clock it came from.")
+  void testWithZoneSharesTicker () throws InterruptedException {
+    CachedClock clock = new CachedClock(ZoneOffset.UTC, 5L);
+    Clock paris = clock.withZone(ZoneId.of("Europe/Paris"));
+    assertSame(clock, clock.withZone(ZoneOffset.UTC));
+    assertEquals(ZoneId.of("Europe/Paris"), paris.getZone());
+    assertNotEquals(clock, paris);
+    assertEquals(clock, paris.withZone(ZoneOffset.UTC));
+
+    clock.close();
+    Thread.sleep(20L);
+    long stopped = paris.millis();
+    Thread.sleep(50L);
+    assertEquals(stopped, paris.millis());
+    assertEquals(stopped, clock.millis());
+  }
+
+  @Test
+  @DisplayName("Test a tick that is not positive fails.")
+  void testInvalidTick () {
+    assertThrows(IllegalArgumentException.class, () -> new CachedClock(ZoneOffset.UTC, 0L));
+  }
+
+  @Test
+  @DisplayName("Test whole seconds are read from a clock before the epoch as well as after.")
+  void testEpochSecondsOfClock () {
+    assertEquals(1543491960L,
+        DateConverterUtilities.getEpochSeconds(Clock.fixed(Instant.parse("2018-11-29T11:46:00.999Z"), ZoneOffset.UTC)));
+    assertEquals(-1L,
+        DateConverterUtilities.getEpochSeconds(Clock.fixed(Instant.parse("1969-12-31T23:59:59.500Z"), ZoneOffset.UTC)));
+  }
+}
@@ -7,6 +7,7 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -30,6 +31,12 @@ public class TestDateConverterUtilities {
   private static final ZonedDateTime VALID_TEST_DATE = ZonedDateTime.ofInstant (Instant.ofEpochMilli(VALID_TEST_DATE_IN_MILLIS), ZoneId.of("Z"));
   private static final String VALID_TEST_DATE_STRING = "2018-03-25T23:45:43Z";
   private static final String VALID_TEST_DATE__IN_FUTURE_STRING = "2020-03-25T23:45:43Z";
+  private static final String VALID_LEAP_DAY_STRING = "2016-02-29T00:00:00Z";
+  private static final String VALID_CENTURY_LEAP_DAY_STRING = "2000-02-29T23:59:59Z";
+  private static final String INVALID_CENTURY_LEAP_DAY_STRING = "1900-02-29T12:00:00Z";
+  private static final String INVALID_HOUR_STRING = "2018-03-25T24:00:00Z";
+  private static final String INVALID_SECOND_STRING = "2018-03-25T23:45:60Z";
+  private static final String INVALID_DAY_STRING = "2018-04-31T23:45:43Z";
 
 
 /*===============================================================================================
@@ -121,4 +128,45 @@ public class TestDateConverterUtilities {
   void testGetDateFromInvalidNonLeapYearDateInlIso8601StringFormat () {
     assertThrows(IllegalArgumentException.class, ()-> DateConverterUtilities.getDateTimefromIso8601StringFormat(VALID_ISO_8601_DATE_FORMAT_WITH_INVALID_DATE));
   }
+
+ /*===============================================================================================
+  Test the functionality of getting epoch seconds from a string format
+  ================================================================================================*/
+
+  @Test
+  @DisplayName("Test conversion from a String to epoch seconds")
+  void testGetEpochSecondsFromIso8601StringFormat () {
+    assertEquals (VALID_TEST_DATE_IN_MILLIS / 1000L, DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(VALID_TEST_DATE_STRING));
+    assertEquals (0L, DateConverterUtilities.getEpochSecondsFromIso8601StringFormat("1970-01-01T00:00:00Z"));
+  }
+
+  @Test
+  @DisplayName("Test conversion to epoch seconds agrees with java.time across leap years and month ends")
+  void testGetEpochSecondsMatchesJavaTime () {
+    String[] dates = {VALID_LEAP_DAY_STRING, VALID_CENTURY_LEAP_DAY_STRING, "0000-01-01T00:00:00Z",
+        "0000-02-29T01:02:03Z", "1969-12-31T23:59:59Z", "1600-03-01T00:00:00Z", "2018-12-31T23:59:59Z",
+        "2100-02-28T10:20:30Z", "9999-12-31T23:59:59Z", VALID_ISO_8601_DATE_FORMAT};
+    for (String date : dates) {
+      assertEquals (ZonedDateTime.parse(date, DateTimeFormatter.ISO_DATE_TIME).toEpochSecond(),
+          DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(date), date);
+    }
+    ZonedDateTime day = ZonedDateTime.of(1999, 1, 1, 13, 14, 15, 0, ZoneOffset.UTC);
+    for (int i = 0; i < 3000; i++, day = day.plusDays(1)) {
+      assertEquals (day.toEpochSecond(),
+          DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(DateConverterUtilities.getDateInIso8601Format(day)));
+    }
+  }
+
+  @Test
+  @DisplayName("Test conversion to epoch seconds fails for invalid dates and times in a valid format")
+  void testGetEpochSecondsFromInvalidValues () {
+    String[] dates = {INVALID_CENTURY_LEAP_DAY_STRING, INVALID_HOUR_STRING, INVALID_SECOND_STRING, INVALID_DAY_STRING,
+        INVALID_ISO_8601_DATE_WITH_GOOD_FORMAT, VALID_ISO_8601_DATE_FORMAT_WITH_INVALID_DATE, "2018-00-10T00:00:00Z",
+        "2018-01-00T00:00:00Z", "2018-01-10T00:60:00Z"};
+    for (String date : dates) {
+      assertThrows(IllegalArgumentException.class, ()-> DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(date), date);
+    }
+    assertThrows(IllegalArgumentException.class, ()-> DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(null));
+    assertThrows(IllegalArgumentException.class, ()-> DateConverterUtilities.getEpochSecondsFromIso8601StringFormat(VALID_ISO_8601_DATE_FORMAT_NO_TZ));
+  }
 }